@@ -0,0 +1,29 @@
+package org.odanc.filesorter;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counter of megabytes processed by a throughput benchmark. JMH reports
+ * the counter per second next to the score, so it is throughput in MB/s
+ * whatever the size of the input of the benchmark is.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class BytesCounter {
+
+    // Megabytes processed in the current iteration
+    public double megabytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+    }
+
+    void add(long bytes) {
+        megabytes += bytes / 1_048_576.0;
+    }
+}
@@ -0,0 +1,81 @@
+package org.odanc.filesorter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares sorting algorithms of a words buffer. The buffer is filled once
+ * and its index is restored before every invocation, so each invocation
+ * sorts the same unsorted words. Throughput is counted in bytes of words
+ * sorted per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ChunkSortBenchmark {
+
+    @Param({"INTROSORT", "MULTIKEY_QUICKSORT"})
+    private String algorithm;
+
+    // Words of the test file or of a generated data set
+    @Param({"unsorted_big", "RANDOM", "SHARED_PREFIX", "DUPLICATED", "PRESORTED", "LONG_WORDS"})
+    private String words;
+
+    @Param({"32"})
+    private int dataSizeMb;
+
+    private SortAlgorithm sortAlgorithm;
+    private Chunk chunk;
+    private long[] entries;
+    private long size;
+
+    @Setup(Level.Trial)
+    public void fillChunk() throws IOException {
+        sortAlgorithm = SortAlgorithm.valueOf(algorithm);
+        byte[] bytes = words.equals("unsorted_big")
+                ? Files.readAllBytes(Paths.get("src/test/resources/" + words + ".txt"))
+                : DataSet.valueOf(words).generate(dataSizeMb * 1_048_576);
+        size = bytes.length;
+
+        chunk = new Chunk(Integer.MAX_VALUE - 8);
+        try (WordReader reader = new ByteWordReader(
+                Channels.newChannel(new ByteArrayInputStream(bytes)), ByteWordReader.WHITESPACE)) {
+            while (reader.next()) {
+                chunk.add(reader);
+            }
+        }
+
+        entries = new long[chunk.size()];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = chunk.getEntry(i);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void restoreEntries() {
+        for (int i = 0; i < entries.length; i++) {
+            chunk.setEntry(i, entries[i]);
+        }
+    }
+
+    @Benchmark
+    public long sort(BytesCounter counter) {
+        chunk.sort(sortAlgorithm, false);
+        counter.add(size);
+        return chunk.getEntry(0);
+    }
+}
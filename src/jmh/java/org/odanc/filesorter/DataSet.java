@@ -0,0 +1,121 @@
+package org.odanc.filesorter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Synthetic inputs of benchmarks: lines of words of different shapes.
+ * Words are generated from a fixed seed, so every run of a benchmark
+ * sorts exactly the same bytes and results of different versions
+ * can be compared.
+ */
+enum DataSet {
+
+    /**
+     * Random alphanumeric words of 1 to 16 characters
+     */
+    RANDOM {
+        @Override
+        String nextWord(Random random, long index) {
+            return randomWord(random, 1 + random.nextInt(16));
+        }
+    },
+
+    /**
+     * Words like URLs sharing most of their bytes
+     */
+    SHARED_PREFIX {
+        private final String[] hosts = {"http://example.com/", "http://example.org/", "https://www.example.com/"};
+
+        @Override
+        String nextWord(Random random, long index) {
+            return hosts[random.nextInt(hosts.length)] + "catalog/items/" + random.nextInt(1_000)
+                    + '/' + Integer.toString(random.nextInt(), 36);
+        }
+    },
+
+    /**
+     * Words taken from a vocabulary of a thousand words
+     */
+    DUPLICATED {
+        @Override
+        String nextWord(Random random, long index) {
+            return "word" + random.nextInt(1_000);
+        }
+    },
+
+    /**
+     * Words which are already in sorted order
+     */
+    PRESORTED {
+        @Override
+        String nextWord(Random random, long index) {
+            return String.format(Locale.ROOT, "%012d", index);
+        }
+    },
+
+    /**
+     * Random alphanumeric words of 100 to 2000 characters
+     */
+    LONG_WORDS {
+        @Override
+        String nextWord(Random random, long index) {
+            return randomWord(random, 100 + random.nextInt(1_901));
+        }
+    };
+
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    /**
+     * Generates the word of the data set
+     *
+     * @param random source of random numbers
+     * @param index number of the word in the data set
+     * @return the word
+     */
+    abstract String nextWord(Random random, long index);
+
+    /**
+     * Generates lines of words of about the given size
+     *
+     * @param size size of the data in bytes
+     * @return UTF-8 encoded words delimited by new lines
+     */
+    byte[] generate(int size) {
+        Random random = new Random(42);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size + 4_096);
+        for (long i = 0; bytes.size() < size; i++) {
+            byte[] word = nextWord(random, i).getBytes(UTF_8);
+            bytes.write(word, 0, word.length);
+            bytes.write('\n');
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes lines of words of about the given size to a new temporary file
+     *
+     * @param sizeMb size of the file in megabytes
+     * @return path to the file
+     * @throws IOException I/O error happened while writing file
+     */
+    Path createFile(int sizeMb) throws IOException {
+        Path file = Files.createTempFile(name().toLowerCase(), ".txt");
+        Files.write(file, generate(sizeMb * 1_048_576));
+        return file;
+    }
+
+    private static String randomWord(Random random, int length) {
+        char[] word = new char[length];
+        for (int i = 0; i < length; i++) {
+            word[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(word);
+    }
+}
@@ -0,0 +1,103 @@
+package org.odanc.filesorter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures throughput of sorting a generated file as a whole and of
+ * splitting it into sorted temporary files alone, in MB/s of the file.
+ * The heap of the forked JVM is fixed, so the real memory of words buffers
+ * is the same on every machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+public class FileSorterBenchmark {
+
+    @Param({"RANDOM", "SHARED_PREFIX", "DUPLICATED", "PRESORTED", "LONG_WORDS"})
+    private String dataSet;
+
+    @Param({"128"})
+    private int fileSizeMb;
+
+    // Heap size limit of the configuration in megabytes
+    @Param({"256"})
+    private int heapSize;
+
+    private Path sourceFile;
+    private Path outputFile;
+    private Config config;
+    private long size;
+    private List<Path> runs = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        sourceFile = DataSet.valueOf(dataSet).createFile(fileSizeMb);
+        outputFile = Files.createTempFile(null, null);
+        size = Files.size(sourceFile);
+        config = Config.newBuilder(sourceFile, heapSize)
+                .setOutputFile(outputFile)
+                .build();
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteRuns() throws IOException {
+        for (Path run : runs) {
+            Files.delete(run);
+        }
+        runs.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.delete(sourceFile);
+        Files.delete(outputFile);
+    }
+
+    @Benchmark
+    public void sort(BytesCounter counter) throws IOException {
+        new FileSorter(config).sort();
+        counter.add(size);
+    }
+
+    // Reads the file to words buffers and writes them to temporary files
+    // the same way the sorter splits the file
+    @Benchmark
+    public int split(BytesCounter counter) throws IOException {
+        MemoryManager memory = new MemoryManager((long) config.getChunkSize() * config.getChunkCount());
+        try (RunFiles runFiles = new RunFiles(config.getCompression(), config.getSortThreads());
+             RunGenerator generator = new RunGenerator(config, runFiles, memory, new SortMetrics());
+             WordReader reader = WordReader.open(sourceFile, null)) {
+
+            Chunk chunk = generator.takeChunk();
+            while (reader.next()) {
+                if (!chunk.add(reader)) {
+                    generator.submit(chunk);
+                    chunk = generator.takeChunk();
+                    chunk.add(reader);
+                }
+            }
+            generator.submit(chunk);
+            runs.addAll(generator.finish());
+        }
+        counter.add(size);
+        return runs.size();
+    }
+}
@@ -0,0 +1,131 @@
+package org.odanc.filesorter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares merging of k in-memory runs by the loser tree with merging
+ * by a TreeMap of words wrappers, which was used before the loser tree.
+ * Runs are kept in memory to measure the merging alone, without I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class MergeBenchmark {
+    private static final int WORD_COUNT = 1_000_000;
+
+    private static final Comparator<ArrayCursor> ORDER = (o1, o2) -> o1.word().compareTo(o2.word());
+
+    @Param({"10", "100", "1000"})
+    private int runCount;
+
+    private String[][] runs;
+
+    @Setup(Level.Trial)
+    public void createRuns() {
+        Random random = new Random(42);
+        runs = new String[runCount][WORD_COUNT / runCount];
+
+        for (String[] run : runs) {
+            for (int i = 0; i < run.length; i++) {
+                run[i] = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+            }
+            Arrays.sort(run);
+        }
+    }
+
+    @Benchmark
+    public void loserTree(Blackhole blackhole) throws IOException {
+        List<ArrayCursor> cursors = new ArrayList<>(runCount);
+        for (String[] run : runs) {
+            cursors.add(new ArrayCursor(run));
+        }
+
+        LoserTree<ArrayCursor> tree = new LoserTree<>(cursors, ORDER);
+        while (!tree.isEmpty()) {
+            blackhole.consume(tree.peek().word());
+            tree.advance();
+        }
+    }
+
+    @Benchmark
+    public void treeMap(Blackhole blackhole) {
+        TreeMap<Entry, ArrayCursor> entries = new TreeMap<>();
+        for (int i = 0; i < runCount; i++) {
+            ArrayCursor cursor = new ArrayCursor(runs[i]);
+            if (cursor.next()) {
+                entries.put(new Entry(cursor.word(), i), cursor);
+            }
+        }
+
+        while (!entries.isEmpty()) {
+            Entry entry = entries.firstKey();
+            ArrayCursor cursor = entries.remove(entry);
+            blackhole.consume(entry.word);
+
+            if (cursor.next()) {
+                entries.put(new Entry(cursor.word(), entry.run), cursor);
+            }
+        }
+    }
+
+
+
+
+
+    private static class ArrayCursor implements RunCursor {
+        private String[] words;
+        private int index = -1;
+
+        ArrayCursor(String[] words) {
+            this.words = words;
+        }
+
+        @Override
+        public boolean next() {
+            index += 1;
+            return index < words.length;
+        }
+
+        String word() {
+            return words[index];
+        }
+
+        @Override
+        public void close() { }
+    }
+
+    // Word with the index of its run, so equal words of different runs are distinct keys
+    private static class Entry implements Comparable<Entry> {
+        private String word;
+        private int run;
+
+        Entry(String word, int run) {
+            this.word = word;
+            this.run = run;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int result = word.compareTo(other.word);
+            return result != 0 ? result : Integer.compare(run, other.run);
+        }
+    }
+}
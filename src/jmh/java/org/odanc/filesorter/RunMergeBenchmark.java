@@ -0,0 +1,115 @@
+package org.odanc.filesorter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Measures throughput of merging sorted temporary files into the output
+ * file the same way the sorter does, in MB/s of the merged words.
+ * Words of a generated data set are dealt to the given number of runs,
+ * so the more runs there are the shorter they are.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RunMergeBenchmark {
+
+    @Param({"RANDOM", "SHARED_PREFIX", "DUPLICATED", "LONG_WORDS"})
+    private String dataSet;
+
+    @Param({"8", "64", "512"})
+    private int runCount;
+
+    @Param({"64"})
+    private int dataSizeMb;
+
+    // Memory taken by blocks of a run read ahead in bytes
+    @Param({"1048576"})
+    private int readAheadSize;
+
+    private List<Path> runs = new ArrayList<>();
+    private Path outputFile;
+    private long size;
+
+    @Setup(Level.Trial)
+    public void createRuns() throws IOException {
+        String[] words = new String(DataSet.valueOf(dataSet).generate(dataSizeMb * 1_048_576), UTF_8).split("\n");
+        List<List<String>> runWords = new ArrayList<>();
+        for (int i = 0; i < runCount; i++) {
+            runWords.add(new ArrayList<>());
+        }
+        for (int i = 0; i < words.length; i++) {
+            runWords.get(i % runCount).add(words[i]);
+        }
+
+        try (RunFiles runFiles = new RunFiles(Compression.NONE, 1);
+             OutputStage stage = new OutputStage(2, 1_048_576)) {
+            for (List<String> run : runWords) {
+                String[] sorted = run.toArray(new String[0]);
+                Arrays.sort(sorted);
+
+                Path file = Files.createTempFile(null, null);
+                runs.add(file);
+                try (WordWriter writer = runFiles.newWriter(file, stage, false)) {
+                    for (String word : sorted) {
+                        byte[] bytes = word.getBytes(UTF_8);
+                        writer.write(bytes, 0, bytes.length);
+                        size += bytes.length;
+                    }
+                }
+            }
+        }
+        outputFile = Files.createTempFile(null, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteRuns() throws IOException {
+        for (Path run : runs) {
+            Files.delete(run);
+        }
+        Files.delete(outputFile);
+    }
+
+    @Benchmark
+    public void merge(BytesCounter counter) throws IOException {
+        List<WordCursor> readers = new ArrayList<>(runCount);
+        try (RunFiles runFiles = new RunFiles(Compression.NONE, 1, readAheadSize);
+             OutputStage stage = new OutputStage(2, 1_048_576)) {
+            for (Path run : runs) {
+                readers.add(runFiles.newReader(run, ByteWordReader.DEFAULT_BUFFER_SIZE, false));
+            }
+
+            try (WordWriter writer = new LineWriter(outputFile, stage, LineWriter.LINE_SEPARATOR, false, false)) {
+                LoserTree<WordCursor> tree = new LoserTree<>(readers, WordCursor.WORD_ORDER);
+                while (!tree.isEmpty()) {
+                    WordCursor reader = tree.peek();
+                    writer.write(reader.array(), reader.offset(), reader.length());
+                    tree.advance();
+                }
+            }
+        } finally {
+            for (WordCursor reader : readers) {
+                reader.close();
+            }
+        }
+        counter.add(size);
+    }
+}
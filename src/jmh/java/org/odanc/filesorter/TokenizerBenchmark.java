@@ -0,0 +1,84 @@
+package org.odanc.filesorter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares words reading throughput of the byte-level tokenizer
+ * reading the file through a buffer or mapping it to memory
+ * with the Scanner-based one. Each invocation reads the whole file,
+ * so the score multiplied by the file size gives throughput in MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TokenizerBenchmark {
+    private static final String WHITESPACES = "\\p{javaWhitespace}+";
+
+    @Param({"16"})
+    private int fileSizeMb;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void createFile() throws IOException {
+        file = Files.createTempFile(null, null);
+        Random random = new Random(42);
+        byte[] line = new byte[100];
+        String alphabet = "\t\n ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+        try (OutputStream stream = Files.newOutputStream(file)) {
+            for (long size = 0; size < fileSizeMb * 1_048_576L; size += line.length) {
+                for (int i = 0; i < line.length; i++) {
+                    line[i] = (byte) alphabet.charAt(random.nextInt(alphabet.length()));
+                }
+                stream.write(line);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFile() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public int byteReader() throws IOException {
+        return countWords(WordReader.open(file, null));
+    }
+
+    @Benchmark
+    public int mappedReader() throws IOException {
+        return countWords(WordReader.openMapped(file, null, false, 1).get(0));
+    }
+
+    @Benchmark
+    public int scannerReader() throws IOException {
+        return countWords(new RegexWordReader(file, WHITESPACES));
+    }
+
+    private int countWords(WordReader reader) throws IOException {
+        int count = 0;
+        try (WordReader closeable = reader) {
+            while (closeable.next()) {
+                count += closeable.word().length();
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,51 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+
+/**
+ * Codec compressing blocks of temporary files. Blocks are compressed
+ * and decompressed independently, so any block codec can be plugged in,
+ * e.g. an LZ-style one. Codecs may keep state between blocks and
+ * are used by a single thread at a time.
+ */
+interface BlockCodec {
+
+    /**
+     * Gets the maximum size of a compressed block
+     *
+     * @param length size of the block in bytes
+     * @return maximum size of the compressed block in bytes
+     */
+    int maxCompressedLength(int length);
+
+    /**
+     * Compresses the block
+     *
+     * @param source array containing the block at its start
+     * @param length size of the block in bytes
+     * @param destination array to write the compressed block to,
+     *                    has room for {@link #maxCompressedLength} bytes after the offset
+     * @param offset offset in the destination array
+     * @return size of the compressed block in bytes
+     */
+    int compress(byte[] source, int length, byte[] destination, int offset);
+
+    /**
+     * Decompresses the block
+     *
+     * @param source array containing the compressed block
+     * @param offset offset of the compressed block in the array
+     * @param length size of the compressed block in bytes
+     * @param destination array to write the block to at its start
+     * @param originalLength size of the original block in bytes
+     * @throws IOException compressed block is corrupted
+     */
+    void decompress(byte[] source, int offset, int length, byte[] destination, int originalLength)
+            throws IOException;
+
+    /**
+     * Frees resources of the codec, such as native memory,
+     * once the codec isn't used anymore
+     */
+    default void close() { }
+}
@@ -0,0 +1,451 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Word reader which scans UTF-8 encoded bytes straight from a channel
+ * without decoding them into characters and without regex matching.
+ * Words are delimited either by whitespaces or by a single ASCII byte.
+ * Produces exactly the same words as {@link java.util.Scanner} does
+ * with its default delimiter or with the same single character delimiter.
+ * Records are read by lines semantics instead: every separator byte ends
+ * a record, so a leading separator ends an empty first record.
+ * <p>
+ * Bytes are either read from the channel into a heap buffer or taken
+ * right from a range of the file mapped to memory window by window.
+ * A file can be split into ranges at word boundaries with
+ * {@link #splitRanges} and the ranges can be read independently.
+ */
+class ByteWordReader implements WordReader {
+
+    // Marker of whitespace-delimited words
+    static final int WHITESPACE = -1;
+
+    // Flag of a delimiter byte ending records rather than separating words
+    static final int RECORDS = 0x100;
+
+    // Default size of the read buffer in bytes
+    static final int DEFAULT_BUFFER_SIZE = 65_536;
+
+    // Default size of the file window mapped to memory at once in bytes
+    static final int DEFAULT_WINDOW_SIZE = 67_108_864;
+
+    // Characters having special meaning in a regex-pattern
+    private static final String REGEX_METACHARACTERS = "\\^$.|?*+()[]{}";
+
+    // ASCII characters matched by \p{javaWhitespace}
+    private static final boolean[] ASCII_WHITESPACE = new boolean[128];
+
+    static {
+        for (int c = 0; c < ASCII_WHITESPACE.length; c++) {
+            ASCII_WHITESPACE[c] = Character.isWhitespace(c);
+        }
+    }
+
+    private ReadableByteChannel channel;
+    private int delimiter;
+    private boolean records;
+
+    // Heap buffer the channel is read into or the mapped window of the file.
+    // The view is used to copy words without changing the buffer
+    private ByteBuffer buffer;
+    private ByteBuffer view;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+
+    // Bytes starting from mark are kept in the buffer when it is refilled
+    private int mark;
+    private int wordStart;
+    private int wordEnd;
+
+    // Position in the file the current word is read from
+    private long previousEnd;
+
+    // Position of the buffer start in the file, mapped file
+    // and the end of the range to read
+    private long windowStart;
+    private FileChannel file;
+    private long end;
+    private int windowSize;
+
+    ByteWordReader(ReadableByteChannel channel, int delimiter) {
+        this(channel, delimiter, DEFAULT_BUFFER_SIZE);
+    }
+
+    ByteWordReader(ReadableByteChannel channel, int delimiter, int bufferSize) {
+        this(channel, delimiter, bufferSize, 0);
+    }
+
+    /**
+     * Creates a reader of the channel positioned in the middle of the file.
+     * The position must be the start of the file or a position returned
+     * by {@link #position()} of another reader of the same file
+     *
+     * @param channel channel to read words from, closed with the reader
+     * @param delimiter delimiter byte, record separator flagged by {@link #RECORDS} or {@link #WHITESPACE}
+     * @param bufferSize initial size of the read buffer in bytes
+     * @param start position of the channel in the file
+     */
+    ByteWordReader(ReadableByteChannel channel, int delimiter, int bufferSize, long start) {
+        this.channel = channel;
+        setDelimiter(delimiter);
+        this.windowStart = start;
+        this.previousEnd = start;
+        setBuffer(ByteBuffer.allocate(bufferSize));
+    }
+
+    /**
+     * Creates a reader of the file range mapped to memory.
+     * The range must start at the beginning of the file or at a position
+     * found by {@link #splitRanges} and end at the end of the file or
+     * at the start of the next range
+     *
+     * @param file file to read words from, closed with the reader
+     * @param delimiter delimiter byte, record separator flagged by {@link #RECORDS} or {@link #WHITESPACE}
+     * @param start position of the first byte of the range
+     * @param end position after the last byte of the range
+     * @param windowSize size of the file window mapped at once in bytes
+     */
+    ByteWordReader(FileChannel file, int delimiter, long start, long end, int windowSize) {
+        this.channel = file;
+        this.file = file;
+        setDelimiter(delimiter);
+        this.windowStart = start;
+        this.previousEnd = start;
+        this.end = end;
+        this.windowSize = windowSize;
+        setBuffer(ByteBuffer.allocate(0));
+    }
+
+    /**
+     * Converts a regex-pattern to a delimiter byte if the pattern
+     * matches exactly one ASCII character, e.g. {@code ","} or {@code "\\."}
+     *
+     * @param regex regex-pattern as a delimiter
+     * @return delimiter byte or {@link #WHITESPACE} if the pattern
+     *         is not a single character literal
+     */
+    static int toDelimiterByte(String regex) {
+        char c;
+        if (regex.length() == 1) {
+            c = regex.charAt(0);
+            if (REGEX_METACHARACTERS.indexOf(c) >= 0) {
+                return WHITESPACE;
+            }
+        } else if (regex.length() == 2 && regex.charAt(0) == '\\') {
+            c = regex.charAt(1);
+            if (Character.isLetterOrDigit(c)) {
+                return WHITESPACE;
+            }
+        } else {
+            return WHITESPACE;
+        }
+
+        return c < 0x80 ? c : WHITESPACE;
+    }
+
+    /**
+     * Converts a regex-pattern to a delimiter byte the same way as
+     * {@link #toDelimiterByte(String)} does, flagging it as a record separator
+     *
+     * @param regex regex-pattern as a delimiter, {@code null} for whitespaces
+     * @param records whether the delimiter separates records
+     * @return delimiter byte, flagged by {@link #RECORDS} if it separates records,
+     *         or {@link #WHITESPACE} if the pattern is not a single character literal
+     */
+    static int toDelimiterByte(String regex, boolean records) {
+        int delimiter = regex != null ? toDelimiterByte(regex) : WHITESPACE;
+        return records && delimiter != WHITESPACE ? delimiter | RECORDS : delimiter;
+    }
+
+    /**
+     * Splits the file into ranges of about the same size which can be read
+     * by separate readers. Every range but the first one starts at a whitespace,
+     * at a delimiter byte following a non-delimiter byte or right after
+     * a record separator, so the ranges altogether contain exactly the same
+     * words as the whole file.
+     * Some of the last ranges are empty if there are not enough such positions
+     *
+     * @param file file to split
+     * @param delimiter delimiter byte, record separator flagged by {@link #RECORDS} or {@link #WHITESPACE}
+     * @param count number of ranges
+     * @return {@code count + 1} positions, range {@code i} starts
+     *         at position {@code i} and ends at position {@code i + 1}
+     * @throws IOException I/O error happened while reading file
+     */
+    static long[] splitRanges(FileChannel file, int delimiter, int count) throws IOException {
+        long size = file.size();
+        long[] bounds = new long[count + 1];
+        bounds[count] = size;
+
+        ByteBuffer window = ByteBuffer.allocate(DEFAULT_BUFFER_SIZE);
+        for (int i = 1; i < count; i++) {
+            long from = Math.max(size / count * i, bounds[i - 1] + 1);
+            bounds[i] = from < size ? findRangeStart(file, delimiter, from, window) : size;
+        }
+        return bounds;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        previousEnd = windowStart + position;
+        mark = position;
+        if (delimiter == WHITESPACE) {
+            return nextDelimitedByWhitespace();
+        }
+        return records ? nextRecord() : nextDelimitedByByte();
+    }
+
+    @Override
+    public String word() {
+        byte[] bytes = new byte[wordEnd - wordStart];
+        copyTo(bytes, 0);
+        return new String(bytes, UTF_8);
+    }
+
+    @Override
+    public int length() {
+        return wordEnd - wordStart;
+    }
+
+    @Override
+    public void copyTo(byte[] destination, int offset) {
+        view.clear();
+        view.position(wordStart);
+        view.get(destination, offset, wordEnd - wordStart);
+    }
+
+    /**
+     * Gets the position in the file right after the current word,
+     * after the separator ending it if it is a record. A range of the file
+     * starting at this position can be read by a separate reader starting
+     * from the next word
+     *
+     * @return position after the current word
+     */
+    long endPosition() {
+        return windowStart + (records ? position : wordEnd);
+    }
+
+    /**
+     * Gets the position in the file right after the previous word. The reader
+     * state between words is its position only, so a reader of the file
+     * starting at this position reads the current word first
+     *
+     * @return position of the current word including the delimiters before it
+     */
+    @Override
+    public long position() {
+        return previousEnd;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Skips all the whitespaces and reads bytes until the next whitespace
+    private boolean nextDelimitedByWhitespace() throws IOException {
+        int length;
+        while ((length = whitespaceLength()) > 0) {
+            position += length;
+        }
+        if (length < 0) {
+            return false;
+        }
+
+        mark = position;
+        while (whitespaceLength() == 0) {
+            position += 1;
+        }
+
+        wordStart = mark;
+        wordEnd = position;
+        return true;
+    }
+
+    // Skips one delimiter byte and reads bytes until the next delimiter byte.
+    // Mimics Scanner behaviour with consecutive delimiters producing empty words
+    private boolean nextDelimitedByByte() throws IOException {
+        if (!isAvailable(1)) {
+            return false;
+        }
+        if (buffer.get(position) == delimiter) {
+            position += 1;
+            mark = position;
+            if (!isAvailable(1)) {
+                return false;
+            }
+        }
+
+        while (isAvailable(1) && buffer.get(position) != delimiter) {
+            position += 1;
+        }
+
+        wordStart = mark;
+        wordEnd = position;
+        return true;
+    }
+
+    // Reads bytes until the next separator byte and skips the separator,
+    // so every separator ends a record including a leading one
+    private boolean nextRecord() throws IOException {
+        if (!isAvailable(1)) {
+            return false;
+        }
+
+        while (isAvailable(1) && buffer.get(position) != delimiter) {
+            position += 1;
+        }
+
+        wordStart = mark;
+        wordEnd = position;
+
+        // The separator is loaded already unless the end of input is reached
+        if (position < limit) {
+            position += 1;
+        }
+        return true;
+    }
+
+    // Gets length in bytes of the whitespace character at the current position,
+    // 0 if the character isn't a whitespace, -1 if the end of input is reached.
+    // The only non-ASCII whitespaces are three-byte sequences starting with E1, E2 or E3
+    private int whitespaceLength() throws IOException {
+        if (!isAvailable(1)) {
+            return -1;
+        }
+
+        int b = buffer.get(position) & 0xFF;
+        if (b < 0x80) {
+            return ASCII_WHITESPACE[b] ? 1 : 0;
+        }
+        if (b < 0xE1 || b > 0xE3 || !isAvailable(3)) {
+            return 0;
+        }
+
+        int b1 = buffer.get(position + 1) & 0xFF;
+        int b2 = buffer.get(position + 2) & 0xFF;
+        if ((b1 & 0xC0) != 0x80 || (b2 & 0xC0) != 0x80) {
+            return 0;
+        }
+
+        int codePoint = ((b & 0x0F) << 12) | ((b1 & 0x3F) << 6) | (b2 & 0x3F);
+        return Character.isWhitespace(codePoint) ? 3 : 0;
+    }
+
+    // Ensures the given number of bytes starting from the current position
+    // is loaded to the buffer
+    private boolean isAvailable(int count) throws IOException {
+        while (limit - position < count) {
+            if (!fill()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+        return file != null ? map() : read();
+    }
+
+    // Reads the next portion of bytes from the channel keeping the bytes
+    // starting from mark. The buffer grows if a single word doesn't fit in it
+    private boolean read() throws IOException {
+        byte[] bytes = buffer.array();
+        if (mark > 0) {
+            System.arraycopy(bytes, mark, bytes, 0, limit - mark);
+            windowStart += mark;
+            position -= mark;
+            limit -= mark;
+            mark = 0;
+        } else if (limit == bytes.length) {
+            setBuffer(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length * 2)));
+        }
+
+        buffer.limit(buffer.capacity()).position(limit);
+        int count = channel.read(buffer);
+        if (count < 0) {
+            endOfInput = true;
+            return false;
+        }
+
+        limit += count;
+        return true;
+    }
+
+    // Maps the next window of the file range starting from mark.
+    // The window grows if a single word doesn't fit in it
+    private boolean map() throws IOException {
+        if (windowStart + limit >= end) {
+            endOfInput = true;
+            return false;
+        }
+
+        long start = windowStart + mark;
+        long size = Math.min(end - start, Math.max(windowSize, 2L * (limit - mark)));
+        setBuffer(file.map(READ_ONLY, start, Math.min(size, Integer.MAX_VALUE)));
+
+        windowStart = start;
+        position -= mark;
+        limit = buffer.capacity();
+        mark = 0;
+        return true;
+    }
+
+    private void setDelimiter(int delimiter) {
+        records = delimiter != WHITESPACE && (delimiter & RECORDS) != 0;
+        this.delimiter = records ? delimiter & 0xFF : delimiter;
+    }
+
+    private void setBuffer(ByteBuffer newBuffer) {
+        buffer = newBuffer;
+        view = newBuffer.duplicate();
+    }
+
+    // Finds the first position starting from the given one which is
+    // a whitespace, a delimiter byte following a non-delimiter byte
+    // or a byte following a record separator.
+    // Returns the file size if there is no such position
+    private static long findRangeStart(FileChannel file, int delimiter, long from, ByteBuffer window)
+            throws IOException {
+        boolean records = delimiter != WHITESPACE && (delimiter & RECORDS) != 0;
+        long position = from - 1;
+        int previous = -1;
+
+        while (true) {
+            window.clear();
+            int count = file.read(window, position);
+            if (count <= 0) {
+                return file.size();
+            }
+
+            for (int i = 0; i < count; i++, position++) {
+                int b = window.get(i) & 0xFF;
+                boolean isRangeStart;
+                if (delimiter == WHITESPACE) {
+                    isRangeStart = b < 0x80 && ASCII_WHITESPACE[b];
+                } else if (records) {
+                    isRangeStart = previous == (delimiter & 0xFF);
+                } else {
+                    isRangeStart = b == delimiter && previous != delimiter;
+                }
+                if (isRangeStart && position >= from) {
+                    return position;
+                }
+                previous = b;
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.LongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Channel computing CRC-32 of the bytes written to the file,
+ * so a temporary file is checksummed without reading it again.
+ * The checksum is passed on when the channel is closed.
+ */
+class ChecksumChannel implements WritableByteChannel {
+    private WritableByteChannel file;
+    private LongConsumer onClose;
+    private CRC32 checksum = new CRC32();
+    private boolean open = true;
+
+    /**
+     * Creates a channel checksumming data written to the file
+     *
+     * @param file channel of the file, closed with this channel
+     * @param onClose consumer of the checksum of the whole file
+     */
+    ChecksumChannel(WritableByteChannel file, LongConsumer onClose) {
+        this.file = file;
+        this.onClose = onClose;
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        ByteBuffer written = source.duplicate();
+        int count = file.write(source);
+        written.limit(written.position() + count);
+        checksum.update(written);
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+
+        file.close();
+        onClose.accept(checksum.getValue());
+    }
+}
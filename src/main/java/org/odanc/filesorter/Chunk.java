@@ -0,0 +1,461 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Buffer of words read from the source file which are sorted
+ * and written to a temporary file together. Buffers are reused
+ * after their words are written.
+ * <p>
+ * Words are packed into a single byte array: UTF-8 encoded words prefixed
+ * with their lengths (the same way as in temporary files) are appended
+ * from the start of the array, while the index grows from the end of
+ * the array towards them. The buffer is full when they meet.
+ * Sorting reorders the index only, so the buffer costs about 9 bytes
+ * per word in addition to the word itself and creates no objects.
+ * The array starts small and grows up to the buffer capacity while
+ * its memory manager permits, so the buffer is full either when its
+ * capacity is reached or when the memory budget of all buffers is.
+ * <p>
+ * Every index entry is a word offset in its lower half and a cached key
+ * prefix in its upper half: {@link #PREFIX_LENGTH} symbols of the word
+ * starting from some depth, 9 bits each. A symbol is 0 past the end of
+ * the word and the byte rank from {@link Utf8Order} plus 1 otherwise,
+ * so comparing prefixes as numbers orders words the same way as strings.
+ * Most comparisons are decided by prefixes without touching the words.
+ */
+class Chunk {
+
+    // Initial size of the array in bytes
+    private static final int INITIAL_SIZE = 1_048_576;
+
+    // Size of an index entry in bytes
+    private static final int ENTRY_SIZE = 8;
+
+    // Number of symbols in the cached key prefix and size of a symbol in bits
+    static final int PREFIX_LENGTH = 3;
+    private static final int SYMBOL_SIZE = 9;
+    private static final int SYMBOL_MASK = (1 << SYMBOL_SIZE) - 1;
+
+    private int capacity;
+    private MemoryManager memory;
+    private byte[] data;
+    private ByteBuffer index;
+
+    // Number of bytes taken by words and number of words
+    private int used;
+    private int size;
+
+    /**
+     * Creates an empty buffer without a memory budget
+     *
+     * @param capacity maximum size of the buffer in bytes
+     */
+    Chunk(int capacity) {
+        this(capacity, MemoryManager.unbounded());
+    }
+
+    /**
+     * Creates an empty buffer reserving its memory from the manager
+     *
+     * @param capacity maximum size of the buffer in bytes
+     * @param memory manager of the memory taken by buffers
+     */
+    Chunk(int capacity, MemoryManager memory) {
+        this.capacity = capacity;
+        this.memory = memory;
+        int length = Math.min(capacity, INITIAL_SIZE);
+        memory.reserve(length);
+        allocate(length);
+    }
+
+    /**
+     * Adds the current word of the reader to the buffer.
+     * A word which is bigger than the whole buffer or than
+     * the memory left is added only if the buffer is empty
+     *
+     * @param reader reader positioned at a word
+     * @return {@code true} if the word is added,
+     *         {@code false} if the buffer is full
+     */
+    boolean add(WordReader reader) {
+        int length = reader.length();
+        int required = used + varIntSize(length) + length + (size + 1) * ENTRY_SIZE;
+
+        if (required > data.length) {
+            if (required > capacity && size > 0 || !grow(required)) {
+                return false;
+            }
+        }
+
+        int offset = used;
+        used = putVarInt(length, used);
+        reader.copyTo(data, used);
+        used += length;
+        setEntry(size, toEntry(offset, 0));
+        size += 1;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Sorts words in the buffer
+     *
+     * @param algorithm sorting algorithm
+     * @param parallel {@code true} to sort words by multiple threads
+     */
+    void sort(SortAlgorithm algorithm, boolean parallel) {
+        algorithm.sort(this, parallel);
+    }
+
+    /**
+     * Writes all the words in the index order
+     *
+     * @param writer writer to write words with
+     * @throws IOException I/O error happened while writing words
+     */
+    void writeTo(WordWriter writer) throws IOException {
+        writeTo(writer, 0, size);
+    }
+
+    /**
+     * Writes the words of the range of entries in the index order
+     *
+     * @param writer writer to write words with
+     * @param from number of the first entry written
+     * @param to number of the entry after the last one written
+     * @throws IOException I/O error happened while writing words
+     */
+    void writeTo(WordWriter writer, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            int offset = offsetOf(getEntry(i));
+            int length = getVarInt(offset);
+            writer.write(data, offset + varIntSize(length), length);
+        }
+    }
+
+    /**
+     * Finds the entries of the first words of the sorted buffer
+     *
+     * @param count number of words
+     * @param distinct {@code true} to count copies of a word as a single word,
+     *                 all the copies are taken then
+     * @param keyed {@code true} if words are prefixed with sort keys,
+     *              then copies are the words having equal keys
+     * @return number of the entry after the words
+     */
+    int headEnd(long count, boolean distinct, boolean keyed) {
+        long words = 0;
+        for (int i = 0; i < size; i++) {
+            if (!distinct || i == 0 || !isCopy(i - 1, i, keyed)) {
+                if (words == count) {
+                    return i;
+                }
+                words += 1;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Finds the entries of the last words of the sorted buffer
+     *
+     * @param count number of words
+     * @param distinct {@code true} to count copies of a word as a single word,
+     *                 all the copies are taken then
+     * @param keyed {@code true} if words are prefixed with sort keys,
+     *              then copies are the words having equal keys
+     * @return number of the first entry of the words
+     */
+    int tailStart(long count, boolean distinct, boolean keyed) {
+        long words = 0;
+        for (int i = size - 1; i >= 0; i--) {
+            if (!distinct || i == size - 1 || !isCopy(i, i + 1, keyed)) {
+                if (words == count) {
+                    return i + 1;
+                }
+                words += 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Removes all words from the buffer except the range of entries.
+     * The words left are moved to the start of the array keeping their
+     * index order, their prefixes are cached from the start of the words
+     *
+     * @param from number of the first entry left
+     * @param to number of the entry after the last one left
+     */
+    void retain(int from, int to) {
+        int count = to - from;
+
+        // Words are moved in the order of their offsets, so none of them
+        // is overwritten before it is moved
+        long[] moves = new long[count];
+        for (int i = 0; i < count; i++) {
+            moves[i] = ((long) offsetOf(getEntry(from + i)) << 32) | i;
+        }
+        Arrays.sort(moves);
+
+        int[] offsets = new int[count];
+        int position = 0;
+        for (long move : moves) {
+            int offset = (int) (move >>> 32);
+            int length = getVarInt(offset);
+            int encodedLength = varIntSize(length) + length;
+            System.arraycopy(data, offset, data, position, encodedLength);
+            offsets[(int) move] = position;
+            position += encodedLength;
+        }
+
+        used = position;
+        size = count;
+        for (int i = 0; i < count; i++) {
+            setEntry(i, toEntry(offsets[i], 0));
+        }
+    }
+
+    /**
+     * Checks whether the words take more than half of the buffer array,
+     * including their index entries
+     *
+     * @return {@code true} if the buffer is more than half full
+     */
+    boolean isHalfFull() {
+        return used + (long) size * ENTRY_SIZE > data.length / 2;
+    }
+
+    /**
+     * Copies the word of the entry
+     *
+     * @param i entry number
+     * @return bytes of the word
+     */
+    byte[] copyWord(int i) {
+        int offset = offsetOf(getEntry(i));
+        int length = getVarInt(offset);
+        int start = offset + varIntSize(length);
+        return Arrays.copyOfRange(data, start, start + length);
+    }
+
+    /**
+     * Removes all words from the buffer
+     */
+    void clear() {
+        used = 0;
+        size = 0;
+
+        // Releases memory taken by a single word bigger than the buffer
+        if (data.length > capacity) {
+            memory.release(data.length - capacity);
+            allocate(capacity);
+        }
+    }
+
+    /**
+     * Drops the array of the buffer returning its memory to the manager.
+     * The buffer can't be used after that
+     */
+    void free() {
+        memory.release(data.length);
+        data = null;
+        index = null;
+    }
+
+    /**
+     * Gets the index entry which is the offset of a word in the buffer
+     * with its cached key prefix
+     *
+     * @param i entry number
+     * @return index entry
+     */
+    long getEntry(int i) {
+        return index.getLong(data.length - (i + 1) * ENTRY_SIZE);
+    }
+
+    void setEntry(int i, long entry) {
+        index.putLong(data.length - (i + 1) * ENTRY_SIZE, entry);
+    }
+
+    void swapEntries(int i, int j) {
+        long entry = getEntry(i);
+        setEntry(i, getEntry(j));
+        setEntry(j, entry);
+    }
+
+    static int offsetOf(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * Replaces the cached key prefix of the entry with
+     * the prefix starting from the given depth
+     *
+     * @param i entry number
+     * @param depth position in the word the prefix starts from
+     */
+    void cachePrefix(int i, int depth) {
+        setEntry(i, toEntry(offsetOf(getEntry(i)), depth));
+    }
+
+    /**
+     * Gets the key symbol of the word at the given depth
+     *
+     * @param entry index entry
+     * @param depth position in the word
+     * @param prefixDepth depth the cached prefix of the entry starts from,
+     *                    the symbol is taken from the prefix if it is cached
+     * @return 0 if the word is shorter than the depth, rank of the byte plus 1 otherwise
+     */
+    int symbolAt(long entry, int depth, int prefixDepth) {
+        int position = depth - prefixDepth;
+        if (position >= 0 && position < PREFIX_LENGTH) {
+            int shift = (PREFIX_LENGTH - 1 - position) * SYMBOL_SIZE;
+            return (int) (entry >>> (32 + shift)) & SYMBOL_MASK;
+        }
+
+        int offset = offsetOf(entry);
+        int length = getVarInt(offset);
+        return depth < length
+                ? Utf8Order.RANK[data[offset + varIntSize(length) + depth] & 0xFF] + 1
+                : 0;
+    }
+
+    /**
+     * Compares words of two entries in the same order as
+     * {@link String#compareTo} compares them. Both entries must have
+     * their prefixes cached from the same depth and their words must be
+     * equal before that depth
+     *
+     * @param first the first entry
+     * @param second the second entry
+     * @param prefixDepth depth the cached prefixes start from
+     * @return negative number, zero or positive number if the first word
+     *         is less than, equal to or greater than the second one
+     */
+    int compareEntries(long first, long second, int prefixDepth) {
+        int firstPrefix = (int) (first >>> 32);
+        int secondPrefix = (int) (second >>> 32);
+        if (firstPrefix != secondPrefix) {
+            return firstPrefix < secondPrefix ? -1 : 1;
+        }
+
+        // Equal prefixes ending with 0 mean both words end at the same position
+        if ((firstPrefix & SYMBOL_MASK) == 0) {
+            return 0;
+        }
+        return compareWords(offsetOf(first), offsetOf(second), prefixDepth + PREFIX_LENGTH);
+    }
+
+    // Checks whether the words of the entries are copies of a word.
+    // Keyed words are compared up to the key terminator
+    private boolean isCopy(int i, int j, boolean keyed) {
+        int first = offsetOf(getEntry(i));
+        int second = offsetOf(getEntry(j));
+        int firstLength = getVarInt(first);
+        int secondLength = getVarInt(second);
+        int firstStart = first + varIntSize(firstLength);
+        int secondStart = second + varIntSize(secondLength);
+        if (keyed) {
+            firstLength = KeyedWordReader.wordStart(data, firstStart, firstLength) - firstStart;
+            secondLength = KeyedWordReader.wordStart(data, secondStart, secondLength) - secondStart;
+        }
+        return Utf8Order.compare(data, firstStart, firstLength, data, secondStart, secondLength) == 0;
+    }
+
+    // Compares words at the given offsets starting from the given depth
+    private int compareWords(int first, int second, int depth) {
+        int firstLength = getVarInt(first);
+        int secondLength = getVarInt(second);
+        return Utf8Order.compare(data, first + varIntSize(firstLength) + depth, firstLength - depth,
+                data, second + varIntSize(secondLength) + depth, secondLength - depth);
+    }
+
+    // Creates an index entry of the word at the given offset
+    // with the key prefix starting from the given depth
+    private long toEntry(int offset, int depth) {
+        int length = getVarInt(offset);
+        int start = offset + varIntSize(length);
+
+        int prefix = 0;
+        for (int i = depth; i < depth + PREFIX_LENGTH; i++) {
+            int symbol = i < length ? Utf8Order.RANK[data[start + i] & 0xFF] + 1 : 0;
+            prefix = (prefix << SYMBOL_SIZE) | symbol;
+        }
+        return ((long) prefix << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    // Moves words and index to a bigger array keeping them at its start and end.
+    // Fails if the memory manager refuses the growth of a non-empty buffer
+    private boolean grow(int required) {
+        byte[] oldData = data;
+        int indexSize = size * ENTRY_SIZE;
+        int length = required > capacity
+                ? required
+                : (int) Math.min(capacity, Math.max(required, 2L * oldData.length));
+
+        // Both arrays are taken while words are copied
+        if (!memory.tryReserve(length)) {
+            if (size > 0) {
+                return false;
+            }
+            memory.reserve(length);
+        }
+
+        allocate(length);
+        System.arraycopy(oldData, 0, data, 0, used);
+        System.arraycopy(oldData, oldData.length - indexSize, data, data.length - indexSize, indexSize);
+        memory.release(oldData.length);
+        return true;
+    }
+
+    private void allocate(int length) {
+        data = new byte[length];
+        index = ByteBuffer.wrap(data);
+    }
+
+    private int putVarInt(int value, int offset) {
+        while ((value & ~0x7F) != 0) {
+            data[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[offset++] = (byte) value;
+        return offset;
+    }
+
+    private int getVarInt(int offset) {
+        byte b = data[offset];
+        if (b >= 0) {
+            return b;
+        }
+
+        int value = 0;
+        int shift = 0;
+        do {
+            b = data[offset++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size += 1;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,26 @@
+package org.odanc.filesorter;
+
+/**
+ * Order of words defined by their sort keys. A key is computed once for every
+ * word when the word is read from the source file, and then it is stored
+ * in front of the word in words buffers and temporary files, see
+ * {@link KeyedWordReader}. Sorting and merging compare the raw keys
+ * as unsigned bytes and never call the collation again.
+ * Words with equal keys are ordered the same way as strings.
+ * <p>
+ * Implementations are called by several threads at the same time.
+ * They describe themselves by {@link Object#toString()}, equal descriptions
+ * stand for the same order of words, see {@link Manifest}.
+ */
+interface Collation {
+
+    /**
+     * Computes the sort key of the word
+     *
+     * @param word array containing the UTF-8 encoded word
+     * @param offset offset of the word
+     * @param length length of the word in bytes
+     * @param key empty key to append the key bytes to
+     */
+    void computeKey(byte[] word, int offset, int length, SortKey key);
+}
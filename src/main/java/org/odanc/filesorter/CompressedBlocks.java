@@ -0,0 +1,106 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Format of compressed temporary files shared by {@link CompressingChannel}
+ * and {@link DecompressingChannel}. A file is a sequence of blocks, every block
+ * is a header of two ints, the original and the stored size of the block,
+ * followed by the stored block. Blocks which don't shrink are stored as is,
+ * their stored size is equal to the original one.
+ */
+final class CompressedBlocks {
+
+    // Maximum size of an original block in bytes
+    static final int BLOCK_SIZE = 65_536;
+
+    // Size of a block header in bytes
+    static final int HEADER_SIZE = 8;
+
+    private CompressedBlocks() { }
+
+    /**
+     * Compresses the block and stores it with its header
+     *
+     * @param block block with its original bytes
+     * @param codec codec to compress the block with
+     */
+    static void compress(Block block, BlockCodec codec) {
+        int capacity = HEADER_SIZE + Math.max(codec.maxCompressedLength(block.length), block.length);
+        if (block.stored == null || block.stored.length < capacity) {
+            block.stored = new byte[capacity];
+        }
+
+        int storedLength = codec.compress(block.data, block.length, block.stored, HEADER_SIZE);
+        if (storedLength >= block.length) {
+            System.arraycopy(block.data, 0, block.stored, HEADER_SIZE, block.length);
+            storedLength = block.length;
+        }
+
+        ByteBuffer.wrap(block.stored).putInt(0, block.length).putInt(4, storedLength);
+        block.storedLength = storedLength;
+    }
+
+    /**
+     * Restores original bytes of the stored block
+     *
+     * @param block block with its stored bytes and sizes
+     * @param codec codec to decompress the block with
+     */
+    static void decompress(Block block, BlockCodec codec) {
+        if (block.storedLength == block.length) {
+            System.arraycopy(block.stored, 0, block.data, 0, block.length);
+            return;
+        }
+
+        try {
+            codec.decompress(block.stored, 0, block.storedLength, block.data, block.length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Waits for the block processed in background
+     *
+     * @param future result of the block processing
+     * @return processed block
+     * @throws IOException error happened while processing the block
+     */
+    static Block await(Future<Block> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for compressed block");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+
+
+
+
+    /**
+     * Block of a temporary file, its original and stored bytes.
+     * Blocks are reused by the channels
+     */
+    static class Block {
+        byte[] data = new byte[BLOCK_SIZE];
+        int length;
+        byte[] stored;
+        int storedLength;
+    }
+}
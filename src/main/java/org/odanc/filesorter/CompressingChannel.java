@@ -0,0 +1,110 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Channel writing data to a temporary file by compressed blocks.
+ * Filled blocks are compressed by a pool of threads while the next blocks
+ * are being filled, and are written to the file in order by the thread
+ * writing to the channel.
+ */
+class CompressingChannel implements WritableByteChannel {
+
+    // Maximum number of blocks being compressed at the same time
+    private static final int MAX_PENDING_BLOCKS = 4;
+
+    private WritableByteChannel file;
+    private Executor executor;
+    private ThreadLocal<BlockCodec> codecs;
+
+    private CompressedBlocks.Block block = new CompressedBlocks.Block();
+    private Deque<Future<CompressedBlocks.Block>> pending = new ArrayDeque<>();
+    private Deque<CompressedBlocks.Block> freeBlocks = new ArrayDeque<>();
+    private boolean open = true;
+
+    /**
+     * Creates a channel compressing data written to the file
+     *
+     * @param file channel of the temporary file, closed with this channel
+     * @param executor executor compressing blocks
+     * @param codecs codecs of the executor threads
+     */
+    CompressingChannel(WritableByteChannel file, Executor executor, ThreadLocal<BlockCodec> codecs) {
+        this.file = file;
+        this.executor = executor;
+        this.codecs = codecs;
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        int written = source.remaining();
+        while (source.hasRemaining()) {
+            int count = Math.min(source.remaining(), block.data.length - block.length);
+            source.get(block.data, block.length, count);
+            block.length += count;
+
+            if (block.length == block.data.length) {
+                submit();
+            }
+        }
+        return written;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+
+        try {
+            if (block.length > 0) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeBlock(pending.poll());
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    // Sends the current block to be compressed, writes the oldest
+    // compressed block if there are too many of them pending
+    private void submit() throws IOException {
+        if (pending.size() == MAX_PENDING_BLOCKS) {
+            writeBlock(pending.poll());
+        }
+
+        CompressedBlocks.Block filled = block;
+        pending.add(CompletableFuture.supplyAsync(() -> {
+            CompressedBlocks.compress(filled, codecs.get());
+            return filled;
+        }, executor));
+
+        block = freeBlocks.isEmpty() ? new CompressedBlocks.Block() : freeBlocks.poll();
+        block.length = 0;
+    }
+
+    private void writeBlock(Future<CompressedBlocks.Block> future) throws IOException {
+        CompressedBlocks.Block compressed = CompressedBlocks.await(future);
+        ByteBuffer buffer = ByteBuffer.wrap(compressed.stored, 0,
+                CompressedBlocks.HEADER_SIZE + compressed.storedLength);
+        while (buffer.hasRemaining()) {
+            file.write(buffer);
+        }
+        freeBlocks.add(compressed);
+    }
+}
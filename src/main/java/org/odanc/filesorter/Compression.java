@@ -0,0 +1,38 @@
+package org.odanc.filesorter;
+
+import java.util.function.Supplier;
+
+/**
+ * Compression of temporary files
+ */
+enum Compression {
+
+    /**
+     * Temporary files are not compressed
+     */
+    NONE(null),
+
+    /**
+     * Temporary files are compressed by deflate at the fastest level
+     */
+    DEFLATE(DeflateCodec::new);
+
+    private Supplier<BlockCodec> codecFactory;
+
+    Compression(Supplier<BlockCodec> codecFactory) {
+        this.codecFactory = codecFactory;
+    }
+
+    boolean isEnabled() {
+        return codecFactory != null;
+    }
+
+    /**
+     * Creates a codec compressing blocks of temporary files
+     *
+     * @return new codec, {@code null} if temporary files are not compressed
+     */
+    BlockCodec newCodec() {
+        return codecFactory != null ? codecFactory.get() : null;
+    }
+}
@@ -3,65 +3,251 @@ package org.odanc.filesorter;
 import java.io.File;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Configuration with all required setting for sorting files.
- * It stores settings like path to the source file, path to 
- * save sorted output file, words count to load from the source
- * file at once and the delimiter used to separate words in
- * the source file.
+ * It stores settings like paths to the source files, path to 
+ * save sorted output file, sizes of words buffers in bytes
+ * and the delimiter used to separate words in the source file.
  */
 class Config {
-    private Path sourceFile;
+    private List<Path> sourceFiles;
     private Path outputFile;
-    private int bufferSize;
-    private int maxWordSize;
     private String delimiter;
+    private boolean recordMode;
+    private byte recordSeparator;
+    private int sortThreads;
+    private boolean mappedInput;
+    private int readThreads;
+    private int chunkCount;
+    private int chunkSize;
+    private boolean parallelSort;
+    private SortAlgorithm sortAlgorithm;
+    private RunStrategy runStrategy;
+    private boolean presortedDetection;
+    private Collation collation;
+    private DuplicateMode duplicateMode;
+    private Compression compression;
+    private int mergeFanIn;
+    private int mergeThreads;
+    private long memoryBudget;
+    private int readAheadSize;
+    private int outputBufferSize;
+    private int outputBufferCount;
+    private boolean forceOutput;
+    private Path workDirectory;
+    private long wordLimit;
+    private boolean lastWords;
     
     // Default name of the sorted output file
     static final Path DEFAULT_OUTPUT_FILE = Paths.get(
             System.getProperty("user.dir") + File.separator + "sorted.txt");
     
-    // Default maximum single word size used to calculate words buffer size
-    private static final int DEFAULT_MAX_WORD_SIZE = 100;
+    // Minimum size of a words buffer in bytes, words buffers are sized in bytes only
+    static final int MIN_CHUNK_SIZE = 1_048_576;
     
-    // Minimum and maximum number of words to load from file at once,
-    // sort them and store in a temporary file
-    static final int MIN_BUFFER_SIZE = 200_000;
-    static final int MAX_BUFFER_SIZE = 1_000_000;
+    // Maximum size of a words buffer in bytes, limited by the maximum array size
+    private static final int MAX_CHUNK_SIZE = Integer.MAX_VALUE - 8;
     
     // Heap size in bytes not meant to be available for words buffer
     // It doesn't really mean that it won't be available for this
     // Used to calculate words buffer size
     private static final int RESERVED_HEAP_SIZE = 2_097_152;
     
+    // Number of chunk buffers being written at the same time
+    // in addition to the number of reading and sorting threads
+    private static final int EXTRA_CHUNK_COUNT = 1;
+    
+    // Minimum and default maximum number of temporary files merged at once.
+    // Every merged file takes a read buffer, so the number also depends on heap size
+    static final int MIN_MERGE_FAN_IN = 2;
+    static final int DEFAULT_MAX_MERGE_FAN_IN = 512;
+    
+    // Minimum and maximum memory taken by blocks of a merged file read ahead in bytes.
+    // Files merged at once share the memory left by their read buffers
+    static final int MIN_READ_AHEAD_SIZE = 196_608;
+    static final int MAX_READ_AHEAD_SIZE = 3_145_728;
+    
+    // Minimum and default size of an output buffer in bytes
+    static final int MIN_OUTPUT_BUFFER_SIZE = 4_096;
+    static final int DEFAULT_OUTPUT_BUFFER_SIZE = 1_048_576;
+    
+    // Minimum and default number of output buffers, one is being filled
+    // while the others are being written
+    static final int MIN_OUTPUT_BUFFER_COUNT = 2;
+    static final int DEFAULT_OUTPUT_BUFFER_COUNT = 2;
+    
     private Config() { }
 
     /**
      * Creates a configuration builder
      * 
      * @param sourceFile path to source file
-     * @param heapSize heap size in megabytes
+     * @param heapSize heap size in megabytes, the maximum heap
+     *                 of the running JVM if it is not positive
      */
     static ConfigBuilder newBuilder(Path sourceFile, Integer heapSize) {
-        return new Config().new ConfigBuilder(sourceFile, heapSize);
+        return newBuilder(Collections.singletonList(sourceFile), heapSize);
     }
 
+    /**
+     * Creates a configuration builder of several source files
+     * sorted together into one output file
+     * 
+     * @param sourceFiles paths to source files, at least one
+     * @param heapSize heap size in megabytes, the maximum heap
+     *                 of the running JVM if it is not positive
+     */
+    static ConfigBuilder newBuilder(List<Path> sourceFiles, Integer heapSize) {
+        if (sourceFiles.isEmpty()) {
+            throw new IllegalArgumentException("no source files");
+        }
+        return new Config().new ConfigBuilder(sourceFiles, heapSize);
+    }
+
+    /**
+     * Creates a configuration builder of words which are not read
+     * from source files, see {@link WordSorter}
+     * 
+     * @param heapSize heap size in megabytes, the maximum heap
+     *                 of the running JVM if it is not positive
+     */
+    static ConfigBuilder newBuilder(Integer heapSize) {
+        return new Config().new ConfigBuilder(Collections.emptyList(), heapSize);
+    }
+
+    /**
+     * Gets the first source file, the only one unless
+     * several files are sorted together
+     * 
+     * @return path to the source file
+     */
     Path getSourceFile() {
-        return sourceFile;
+        return sourceFiles.get(0);
     }
 
-    Path getOutputFile() {
-        return outputFile;
+    List<Path> getSourceFiles() {
+        return sourceFiles;
     }
 
-    int getBufferSize() {
-        return bufferSize;
+    Path getOutputFile() {
+        return outputFile;
     }
 
     String getDelimiter() {
         return delimiter;
     }
+
+    boolean isRecordMode() {
+        return recordMode;
+    }
+
+    byte getRecordSeparator() {
+        return recordSeparator;
+    }
+
+    int getSortThreads() {
+        return sortThreads;
+    }
+
+    boolean isMappedInput() {
+        return mappedInput;
+    }
+
+    int getReadThreads() {
+        return readThreads;
+    }
+
+    int getChunkCount() {
+        return chunkCount;
+    }
+
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    boolean isParallelSort() {
+        return parallelSort;
+    }
+
+    SortAlgorithm getSortAlgorithm() {
+        return sortAlgorithm;
+    }
+
+    RunStrategy getRunStrategy() {
+        return runStrategy;
+    }
+
+    boolean isPresortedDetection() {
+        return presortedDetection;
+    }
+
+    Collation getCollation() {
+        return collation;
+    }
+
+    DuplicateMode getDuplicateMode() {
+        return duplicateMode;
+    }
+
+    Compression getCompression() {
+        return compression;
+    }
+
+    int getMergeFanIn() {
+        return mergeFanIn;
+    }
+
+    /**
+     * Gets the memory budget shared by words buffers while the source file
+     * is split and by read buffers while temporary files are merged
+     * 
+     * @return memory budget in bytes
+     */
+    long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    int getMergeThreads() {
+        return mergeThreads;
+    }
+
+    int getReadAheadSize() {
+        return readAheadSize;
+    }
+
+    int getOutputBufferSize() {
+        return outputBufferSize;
+    }
+
+    int getOutputBufferCount() {
+        return outputBufferCount;
+    }
+
+    boolean isForceOutput() {
+        return forceOutput;
+    }
+
+    Path getWorkDirectory() {
+        return workDirectory;
+    }
+
+    /**
+     * Gets the number of words written to the output file,
+     * the first or the last ones in sorted order
+     * 
+     * @return number of words, 0 if all the words are written
+     */
+    long getWordLimit() {
+        return wordLimit;
+    }
+
+    boolean isLastWords() {
+        return lastWords;
+    }
     
     
     
@@ -69,39 +255,43 @@ class Config {
     
     /**
      * Configuration builder used for flexible tuning configuration.
-     * It creates configuration with stores path to given source file
+     * It creates configuration with stores paths to given source files
      * and desired maximum heap size. Optionally it is possible to set
-     * the maximum size of a single word, the delimiter used to separate
-     * words in the source file and a path to save the sorted output file
+     * the delimiter used to separate words in the source file,
+     * a path to save the sorted output file and tuning settings
      */
     class ConfigBuilder {
         private int maxHeapSize;
+        private int maxChunkCount;
+        private int maxChunkSize;
+        private int maxMergeFanIn;
+        private int maxReadAheadSize;
 
-        private ConfigBuilder(Path sourceFile, int heapSize) {
-            Config.this.sourceFile = sourceFile;
+        private ConfigBuilder(List<Path> sourceFiles, int heapSize) {
+            Config.this.sourceFiles = new ArrayList<>(sourceFiles);
             maxHeapSize = heapSize;
         }
 
         /**
-         * Sets the path to save the sorted output file
+         * Adds source files sorted together with the others
+         * into the same output file
          * 
-         * @param outputFile path to save the output file
+         * @param files paths to source files
          * @return configuration builder
          */
-        ConfigBuilder setOutputFile(Path outputFile) {
-            Config.this.outputFile = outputFile;
+        ConfigBuilder addSourceFiles(List<Path> files) {
+            sourceFiles.addAll(files);
             return this;
         }
 
         /**
-         * Sets the maximum single word size in the source file.
-         * Used to calculate the words buffer size
+         * Sets the path to save the sorted output file
          * 
-         * @param wordSize maximum single word size
+         * @param outputFile path to save the output file
          * @return configuration builder
          */
-        ConfigBuilder setMaxWordSize(int wordSize) {
-            maxWordSize = wordSize;
+        ConfigBuilder setOutputFile(Path outputFile) {
+            Config.this.outputFile = outputFile;
             return this;
         }
 
@@ -116,6 +306,305 @@ class Config {
             return this;
         }
 
+        /**
+         * Switches sorting to records, e.g. lines, instead of words.
+         * Records are delimited by the single separator byte and are
+         * written to the output file followed by the same separator.
+         * Overrides the word delimiter. Records are ordered by key fields
+         * if the collation is {@link RecordKeys}
+         * 
+         * @param separator ASCII character separating records, e.g. '\n'
+         * @return configuration builder
+         */
+        ConfigBuilder setRecordSeparator(char separator) {
+            if (separator >= 0x80) {
+                throw new IllegalArgumentException("record separator is not an ASCII character");
+            }
+            recordMode = true;
+            recordSeparator = (byte) separator;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads sorting words buffers
+         * while the source file is being read
+         * 
+         * @param threads number of sorting threads
+         * @return configuration builder
+         */
+        ConfigBuilder setSortThreads(int threads) {
+            sortThreads = threads;
+            return this;
+        }
+
+        /**
+         * Sets whether the source file is mapped to memory instead of being
+         * read through a buffer. Only mapped source file can be read
+         * by several threads
+         * 
+         * @param mapped {@code true} to map the source file to memory
+         * @return configuration builder
+         */
+        ConfigBuilder setMappedInput(boolean mapped) {
+            mappedInput = mapped;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads reading separate parts
+         * of the source file mapped to memory, or the number of source
+         * files read at once if there are several of them
+         * 
+         * @param threads number of reading threads
+         * @return configuration builder
+         */
+        ConfigBuilder setReadThreads(int threads) {
+            readThreads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of words buffers kept in memory
+         * at the same time. The actual number of buffers also depends
+         * on how many of them fit in the heap
+         * 
+         * @param chunkCount maximum number of words buffers
+         * @return configuration builder
+         */
+        ConfigBuilder setMaxChunkCount(int chunkCount) {
+            maxChunkCount = chunkCount;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size of a words buffer in bytes.
+         * Every words buffer is sorted and written to a separate temporary file
+         * 
+         * @param size maximum size of words buffer in bytes
+         * @return configuration builder
+         */
+        ConfigBuilder setMaxChunkSize(int size) {
+            maxChunkSize = size;
+            return this;
+        }
+
+        /**
+         * Sets whether every words buffer is sorted by multiple threads
+         * 
+         * @param parallel {@code true} to sort buffers in parallel
+         * @return configuration builder
+         */
+        ConfigBuilder setParallelSort(boolean parallel) {
+            parallelSort = parallel;
+            return this;
+        }
+
+        /**
+         * Sets the algorithm sorting words buffers,
+         * multikey quicksort by default
+         * 
+         * @param algorithm sorting algorithm
+         * @return configuration builder
+         */
+        ConfigBuilder setSortAlgorithm(SortAlgorithm algorithm) {
+            sortAlgorithm = algorithm;
+            return this;
+        }
+
+        /**
+         * Sets the strategy splitting the source file into sorted
+         * temporary files, words buffers are sorted one by one by default.
+         * Replacement selection writes fewer and longer temporary files
+         * ignoring the sorting algorithm. Words buffers are always sorted
+         * if the output file is limited to the first or the last words
+         * 
+         * @param strategy run generation strategy
+         * @return configuration builder
+         */
+        ConfigBuilder setRunStrategy(RunStrategy strategy) {
+            runStrategy = strategy;
+            return this;
+        }
+
+        /**
+         * Sets whether the source file is read once more before sorting
+         * to find already sorted stretches of words. Stretches at least
+         * as long as a words buffer are merged straight from the source file.
+         * Stretches are not looked for if the output file is limited
+         * to the first or the last words
+         * 
+         * @param detection {@code true} to look for sorted stretches
+         * @return configuration builder
+         */
+        ConfigBuilder setPresortedDetection(boolean detection) {
+            presortedDetection = detection;
+            return this;
+        }
+
+        /**
+         * Sets the order of words, words are ordered the same way
+         * as strings by default. Sort keys of words are computed once
+         * and stored in front of the words until they are written
+         * to the output file
+         * 
+         * @param order collation of words, {@code null} for the natural order
+         * @return configuration builder
+         */
+        ConfigBuilder setCollation(Collation order) {
+            collation = order;
+            return this;
+        }
+
+        /**
+         * Sets how repeated words are written to the output file,
+         * all copies are kept by default. Collapsed copies of words
+         * are not written to temporary files either
+         * 
+         * @param mode duplicate words mode
+         * @return configuration builder
+         */
+        ConfigBuilder setDuplicateMode(DuplicateMode mode) {
+            duplicateMode = mode;
+            return this;
+        }
+
+        /**
+         * Sets the compression of temporary files, they are not compressed
+         * by default. Compression pays off if disk is slower than the codec
+         * 
+         * @param compression compression of temporary files
+         * @return configuration builder
+         */
+        ConfigBuilder setCompression(Compression compression) {
+            Config.this.compression = compression;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of temporary files merged at once.
+         * If there are more temporary files, they are merged in several passes
+         * 
+         * @param fanIn maximum number of files merged at once
+         * @return configuration builder
+         */
+        ConfigBuilder setMaxMergeFanIn(int fanIn) {
+            maxMergeFanIn = fanIn;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads merging separate ranges of words
+         * into the output file at once, as many as sorting threads by default.
+         * Words are merged by a single thread if copies of words are collapsed,
+         * words are ordered by a collation, temporary files are compressed,
+         * the source file has sorted stretches or the output file is limited
+         * to the first or the last words
+         * 
+         * @param threads number of merging threads
+         * @return configuration builder
+         */
+        ConfigBuilder setMergeThreads(int threads) {
+            mergeThreads = threads;
+            return this;
+        }
+
+        /**
+         * Sets the maximum memory taken by blocks of a merged file
+         * read ahead in bytes. The actual size depends on how many files
+         * are merged at once and how much memory they share
+         * 
+         * @param size maximum size of read ahead blocks of a file in bytes
+         * @return configuration builder
+         */
+        ConfigBuilder setMaxReadAheadSize(int size) {
+            maxReadAheadSize = size;
+            return this;
+        }
+
+        /**
+         * Sets the size of a buffer written to temporary files
+         * and to the output file in bytes
+         * 
+         * @param size size of output buffer in bytes
+         * @return configuration builder
+         */
+        ConfigBuilder setOutputBufferSize(int size) {
+            outputBufferSize = size;
+            return this;
+        }
+
+        /**
+         * Sets the number of output buffers. One buffer is filled with words
+         * while the others are being written by a separate thread
+         * 
+         * @param count number of output buffers
+         * @return configuration builder
+         */
+        ConfigBuilder setOutputBufferCount(int count) {
+            outputBufferCount = count;
+            return this;
+        }
+
+        /**
+         * Sets whether the output file is forced to the storage device
+         * before sorting is finished, it is left to the system by default
+         * 
+         * @param force {@code true} to force the output file
+         * @return configuration builder
+         */
+        ConfigBuilder setForceOutput(boolean force) {
+            forceOutput = force;
+            return this;
+        }
+
+        /**
+         * Sets the directory temporary files and checkpoints of the sorting
+         * are kept in. Sorting with a work directory resumes from its last
+         * checkpoint if it was stopped, temporary files are written
+         * to the default temporary directory without checkpoints otherwise.
+         * The directory is locked by one sorting at a time
+         * 
+         * @param directory work directory, created if it doesn't exist
+         * @return configuration builder
+         */
+        ConfigBuilder setWorkDirectory(Path directory) {
+            workDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Limits the output file to the first words in sorted order,
+         * the same way as {@code sort | head} does. Copies of words
+         * collapsed into one are counted as a single word
+         * 
+         * @param count number of words written to the output file
+         * @return configuration builder
+         */
+        ConfigBuilder setFirstWords(long count) {
+            return setWordLimit(count, false);
+        }
+
+        /**
+         * Limits the output file to the last words in sorted order,
+         * the same way as {@code sort | tail} does. Copies of words
+         * collapsed into one are counted as a single word
+         * 
+         * @param count number of words written to the output file
+         * @return configuration builder
+         */
+        ConfigBuilder setLastWords(long count) {
+            return setWordLimit(count, true);
+        }
+
+        private ConfigBuilder setWordLimit(long count, boolean last) {
+            if (count <= 0) {
+                throw new IllegalArgumentException("number of words is not positive");
+            }
+            wordLimit = count;
+            lastWords = last;
+            return this;
+        }
+
         /**
          * Creates a configuration with all required settings
          * 
@@ -124,34 +613,124 @@ class Config {
         Config build() {
             Config config = new Config();
             
-            if (maxHeapSize > 0) {
-
-                // Approximate minimum memory usage in bytes for one word of MAX_WORD_SIZE length
-                // based on http://stackoverflow.com/a/31207050
-                int wordSize = 8 * (((maxWordSize * 2) + 45) / 8) - 8;
-
-                // Sets the appropriate words buffer size based on heap size,
-                // single word size and reserved heap size. Ensures that heap size
-                // value is between MIN_BUFFER_SIZE and MAX_BUFFER_SIZE
-                int bufferSize = (maxHeapSize * 1024 * 1024 - RESERVED_HEAP_SIZE) / wordSize;
-                config.bufferSize = Math.min(Math.max(bufferSize, MIN_BUFFER_SIZE), MAX_BUFFER_SIZE);
-
+            // Do not permit less than one sorting thread
+            config.sortThreads = sortThreads > 0
+                    ? sortThreads
+                    : Runtime.getRuntime().availableProcessors();
+            
+            // Source file is read by one thread unless it is mapped to memory.
+            // Several source files are read by a thread per file, as many
+            // at once as sorting threads by default
+            if (sourceFiles.size() > 1) {
+                config.readThreads = Math.min(readThreads > 0 ? readThreads : config.sortThreads,
+                        sourceFiles.size());
             } else {
-                config.bufferSize = MIN_BUFFER_SIZE;
+                config.readThreads = mappedInput && readThreads > 0
+                        ? readThreads
+                        : 1;
+            }
+            
+            int chunkLimit = maxChunkCount > 0
+                    ? maxChunkCount
+                    : config.sortThreads + config.readThreads + EXTRA_CHUNK_COUNT;
+            
+            config.compression = compression != null
+                    ? compression
+                    : Compression.NONE;
+            
+            // Do not permit output buffers too small to be written efficiently
+            config.outputBufferSize = outputBufferSize > 0
+                    ? Math.max(outputBufferSize, MIN_OUTPUT_BUFFER_SIZE)
+                    : DEFAULT_OUTPUT_BUFFER_SIZE;
+            config.outputBufferCount = outputBufferCount > 0
+                    ? Math.max(outputBufferCount, MIN_OUTPUT_BUFFER_COUNT)
+                    : DEFAULT_OUTPUT_BUFFER_COUNT;
+            
+            // Every merged file takes a read buffer, blocks being read ahead
+            // and blocks being decompressed
+            int readBufferSize = config.compression.isEnabled()
+                    ? ByteWordReader.DEFAULT_BUFFER_SIZE + DecompressingChannel.BUFFER_SIZE
+                    : ByteWordReader.DEFAULT_BUFFER_SIZE;
+            int mergeBufferSize = readBufferSize + MIN_READ_AHEAD_SIZE;
+            
+            int fanInLimit = maxMergeFanIn > 0
+                    ? Math.max(maxMergeFanIn, MIN_MERGE_FAN_IN)
+                    : DEFAULT_MAX_MERGE_FAN_IN;
+            
+            // Memory budget in bytes is the heap without its reserved part and
+            // the output buffers, which are taken during the whole sorting.
+            // The maximum heap of the running JVM is used if heap size is not set
+            long heapSize = maxHeapSize > 0
+                    ? maxHeapSize * 1_048_576L
+                    : Runtime.getRuntime().maxMemory();
+            long budget = Math.max(heapSize - RESERVED_HEAP_SIZE
+                    - (long) config.outputBufferCount * config.outputBufferSize, 2L * MIN_CHUNK_SIZE);
+            config.memoryBudget = budget;
+            
+            // Words buffers share the budget while the source file is split.
+            // There are as many buffers as the pipeline keeps busy unless
+            // the buffers get smaller than the minimum size then. A buffer takes
+            // no more than half of its share, since the buffer array is copied
+            // to a bigger one while it grows
+            long chunkCount = Math.min(chunkLimit, budget / (2L * MIN_CHUNK_SIZE));
+            config.chunkCount = (int) Math.max(chunkCount, 1);
+            config.chunkSize = (int) Math.min(budget / (2L * config.chunkCount), MAX_CHUNK_SIZE);
+            
+            // Read buffers share the budget while temporary files are merged,
+            // words buffers are released by then. Sets the number of files merged
+            // at once to the number of read buffers which fit in the budget
+            long fanIn = budget / mergeBufferSize;
+            config.mergeFanIn = (int) Math.min(Math.max(fanIn, MIN_MERGE_FAN_IN), fanInLimit);
+            config.mergeThreads = mergeThreads > 0
+                    ? mergeThreads
+                    : config.sortThreads;
+            
+            // Files merged at once share the rest of the budget for read ahead blocks
+            long readAheadSize = budget / config.mergeFanIn - readBufferSize;
+            config.readAheadSize = (int) Math.min(
+                    Math.max(readAheadSize, MIN_READ_AHEAD_SIZE), MAX_READ_AHEAD_SIZE);
+            
+            if (maxChunkSize > 0) {
+                config.chunkSize = Math.min(config.chunkSize, maxChunkSize);
             }
             
-            // Do not permit negative single word size
-            config.maxWordSize = maxWordSize > 0
-                    ? maxWordSize
-                    : DEFAULT_MAX_WORD_SIZE;
+            if (maxReadAheadSize > 0) {
+                config.readAheadSize = Math.min(config.readAheadSize, maxReadAheadSize);
+            }
             
             // If the output file is not set use the current working directory
             config.outputFile = outputFile != null
                     ? outputFile
                     : DEFAULT_OUTPUT_FILE;
             
-            config.sourceFile = sourceFile;
+            config.forceOutput = forceOutput;
+            config.workDirectory = workDirectory;
+            config.wordLimit = wordLimit;
+            config.lastWords = lastWords;
+            
+            config.sourceFiles = Collections.unmodifiableList(new ArrayList<>(sourceFiles));
             config.delimiter = delimiter;
+            config.recordMode = recordMode;
+            config.recordSeparator = recordSeparator;
+            
+            // Records are read as words delimited by the separator taken literally
+            if (recordMode) {
+                char c = (char) recordSeparator;
+                config.delimiter = Character.isLetterOrDigit(c) ? String.valueOf(c) : "\\" + c;
+            }
+            config.mappedInput = mappedInput;
+            config.presortedDetection = presortedDetection;
+            config.collation = collation;
+            config.parallelSort = parallelSort;
+            config.sortAlgorithm = sortAlgorithm != null
+                    ? sortAlgorithm
+                    : SortAlgorithm.MULTIKEY_QUICKSORT;
+            config.runStrategy = runStrategy != null
+                    ? runStrategy
+                    : RunStrategy.CHUNKS;
+            config.duplicateMode = duplicateMode != null
+                    ? duplicateMode
+                    : DuplicateMode.KEEP;
             
             return config;
         }
@@ -0,0 +1,93 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+
+/**
+ * Reader counting words of the underlying reader and their bytes
+ * in the sorting metrics. Every word is counted with one delimiter byte.
+ * Counts are passed to the metrics in batches, so counting takes
+ * no shared memory writes per word. Words are counted in the metrics
+ * of their source file too, together with the time the reader was open.
+ */
+class CountingWordReader implements WordReader {
+
+    // Number of bytes counted before they are passed to the metrics
+    private static final int BATCH_SIZE = 1_048_576;
+
+    private WordReader reader;
+    private SortMetrics metrics;
+    private InputMetrics input;
+    private long openTime = System.nanoTime();
+    private long words;
+    private long bytes;
+
+    CountingWordReader(WordReader reader, SortMetrics metrics) {
+        this(reader, metrics, null);
+    }
+
+    /**
+     * Creates a reader counting words of the source file
+     *
+     * @param reader reader of the source file
+     * @param metrics metrics of the sorting
+     * @param input metrics of the source file, {@code null} not to count them apart
+     */
+    CountingWordReader(WordReader reader, SortMetrics metrics, InputMetrics input) {
+        this.reader = reader;
+        this.metrics = metrics;
+        this.input = input;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (!reader.next()) {
+            flush();
+            return false;
+        }
+
+        words += 1;
+        bytes += reader.length() + 1;
+        if (bytes >= BATCH_SIZE) {
+            flush();
+        }
+        return true;
+    }
+
+    @Override
+    public String word() {
+        return reader.word();
+    }
+
+    @Override
+    public int length() {
+        return reader.length();
+    }
+
+    @Override
+    public void copyTo(byte[] destination, int offset) {
+        reader.copyTo(destination, offset);
+    }
+
+    @Override
+    public long position() {
+        return reader.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (input != null) {
+            input.addReadTime(System.nanoTime() - openTime);
+        }
+        reader.close();
+    }
+
+    private void flush() {
+        metrics.addRead(words, bytes);
+        if (input != null) {
+            input.addRead(words, bytes);
+        }
+        words = 0;
+        bytes = 0;
+    }
+}
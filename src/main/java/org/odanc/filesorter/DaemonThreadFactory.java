@@ -0,0 +1,29 @@
+package org.odanc.filesorter;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory of daemon threads named after their role,
+ * so background threads never keep the application running
+ */
+class DaemonThreadFactory implements ThreadFactory {
+    private String name;
+    private AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Creates a factory of threads named {@code filesorter-<name>-<number>}
+     *
+     * @param name role of the threads
+     */
+    DaemonThreadFactory(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "filesorter-" + name + "-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
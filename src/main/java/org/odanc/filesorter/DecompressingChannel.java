@@ -0,0 +1,139 @@
+package org.odanc.filesorter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Channel reading data from a temporary file written by {@link CompressingChannel}.
+ * Stored blocks are read ahead by the thread reading from the channel and
+ * decompressed by a pool of threads while the previous blocks are being read.
+ */
+class DecompressingChannel implements ReadableByteChannel {
+
+    // Number of blocks read ahead
+    private static final int PREFETCH_BLOCKS = 2;
+
+    // Approximate memory taken by the channel blocks in bytes
+    static final int BUFFER_SIZE = (PREFETCH_BLOCKS + 1) * 2 * CompressedBlocks.BLOCK_SIZE;
+
+    private ReadableByteChannel file;
+    private Executor executor;
+    private ThreadLocal<BlockCodec> codecs;
+
+    private CompressedBlocks.Block block;
+    private int position;
+    private Deque<Future<CompressedBlocks.Block>> pending = new ArrayDeque<>();
+    private Deque<CompressedBlocks.Block> freeBlocks = new ArrayDeque<>();
+    private ByteBuffer header = ByteBuffer.allocate(CompressedBlocks.HEADER_SIZE);
+    private boolean endOfFile;
+    private boolean open = true;
+
+    /**
+     * Creates a channel decompressing data read from the file
+     *
+     * @param file channel of the temporary file, closed with this channel
+     * @param executor executor decompressing blocks
+     * @param codecs codecs of the executor threads
+     * @throws IOException I/O error happened while reading file
+     */
+    DecompressingChannel(ReadableByteChannel file, Executor executor, ThreadLocal<BlockCodec> codecs)
+            throws IOException {
+        this.file = file;
+        this.executor = executor;
+        this.codecs = codecs;
+        prefetch();
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        while (block == null || position == block.length) {
+            if (block != null) {
+                freeBlocks.add(block);
+                block = null;
+            }
+            if (pending.isEmpty()) {
+                return -1;
+            }
+
+            block = CompressedBlocks.await(pending.poll());
+            position = 0;
+            prefetch();
+        }
+
+        int count = Math.min(destination.remaining(), block.length - position);
+        destination.put(block.data, position, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        file.close();
+    }
+
+    // Reads stored blocks and sends them to be decompressed
+    // until enough blocks are read ahead
+    private void prefetch() throws IOException {
+        while (!endOfFile && pending.size() < PREFETCH_BLOCKS) {
+            CompressedBlocks.Block stored = readBlock();
+            if (stored == null) {
+                endOfFile = true;
+                return;
+            }
+
+            pending.add(CompletableFuture.supplyAsync(() -> {
+                CompressedBlocks.decompress(stored, codecs.get());
+                return stored;
+            }, executor));
+        }
+    }
+
+    // Reads the next stored block, null at the end of file
+    private CompressedBlocks.Block readBlock() throws IOException {
+        header.clear();
+        if (!readFully(header) && header.position() == 0) {
+            return null;
+        }
+        if (header.hasRemaining()) {
+            throw new EOFException("temporary file is truncated");
+        }
+
+        CompressedBlocks.Block stored = freeBlocks.isEmpty() ? new CompressedBlocks.Block() : freeBlocks.poll();
+        stored.length = header.getInt(0);
+        stored.storedLength = header.getInt(4);
+        if (stored.data.length < stored.length) {
+            stored.data = new byte[stored.length];
+        }
+        if (stored.stored == null || stored.stored.length < stored.storedLength) {
+            stored.stored = new byte[stored.storedLength];
+        }
+
+        if (!readFully(ByteBuffer.wrap(stored.stored, 0, stored.storedLength))) {
+            throw new EOFException("temporary file is truncated");
+        }
+        return stored;
+    }
+
+    // Reads bytes until the buffer is full, returns false at the end of file
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
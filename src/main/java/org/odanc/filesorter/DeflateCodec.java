@@ -0,0 +1,49 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Block codec backed by JDK {@link Deflater} at the fastest level,
+ * which is cheap enough to keep up with the disk
+ */
+class DeflateCodec implements BlockCodec {
+    private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private Inflater inflater = new Inflater();
+
+    @Override
+    public int maxCompressedLength(int length) {
+        // The same bound as zlib compressBound gives
+        return length + (length >> 12) + (length >> 14) + (length >> 25) + 13;
+    }
+
+    @Override
+    public int compress(byte[] source, int length, byte[] destination, int offset) {
+        deflater.reset();
+        deflater.setInput(source, 0, length);
+        deflater.finish();
+        return deflater.deflate(destination, offset, destination.length - offset);
+    }
+
+    @Override
+    public void decompress(byte[] source, int offset, int length, byte[] destination, int originalLength)
+            throws IOException {
+        inflater.reset();
+        inflater.setInput(source, offset, length);
+        try {
+            if (inflater.inflate(destination, 0, originalLength) != originalLength || !inflater.finished()) {
+                throw new IOException("compressed block of temporary file is corrupted");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("compressed block of temporary file is corrupted", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+        inflater.end();
+    }
+}
@@ -0,0 +1,90 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+
+/**
+ * Writer collapsing equal consecutive words into a single word with
+ * the total number of copies, which is passed to the underlying writer.
+ * Written in sorted order, all copies of a word are collapsed, so it is
+ * used for both sorted words buffers and merged temporary files.
+ * Keyed words are equal if their sort keys are equal, the first
+ * of them is written, see {@link KeyedWordReader}.
+ */
+class DuplicateFilter implements WordWriter {
+
+    // Initial size of the pending word buffer in bytes
+    private static final int INITIAL_SIZE = 256;
+
+    private WordWriter writer;
+    private boolean keyed;
+
+    // The last written word and the number of its copies
+    // which are not passed to the underlying writer yet
+    private byte[] word = new byte[INITIAL_SIZE];
+    private int wordLength = -1;
+    private long wordCount;
+
+    DuplicateFilter(WordWriter writer, boolean keyed) {
+        this.writer = writer;
+        this.keyed = keyed;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        write(bytes, offset, length, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length, long count) throws IOException {
+        if (isPending(bytes, offset, length)) {
+            wordCount += count;
+            return;
+        }
+
+        flush();
+        if (length > word.length) {
+            word = new byte[Math.max(length, word.length * 2)];
+        }
+        System.arraycopy(bytes, offset, word, 0, length);
+        wordLength = length;
+        wordCount = count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            writer.close();
+        }
+    }
+
+    // Checks whether the word is equal to the pending one.
+    // Keyed words are compared up to the key terminator
+    private boolean isPending(byte[] bytes, int offset, int length) {
+        if (wordLength < 0) {
+            return false;
+        }
+        if (keyed) {
+            length = KeyedWordReader.wordStart(bytes, offset, length) - offset;
+            if (length > wordLength || length > 0 && word[length - 1] != 0) {
+                return false;
+            }
+        } else if (length != wordLength) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != word[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void flush() throws IOException {
+        if (wordLength >= 0) {
+            writer.write(word, 0, wordLength, wordCount);
+            wordLength = -1;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.odanc.filesorter;
+
+/**
+ * Ways of writing repeated words to the sorted output file
+ */
+enum DuplicateMode {
+
+    /**
+     * Every copy of a word is written
+     */
+    KEEP,
+
+    /**
+     * Every word is written once, the same way as {@code sort -u} does
+     */
+    UNIQUE,
+
+    /**
+     * Every word is written once prefixed with the number of its copies,
+     * the same way as {@code uniq -c} does
+     */
+    COUNT;
+
+    /**
+     * Wraps the writer of sorted words, so that copies of a word
+     * are collapsed before they reach the writer
+     *
+     * @param writer writer of sorted words
+     * @param keyed {@code true} if words are prefixed with sort keys,
+     *              then copies are the words having equal keys
+     * @return the same writer if copies are kept, collapsing writer otherwise
+     */
+    WordWriter filter(WordWriter writer, boolean keyed) {
+        return this == KEEP ? writer : new DuplicateFilter(writer, keyed);
+    }
+
+    /**
+     * Checks whether the numbers of copies of words are stored
+     *
+     * @return {@code true} if words are counted
+     */
+    boolean isCounted() {
+        return this == COUNT;
+    }
+}
@@ -0,0 +1,81 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.FileChannel;
+
+/**
+ * Channel of a region of a file read or written by positional operations,
+ * so several threads work on separate regions of the same file through
+ * their own channels. Reading stops at the end of the region and writing
+ * past the end of the region fails.
+ */
+class FileRegionChannel implements ByteChannel {
+    private FileChannel file;
+    private long position;
+    private long end;
+
+    /**
+     * Creates a channel of the file region
+     *
+     * @param file channel of the file, closed with this channel
+     * @param start position of the region in the file
+     * @param end position of the region end in the file
+     */
+    FileRegionChannel(FileChannel file, long start, long end) {
+        this.file = file;
+        this.position = start;
+        this.end = end;
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        if (position == end) {
+            return -1;
+        }
+
+        int limit = destination.limit();
+        destination.limit(destination.position() + (int) Math.min(destination.remaining(), end - position));
+        try {
+            int count = file.read(destination, position);
+            if (count < 0) {
+                return -1;
+            }
+            position += count;
+            return count;
+        } finally {
+            destination.limit(limit);
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        if (source.remaining() > end - position) {
+            throw new IOException("write beyond the end of the file region");
+        }
+
+        int count = file.write(source, position);
+        position += count;
+        return count;
+    }
+
+    /**
+     * Gets the position of the channel in the file
+     *
+     * @return position of the next byte read or written
+     */
+    long position() {
+        return position;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return file.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -1,24 +1,45 @@
 package org.odanc.filesorter;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.List;
-import java.util.Scanner;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
 
 class FileSorter {
+
+    // Number of merged words counted before they are passed to the metrics
+    private static final int PROGRESS_BATCH_SIZE = 65_536;
+
+    // Minimum number of bytes of temporary files merged by a thread
+    // when ranges of words are merged by several threads
+    private static final int MIN_RANGE_SIZE = 1_048_576;
+
     private Config config;
     
     // Used for storing all the temporary file names
     private List<Path> tempFiles;
+    
+    private NaturalRuns naturalRuns;
+    private int runCount;
+    private int mergePassCount;
+    private int mergeRangeCount;
+    private MemoryManager memory;
+    private SortMetrics metrics;
+    private Manifest manifest;
+    private boolean resumed;
 
     /**
      * File Sorter which sorts file from the given configuration
@@ -26,189 +47,771 @@ class FileSorter {
      * @param configuration configuration with all required settings
      */
     FileSorter(Config configuration) {
+        this(configuration, SortListener.NONE);
+    }
+
+    /**
+     * File Sorter which sorts file from the given configuration
+     * and reports sorting events to the listener
+     * 
+     * @param configuration configuration with all required settings
+     * @param listener listener of sorting events
+     */
+    FileSorter(Config configuration, SortListener listener) {
         config = configuration;
+        metrics = new SortMetrics(listener);
     }
 
     /**
-     * Sorts content of the source file from the configuration
+     * Sorts content of the source files from the configuration
      * and outputs the result to the new destination file which is
      * set in the configuration.
      * Sorting strategy is based on split-and-merge basis.
      * The source file is splitted on numerous most likely smaller files
      * with contents of source file already sorted. After that all intermediate
      * files are merged into one bigger file with all content sorted.
+     * If there are too many intermediate files to merge at once, they are
+     * merged in several passes.
+     * Several source files are split at once, each by its own reader,
+     * and all their temporary files are merged together.
+     * If the work directory is set, completed temporary files are recorded
+     * in its manifest and sorting stopped before resumes from them.
+     * The work directory is locked while sorting, sorting fails at once
+     * if another sorting holds its lock.
+     * If the output file is limited to the first or the last words,
+     * they are selected in memory without temporary files if they fit.
      * 
      * @throws IOException I/O error happened while processing file
      */
     void sort() throws IOException {
         tempFiles = new ArrayList<>();
+        manifest = null;
+        runCount = 0;
+        mergePassCount = 0;
+        mergeRangeCount = 1;
         Path outputFile = config.getOutputFile();
+        Path workDirectory = config.getWorkDirectory();
+        List<Path> sourceFiles = config.getSourceFiles();
+        metrics.start(sourceFiles);
+        WorkDirectoryLock lock = workDirectory != null
+                ? WorkDirectoryLock.lock(workDirectory)
+                : null;
         
-        splitFile(config.getSourceFile());
-        mergeFiles(tempFiles, outputFile);
+        try (RunFiles runFiles = new RunFiles(config.getCompression(), config.getSortThreads(),
+                config.getReadAheadSize(), metrics.getReadStalls(), workDirectory, lock != null)) {
+            manifest = lock != null
+                    ? Manifest.open(workDirectory, describe())
+                    : null;
+            memory = new MemoryManager((long) config.getChunkSize() * config.getChunkCount());
+            naturalRuns = sourceFiles.size() == 1 && config.getWordLimit() == 0
+                    ? detectNaturalRuns(sourceFiles.get(0))
+                    : null;
+
+            // Runs are recorded as they are written if their source file ranges
+            // are known, the others are recorded once the split is done
+            metrics.startPhase(SortPhase.SPLIT);
+            if (manifest != null) {
+                tempFiles.addAll(manifest.getFiles());
+            }
+            resumed = !tempFiles.isEmpty();
+
+            // The first or the last words are selected in memory if they fit there,
+            // otherwise every temporary file keeps only the words it may contribute
+            if (config.getWordLimit() > 0 && tempFiles.isEmpty() && selectWords(sourceFiles)) {
+                if (manifest != null) {
+                    manifest.delete();
+                }
+                metrics.finish();
+                return;
+            }
+            if (manifest == null || !manifest.isSplitDone()) {
+                splitFiles(sourceFiles, runFiles);
+            }
+            if (manifest != null && !manifest.isSplitDone()) {
+                for (Path file : tempFiles) {
+                    if (!manifest.contains(file)) {
+                        manifest.runWritten(file, -1, -1, runFiles.getChecksum(file));
+                    }
+                }
+                manifest.splitDone();
+            }
+            runCount = tempFiles.size();
+            metrics.setPeakBufferMemory(memory.getPeak());
+            metrics.finishPhase(SortPhase.SPLIT);
+
+            // Copies of words are collapsed by every merge if they are not kept.
+            // Natural runs of the source file take their places in the final merge
+            DuplicateMode mode = config.getDuplicateMode();
+            boolean keyed = config.getCollation() != null;
+            MergePlanner planner = new MergePlanner(config.getMergeFanIn() - getNaturalRunCount(), workDirectory);
+            OutputStage stage = new OutputStage(
+                    config.getOutputBufferCount(), config.getOutputBufferSize(), metrics.getWriteStalls());
+            List<Path> files;
+
+            metrics.startPhase(SortPhase.MERGE);
+            try {
+                files = planner.reduce(tempFiles,
+                        (runs, intermediateFile) -> mergeRuns(runs, intermediateFile, runFiles, stage));
+
+                PartitionedMerge ranges = planRanges(files, runFiles);
+                if (ranges != null) {
+                    mergeRangeCount = ranges.getRangeCount();
+                    mergeRanges(ranges, getSeparator(), runFiles);
+                } else {
+                    long skipCount = getSkipCount(files, runFiles);
+                    WordWriter output = openOutput(stage);
+                    LimitingWriter limit = null;
+                    if (config.getWordLimit() > 0) {
+                        output = limit = new LimitingWriter(output, skipCount, config.getWordLimit());
+                    }
+                    try (WordWriter writer = mode.filter(output, keyed)) {
+                        List<WordCursor> sourceRuns = naturalRuns != null
+                                ? naturalRuns.openRuns()
+                                : Collections.emptyList();
+                        mergeFiles(files, sourceRuns, runFiles, writer, limit, true);
+                    }
+                }
+            } finally {
+                stage.close();
+            }
+
+            mergePassCount = planner.getPassCount();
+            metrics.setMergePassCount(mergePassCount);
+            metrics.setBytesWritten(Files.size(outputFile));
+            metrics.finishPhase(SortPhase.MERGE);
+
+            if (manifest != null) {
+                manifest.delete();
+            }
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        } finally {
+            try {
+                if (manifest != null) {
+                    manifest.close();
+                }
+            } finally {
+                if (lock != null) {
+                    lock.close();
+                }
+            }
+        }
+        metrics.finish();
+    }
+
+    /**
+     * Sorts the words of the reader instead of the source files.
+     * The words are split into sorted temporary files and the files
+     * are merged into fewer ones if there are too many of them the same way
+     * as the words of the source files are, but the final merge is left
+     * to the returned words, which merge the files as they are iterated.
+     * Temporary files are written to the work directory without checkpoints,
+     * the directory is locked until the returned words are closed
+     * 
+     * @param reader reader of the words, read to the end and closed
+     * @return sorted words deleting the temporary files when they are closed
+     * @throws IOException I/O error happened while processing words
+     */
+    SortedWords sort(WordReader reader) throws IOException {
+        tempFiles = new ArrayList<>();
+        runCount = 0;
+        mergePassCount = 0;
+        mergeRangeCount = 1;
+        naturalRuns = null;
+        manifest = null;
+        resumed = false;
+        metrics.start(Collections.emptyList());
+        WorkDirectoryLock lock = config.getWorkDirectory() != null
+                ? WorkDirectoryLock.lock(config.getWorkDirectory())
+                : null;
+        RunFiles runFiles = new RunFiles(config.getCompression(), config.getSortThreads(),
+                config.getReadAheadSize(), metrics.getReadStalls(), config.getWorkDirectory(), false);
+        List<Path> files = tempFiles;
+
+        try {
+            memory = new MemoryManager((long) config.getChunkSize() * config.getChunkCount());
+            metrics.startPhase(SortPhase.SPLIT);
+            splitInputs(Collections.singletonList(() -> count(reader, null)), runFiles);
+            runCount = tempFiles.size();
+            metrics.setPeakBufferMemory(memory.getPeak());
+            metrics.finishPhase(SortPhase.SPLIT);
+
+            MergePlanner planner = new MergePlanner(config.getMergeFanIn(), config.getWorkDirectory());
+            OutputStage stage = new OutputStage(
+                    config.getOutputBufferCount(), config.getOutputBufferSize(), metrics.getWriteStalls());
+            metrics.startPhase(SortPhase.MERGE);
+            try {
+                files = planner.reduce(tempFiles,
+                        (runs, intermediateFile) -> mergeRuns(runs, intermediateFile, runFiles, stage));
+            } finally {
+                stage.close();
+            }
+            mergePassCount = planner.getPassCount();
+            metrics.setMergePassCount(mergePassCount);
+
+            List<Path> mergedFiles = files;
+            long skipCount = getSkipCount(files, runFiles);
+            List<WordCursor> cursors = openFiles(files, runFiles);
+            return new SortedWords(cursors, config, skipCount, () -> {
+                try {
+                    runFiles.close();
+                    for (Path file : mergedFiles) {
+                        Files.deleteIfExists(file);
+                    }
+                } finally {
+                    if (lock != null) {
+                        lock.close();
+                    }
+                }
+                metrics.finishPhase(SortPhase.MERGE);
+                metrics.finish();
+            });
+        } catch (IOException | RuntimeException | Error e) {
+            try {
+                runFiles.close();
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            } finally {
+                if (lock != null) {
+                    lock.close();
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the number of sorted temporary files the source file
+     * was split into by the last sorting
+     * 
+     * @return number of temporary files
+     */
+    int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * Gets the number of natural runs of the source file
+     * which were merged without being split by the last sorting
+     * 
+     * @return number of natural runs
+     */
+    int getNaturalRunCount() {
+        return naturalRuns != null ? naturalRuns.getRunCount() : 0;
+    }
+
+    /**
+     * Gets the number of merge passes the last sorting took
+     * 
+     * @return number of merge passes
+     */
+    int getMergePassCount() {
+        return mergePassCount;
+    }
+
+    /**
+     * Gets the number of ranges of words merged into the output file
+     * by separate threads by the last sorting
+     * 
+     * @return number of merged ranges, 1 if words were merged by a single thread
+     */
+    int getMergeRangeCount() {
+        return mergeRangeCount;
+    }
+
+    /**
+     * Gets the maximum memory words buffers took at once
+     * while the source file was split by the last sorting
+     * 
+     * @return peak memory of words buffers in bytes
+     */
+    long getPeakBufferMemory() {
+        return memory != null ? memory.getPeak() : 0;
+    }
+
+    /**
+     * Gets the counter of time the last sorting spent merging
+     * while waiting for temporary files to be read
+     * 
+     * @return counter of merge stalls
+     */
+    StallCounter getMergeStalls() {
+        return metrics.getReadStalls();
+    }
+
+    /**
+     * Gets metrics of the last sorting. Metrics are updated
+     * while sorting, so they can be read to report progress
+     * 
+     * @return sorting metrics
+     */
+    SortMetrics getMetrics() {
+        return metrics;
     }
     
-    // Reads the words from given file and outputs them
+    // Reads the words from given files and outputs them
     // to numerous temporary files in sorted order
-    private void splitFile(Path sourceFile) throws IOException {
-        
-        // Sets the maximum words for one temporary file
-        int wordsPerFile = config.getBufferSize();
-        List<String> words = new ArrayList<>(wordsPerFile);
-
-        try (Scanner scanner = new Scanner(sourceFile, UTF_8.name())) {
-            String delimiter = config.getDelimiter();
-            if (delimiter != null) {
-                scanner.useDelimiter(delimiter);
-            }
-            
-            int currentSize = 0;
-
-            // Reads word by word from file until the threshold is reached.
-            // Then begins to process the words buffer.
-            // After processing is done, clears the buffer size and
-            // repeats reading the words.
-            while (scanner.hasNext()) {
-                words.add(scanner.next());
-                currentSize += 1;
-
-                if (currentSize == wordsPerFile) {
-                    currentSize = 0;
-                    processWords(words);
-                    words.clear();
+    private void splitFiles(List<Path> sourceFiles, RunFiles runFiles) throws IOException {
+        String delimiter = config.getDelimiter();
+        boolean records = config.isRecordMode();
+        Path sourceFile = sourceFiles.get(0);
+        InputMetrics source = metrics.getInputs().get(0);
+        long resumePosition = manifest != null ? manifest.getResumePosition() : 0;
+        List<Input> inputs = new ArrayList<>();
+
+        // Several source files are read by a reader per file,
+        // which is opened when the file is started to be read
+        if (sourceFiles.size() > 1) {
+            for (int i = 0; i < sourceFiles.size(); i++) {
+                Path file = sourceFiles.get(i);
+                InputMetrics input = metrics.getInputs().get(i);
+                inputs.add(() -> count(config.isMappedInput()
+                        ? WordReader.openMapped(file, delimiter, records, 1).get(0)
+                        : WordReader.open(file, delimiter, records), input));
+            }
+        } else if (naturalRuns != null) {
+            inputs.add(() -> count(naturalRuns.openGaps(), source));
+        } else if (resumePosition > 0) {
+            inputs.add(() -> count(WordReader.open(sourceFile, delimiter, records, resumePosition), source));
+        } else if (config.isMappedInput()) {
+            for (WordReader reader : WordReader.openMapped(sourceFile, delimiter, records, config.getReadThreads())) {
+                inputs.add(() -> count(reader, source));
+            }
+        } else {
+            inputs.add(() -> count(WordReader.open(sourceFile, delimiter, records), source));
+        }
+        splitInputs(inputs, runFiles);
+    }
+
+    // Reads the words of the inputs to temporary files by as many readers
+    // at once as there are reading threads
+    private void splitInputs(List<Input> inputs, RunFiles runFiles) throws IOException {
+
+        // Runs are cut to the selected words by buffers, replacement selection
+        // doesn't know where its runs end until they are written
+        int threads = Math.min(inputs.size(), config.getReadThreads());
+        if (config.getRunStrategy() == RunStrategy.REPLACEMENT_SELECTION && config.getWordLimit() == 0) {
+            selectRuns(inputs, threads, runFiles);
+        } else {
+            // Ranges of runs are recorded if they are read one after another
+            Manifest runManifest = inputs.size() == 1 ? manifest : null;
+            try (RunGenerator generator = new RunGenerator(config, runFiles, memory, metrics, runManifest)) {
+                splitWordsInParallel(inputs, threads, reader -> splitWords(reader, generator));
+                tempFiles.addAll(generator.finish());
+            }
+        }
+    }
+
+    // Selects the first or the last words of the source files in a single words buffer
+    // and writes them to the output file. Returns false without writing the output file
+    // if the words don't fit in the buffer, the source files are read from the start then
+    private boolean selectWords(List<Path> sourceFiles) throws IOException {
+        TopWords words = new TopWords(config, memory);
+        try {
+            boolean fits = true;
+            for (int i = 0; i < sourceFiles.size() && fits; i++) {
+                WordReader source = WordReader.open(sourceFiles.get(i), config.getDelimiter(), config.isRecordMode());
+                try (WordReader reader = count(source, metrics.getInputs().get(i))) {
+                    while (fits && reader.next()) {
+                        fits = words.add(reader);
+                    }
                 }
             }
-            
-            // Last words from file containing in the words buffer.
-            if (!words.isEmpty()) {
-                processWords(words);
+
+            // Words are counted once the readers are closed
+            if (!fits) {
+                metrics.resetRead();
+                return false;
             }
-            
-            if (scanner.ioException() != null) {
-                throw scanner.ioException();
+            metrics.setPeakBufferMemory(memory.getPeak());
+            metrics.finishPhase(SortPhase.SPLIT);
+
+            metrics.startPhase(SortPhase.MERGE);
+            OutputStage stage = new OutputStage(
+                    config.getOutputBufferCount(), config.getOutputBufferSize(), metrics.getWriteStalls());
+            boolean keyed = config.getCollation() != null;
+            try (WordWriter writer = config.getDuplicateMode().filter(openOutput(stage), keyed)) {
+                words.writeTo(writer);
+            } finally {
+                stage.close();
             }
+            metrics.addMerged(words.size());
+            metrics.setMergePassCount(0);
+            metrics.setBytesWritten(Files.size(config.getOutputFile()));
+            metrics.finishPhase(SortPhase.MERGE);
+        } finally {
+            words.free();
         }
+        return true;
     }
 
-    // Merges contents of the files from list and outputs them to single file
-    private void mergeFiles(List<Path> files, Path outputFile) throws IOException {
-        
-        // Words buffer with mappings to files the words came from.
-        // Words are stored in sorted order.
-        SortedMap<WordWrapper, Scanner> wordToFileMap = new TreeMap<>();
+    // Gets the number of merged words dropped before the words written to the output file.
+    // If every copy is kept, the merged words are the words written to the runs of this
+    // sorting. Otherwise, or if runs were written by a sorting resumed from, the words
+    // are counted by merging the files once more, since collapsed copies are not known
+    private long getSkipCount(List<Path> files, RunFiles runFiles) throws IOException {
+        long limit = config.getWordLimit();
+        if (limit == 0 || !config.isLastWords()) {
+            return 0;
+        }
+        long count = config.getDuplicateMode() == DuplicateMode.KEEP && !resumed
+                ? metrics.getRunWords()
+                : countWords(files, runFiles);
+        return Math.max(count - limit, 0);
+    }
+
+    // Counts the words the files are merged into, copies of a word
+    // count as a single word if they are collapsed
+    private long countWords(List<Path> files, RunFiles runFiles) throws IOException {
+        WordCounter counter = new WordCounter();
+        try (WordWriter writer = config.getDuplicateMode().filter(counter, config.getCollation() != null)) {
+            mergeFiles(files, Collections.emptyList(), runFiles, writer, null, false);
+        }
+        return counter.count;
+    }
+
+    // Opens the writer of the output file. Sort keys are removed
+    // from words after copies are collapsed by keys
+    private WordWriter openOutput(OutputStage stage) throws IOException {
+        WordWriter output = new LineWriter(config.getOutputFile(), stage, getSeparator(),
+                config.getDuplicateMode().isCounted(), config.isForceOutput());
+        return config.getCollation() != null
+                ? new KeyStrippingWriter(output)
+                : output;
+    }
+
+    // Separator written after every word of the output file
+    private byte[] getSeparator() {
+        return config.isRecordMode()
+                ? new byte[] {config.getRecordSeparator()}
+                : LineWriter.LINE_SEPARATOR;
+    }
+
+    // Counts words of the reader as they are read from the source file
+    // and prefixes them with their sort keys if they are ordered by a collation
+    private WordReader count(WordReader reader, InputMetrics input) {
+        return KeyedWordReader.wrap(new CountingWordReader(reader, metrics, input), config.getCollation());
+    }
+
+    // Describes the source files and the settings temporary files depend on,
+    // so checkpoints of another sorting are not resumed from
+    private String describe() throws IOException {
+        StringBuilder description = new StringBuilder();
+        for (Path sourceFile : config.getSourceFiles()) {
+            description.append(sourceFile.toAbsolutePath()).append(' ').append(Files.size(sourceFile)).append(' ')
+                    .append(Files.getLastModifiedTime(sourceFile).toMillis()).append(' ');
+        }
+        return description + config.getDelimiter() + " "
+                + config.getCollation() + " " + config.getDuplicateMode() + " " + config.getCompression() + " "
+                + config.getRunStrategy() + " " + config.isPresortedDetection() + " " + config.getReadThreads() + " "
+                + config.getWordLimit() + " " + config.isLastWords();
+    }
+
+    // Looks for natural runs at least as long as a words buffer if it is enabled.
+    // Words delimited by a regex-pattern have no byte positions to bound the runs
+    private NaturalRuns detectNaturalRuns(Path sourceFile) throws IOException {
+        String delimiter = config.getDelimiter();
+        int delimiterByte = ByteWordReader.toDelimiterByte(delimiter, config.isRecordMode());
+        if (!config.isPresortedDetection() || delimiter != null && delimiterByte == ByteWordReader.WHITESPACE) {
+            return null;
+        }
+
+        // At least two places of the final merge are left for temporary files
+        int maxRunCount = config.getMergeFanIn() - Config.MIN_MERGE_FAN_IN;
+        metrics.startPhase(SortPhase.DETECTION);
+        NaturalRuns runs = NaturalRuns.detect(sourceFile, delimiterByte, config.getCollation(),
+                config.getChunkSize(), maxRunCount);
+        metrics.finishPhase(SortPhase.DETECTION);
+        return runs;
+    }
+
+    // Writes words of every input to temporary files by replacement selection.
+    // Inputs read at once share the memory words buffers would take
+    private void selectRuns(List<Input> inputs, int threads, RunFiles runFiles) throws IOException {
+        long memoryLimit = memory.getBudget() / threads;
+        List<Path> runs = Collections.synchronizedList(new ArrayList<>());
+
+        splitWordsInParallel(inputs, threads, reader -> {
+            try (ReplacementSelection selection = new ReplacementSelection(
+                    config, runFiles, memoryLimit, memory, metrics)) {
+                runs.addAll(selection.generate(reader));
+            }
+        });
+        tempFiles.addAll(runs);
+    }
+
+    // Reads all the words of the reader to words buffers
+    // and sends the buffers to be sorted and written
+    private void splitWords(WordReader reader, RunGenerator generator) throws IOException {
+
+        // Reads word by word from file until the words buffer is full.
+        // Then sends the buffer to be sorted and written in background
+        // and continues reading the words to the next buffer.
+        // Every buffer is sent with the file range of its words
+        Chunk chunk = generator.takeChunk();
+        long from = reader.position();
+        while (reader.next()) {
+            if (!chunk.add(reader)) {
+                long to = reader.position();
+                generator.submit(chunk, from, to);
+                from = to;
+                chunk = generator.takeChunk();
+                chunk.add(reader);
+            }
+        }
         
-        if (!outputFile.toFile().exists()) {
-            Files.createFile(outputFile);
+        // Last words from file containing in the words buffer.
+        if (!chunk.isEmpty()) {
+            generator.submit(chunk, from, reader.position());
+        } else {
+            generator.release(chunk);
         }
+    }
 
-        try (BufferedWriter writer = Files.newBufferedWriter(outputFile, UTF_8, WRITE)) {
-            
-            // Reads the first word from each temporary file, maps it
-            // to the file it was read from and stores it in the buffer.
-            for (Path file : files) {
-                Scanner scanner = new Scanner(file, UTF_8.name());
-                if (scanner.hasNext()) {
-                    WordWrapper wrapper = new WordWrapper(scanner.next());
-                    wordToFileMap.put(wrapper, scanner);
-                }
+    // Merges the runs into the intermediate file. Only the first words are merged
+    // if the output file is limited to them
+    private void mergeRuns(List<Path> runs, Path intermediateFile, RunFiles runFiles, OutputStage stage)
+            throws IOException {
+        DuplicateMode mode = config.getDuplicateMode();
+        WordWriter output = runFiles.newWriter(intermediateFile, stage, mode.isCounted());
+        LimitingWriter limit = null;
+        if (config.getWordLimit() > 0 && !config.isLastWords()) {
+            output = limit = new LimitingWriter(output, config.getWordLimit());
+        }
+        try (WordWriter writer = mode.filter(output, config.getCollation() != null)) {
+            mergeFiles(runs, Collections.emptyList(), runFiles, writer, limit, false);
+        }
+        if (manifest != null) {
+            manifest.merged(runs, intermediateFile, runFiles.getChecksum(intermediateFile));
+        }
+        for (Path run : runs) {
+            runFiles.removeIndex(run);
+        }
+    }
 
-                checkForReadErrors(scanner);
+    // Plans merging ranges of words of the files by several threads. Ranges are
+    // merged if the words are written to the output file as they are stored
+    // in the indexed files, each thread takes a read buffer per file and its own
+    // output buffers. Returns null if the files are merged by a single thread
+    private PartitionedMerge planRanges(List<Path> files, RunFiles runFiles) throws IOException {
+        List<RunIndex> indexes = new ArrayList<>(files.size());
+        long size = 0;
+        for (Path file : files) {
+            indexes.add(runFiles.removeIndex(file));
+            size += Files.size(file);
+        }
+        if (config.getMergeThreads() < 2 || config.getDuplicateMode() != DuplicateMode.KEEP
+                || config.getCollation() != null || getNaturalRunCount() > 0 || config.getWordLimit() > 0
+                || indexes.contains(null)) {
+            return null;
+        }
+
+        long threadMemory = (long) files.size() * ByteWordReader.DEFAULT_BUFFER_SIZE
+                + (long) config.getOutputBufferCount() * config.getOutputBufferSize();
+        long rangeCount = Math.min(Math.min(config.getMergeThreads(), config.getMemoryBudget() / threadMemory),
+                size / MIN_RANGE_SIZE);
+        if (rangeCount < 2) {
+            return null;
+        }
+
+        PartitionedMerge ranges = new PartitionedMerge(files, indexes, (int) rangeCount, runFiles);
+        return ranges.getRangeCount() > 1 ? ranges : null;
+    }
+
+    // Merges every range of words by a separate thread into its own region
+    // of the output file. The output file is sized for all the ranges first
+    private void mergeRanges(PartitionedMerge ranges, byte[] separator, RunFiles runFiles) throws IOException {
+        Path outputFile = config.getOutputFile();
+        int rangeCount = ranges.getRangeCount();
+        long[] starts = new long[rangeCount + 1];
+        for (int i = 0; i < rangeCount; i++) {
+            starts[i + 1] = starts[i] + ranges.getOutputSize(i, separator.length);
+        }
+
+        try (FileChannel output = FileChannel.open(outputFile, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            if (starts[rangeCount] > 0) {
+                output.write(ByteBuffer.allocate(1), starts[rangeCount] - 1);
             }
 
-            // Writes the first word from the buffer to the output file,
-            // removes it from buffer, reads the next word from the file
-            // the written word was from, repeates.
-            // The loop continues until all temporary files are entirely read.
-            while (!wordToFileMap.isEmpty()) {
-                WordWrapper wrapper = wordToFileMap.firstKey();
-                Scanner scanner = wordToFileMap.remove(wrapper);
-                writer.write(wrapper.getWord());
-                writer.newLine();
-                
-                if (scanner.hasNext()) {
-                    wrapper = new WordWrapper(scanner.next());
-                    wordToFileMap.put(wrapper, scanner);
-                } else {
-                    scanner.close();
+            ExecutorService executor = Executors.newFixedThreadPool(rangeCount, new DaemonThreadFactory("merger"));
+            try {
+                List<Future<?>> tasks = new ArrayList<>(rangeCount);
+                for (int i = 0; i < rangeCount; i++) {
+                    int range = i;
+                    tasks.add(executor.submit(() -> {
+                        mergeRange(ranges, range, starts[range], starts[range + 1], separator, runFiles);
+                        return null;
+                    }));
                 }
+                waitFor(tasks);
+            } finally {
+                executor.shutdownNow();
+            }
 
-                checkForReadErrors(scanner);
+            if (config.isForceOutput()) {
+                output.force(false);
             }
         }
     }
 
-    // Sorts words in the word buffer and sends the buffer
-    // to writing temporary file procedure
-    private void processWords(List<String> words) throws IOException {
+    // Merges the range of words into the region of the output file
+    // through output buffers of its own
+    private void mergeRange(PartitionedMerge ranges, int range, long start, long end, byte[] separator,
+                            RunFiles runFiles) throws IOException {
+        OutputStage stage = new OutputStage(
+                config.getOutputBufferCount(), config.getOutputBufferSize(), metrics.getWriteStalls());
+        try {
+            FileRegionChannel region = new FileRegionChannel(
+                    FileChannel.open(config.getOutputFile(), WRITE), start, end);
+            try (WordWriter writer = new LineWriter(region, stage, separator, false, false)) {
+                List<WordCursor> runs = ranges.openRange(range, runFiles, ByteWordReader.DEFAULT_BUFFER_SIZE);
+                mergeFiles(Collections.emptyList(), runs, runFiles, writer, null, true);
+            }
+            if (region.position() != end) {
+                throw new IOException("range " + range + " of words doesn't fill its region of the output file");
+            }
+        } finally {
+            stage.close();
+        }
+    }
 
-        // Lambdas required more heap space than anonymous comparator-object
-        // words.sort(String::compareToIgnoreCase);
+    // Reads words of every input by one of the threads unless there is only one input.
+    // Words of different inputs end up in different temporary files.
+    // Readers of the inputs are closed as soon as they are read
+    private void splitWordsInParallel(List<Input> inputs, int threads, Split split) throws IOException {
+        if (inputs.size() == 1) {
+            try (WordReader reader = inputs.get(0).open()) {
+                split.split(reader);
+            }
+            return;
+        }
 
-        //noinspection Convert2Lambda,Anonymous2MethodRef
-        words.sort(new Comparator<String>() {
-            @Override
-            public int compare(String o1, String o2) {
-                return o1.compareTo(o2);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> tasks = new ArrayList<>(inputs.size());
+            for (Input input : inputs) {
+                tasks.add(executor.submit(() -> {
+                    try (WordReader reader = input.open()) {
+                        split.split(reader);
+                    }
+                    return null;
+                }));
             }
-        });
+            waitFor(tasks);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
-        writeFile(words);
+    // Waits for all the tasks, rethrows the failure of a task
+    private static void waitFor(List<Future<?>> tasks) throws IOException {
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for threads");
+        }
     }
 
-    // Writes words from the words buffer to a temporary file
-    // and stores the temporary file name
-    private void writeFile(List<String> words) throws IOException {
-        Path tempFile = Files.createTempFile(null, null);
-        Files.write(tempFile, words, UTF_8, WRITE);
-        
-        tempFiles.add(tempFile);
+    // Opens readers of the files, the readers opened before a failure are closed
+    private List<WordCursor> openFiles(List<Path> files, RunFiles runFiles) throws IOException {
+        List<WordCursor> readers = new ArrayList<>(files.size());
+        try {
+            for (Path file : files) {
+                readers.add(runFiles.newReader(file, ByteWordReader.DEFAULT_BUFFER_SIZE,
+                        config.getDuplicateMode().isCounted()));
+            }
+        } catch (IOException e) {
+            for (WordCursor reader : readers) {
+                reader.close();
+            }
+            throw e;
+        }
+        return readers;
     }
-    
-    private void checkForReadErrors(Scanner scanner) throws IOException {
-        if (scanner.ioException() != null) {
-            throw scanner.ioException();
+
+    // Merges contents of the files from list together with the given runs
+    // and outputs them with the given writer. The runs are closed afterwards.
+    // Merging stops early once the limit of the written words is done.
+    // Words of the final merge are counted as the progress of the merge
+    private void mergeFiles(List<Path> files, List<WordCursor> runs, RunFiles runFiles, WordWriter writer,
+                            LimitingWriter limit, boolean isFinal) throws IOException {
+        List<WordCursor> readers = new ArrayList<>(runs);
+
+        try {
+            readers.addAll(openFiles(files, runFiles));
+
+            // Writes the smallest word among all temporary files to the output file,
+            // moves the reader of the file the written word was from, repeats.
+            // The loop continues until all temporary files are entirely read.
+            LoserTree<WordCursor> tree = new LoserTree<>(readers, WordCursor.WORD_ORDER);
+            long merged = 0;
+            while (!tree.isEmpty() && (limit == null || !limit.isDone())) {
+                WordCursor reader = tree.peek();
+                writer.write(reader.array(), reader.offset(), reader.length(), reader.count());
+                merged += reader.count();
+                if (merged >= PROGRESS_BATCH_SIZE && isFinal) {
+                    metrics.addMerged(merged);
+                    merged = 0;
+                }
+                tree.advance();
+            }
+            if (isFinal) {
+                metrics.addMerged(merged);
+            }
+        } finally {
+            for (WordCursor reader : readers) {
+                reader.close();
+            }
         }
     }
-    
-    
-    
-    
-    
+
+
+
+
+
     /**
-     * A wrapper to String class since strings need to be keys in a HashMap
-     * and there is a need for duplicate string keys. Keys come from files so it is
-     * fine to have repeateable strings
+     * Source of words read by a single reader: a source file or its part
      */
-    private class WordWrapper implements Comparable<WordWrapper> {
-        private String word;
+    private interface Input {
 
-        WordWrapper(String wrappedString) {
-            this.word = wrappedString;
-        }
+        WordReader open() throws IOException;
+    }
 
-        String getWord() {
-            return word;
-        }
+    /**
+     * Procedure writing words of the reader to sorted temporary files
+     */
+    private interface Split {
 
-        @Override
-        public int compareTo(WordWrapper other) {
-            return word.compareTo(other.getWord());
-        }
+        void split(WordReader reader) throws IOException;
+    }
+
+    /**
+     * Writer counting words without writing them anywhere
+     */
+    private static class WordCounter implements WordWriter {
+        private long count;
 
         @Override
-        public boolean equals(Object obj) {
-            if (obj == null || obj.getClass() != WordWrapper.class) {
-                return false;
-            } else {
-                WordWrapper other = (WordWrapper) obj;
-                String word = other.getWord();
-                return word != null && word.equals(this.getWord());
-            }
+        public void write(byte[] bytes, int offset, int length) {
+            count += 1;
         }
 
         @Override
-        public int hashCode() {
-            return word.hashCode();
-        }
+        public void close() { }
     }
 }
@@ -0,0 +1,53 @@
+package org.odanc.filesorter;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of reading a single source file: words and bytes read
+ * and the time readers of the file took, including the time they
+ * waited for words buffers. Counters are updated by the readers
+ * of the file and may be read by another thread.
+ */
+public final class InputMetrics {
+    private Path file;
+    private long size;
+    private LongAdder wordsRead = new LongAdder();
+    private LongAdder bytesRead = new LongAdder();
+    private LongAdder readTime = new LongAdder();
+
+    InputMetrics(Path file, long size) {
+        this.file = file;
+        this.size = size;
+    }
+
+    void addRead(long words, long bytes) {
+        wordsRead.add(words);
+        bytesRead.add(bytes);
+    }
+
+    void addReadTime(long nanos) {
+        readTime.add(nanos);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getWordsRead() {
+        return wordsRead.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getReadTime(TimeUnit unit) {
+        return unit.convert(readTime.sum(), TimeUnit.NANOSECONDS);
+    }
+}
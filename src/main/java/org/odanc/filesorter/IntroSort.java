@@ -0,0 +1,196 @@
+package org.odanc.filesorter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * In-place introspective sort of the words buffer index.
+ * Quicksort with three-way partitioning, so runs of equal words are
+ * excluded from further partitioning, switching to heapsort when
+ * the recursion gets too deep and to insertion sort for short ranges.
+ * Sorting in parallel forks big partitions to the common fork-join pool.
+ * Words are compared by their cached prefixes first, see {@link Chunk}.
+ */
+final class IntroSort {
+
+    // Ranges shorter than this are sorted by insertion sort
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    // Ranges longer than this are sorted in parallel
+    private static final int PARALLEL_THRESHOLD = 8_192;
+
+    private IntroSort() { }
+
+    /**
+     * Sorts the index of the words buffer
+     *
+     * @param chunk words buffer
+     * @param parallel {@code true} to sort by multiple threads
+     */
+    static void sort(Chunk chunk, boolean parallel) {
+        int size = chunk.size();
+        if (parallel && size > PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new SortTask(chunk, 0, size, 0, depthLimit(size)));
+        } else {
+            quickSort(chunk, 0, size, 0, depthLimit(size));
+        }
+    }
+
+    /**
+     * Sorts the range of the words buffer index
+     *
+     * @param chunk words buffer
+     * @param from the first entry to sort
+     * @param to the entry after the last one to sort
+     * @param prefixDepth depth the cached prefixes of the entries start from,
+     *                    words must be equal before that depth
+     */
+    static void sort(Chunk chunk, int from, int to, int prefixDepth) {
+        quickSort(chunk, from, to, prefixDepth, depthLimit(to - from));
+    }
+
+    // Sorts the range, recursing into the smaller partition
+    // and looping over the bigger one
+    private static void quickSort(Chunk chunk, int from, int to, int prefixDepth, int depth) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            if (depth == 0) {
+                heapSort(chunk, from, to, prefixDepth);
+                return;
+            }
+            depth -= 1;
+
+            long bounds = partition(chunk, from, to, prefixDepth);
+            int lower = (int) (bounds >>> 32);
+            int upper = (int) bounds;
+
+            if (lower - from < to - upper) {
+                quickSort(chunk, from, lower, prefixDepth, depth);
+                from = upper;
+            } else {
+                quickSort(chunk, upper, to, prefixDepth, depth);
+                to = lower;
+            }
+        }
+        insertionSort(chunk, from, to, prefixDepth);
+    }
+
+    // Partitions the range into words less than, equal to and greater than
+    // the median of three words. Returns bounds of the equal words packed in long
+    private static long partition(Chunk chunk, int from, int to, int prefixDepth) {
+        long pivot = chunk.getEntry(medianOfThree(chunk, from, from + (to - from) / 2, to - 1, prefixDepth));
+        int lower = from;
+        int upper = to;
+        int i = from;
+
+        while (i < upper) {
+            int result = chunk.compareEntries(chunk.getEntry(i), pivot, prefixDepth);
+            if (result < 0) {
+                chunk.swapEntries(lower++, i++);
+            } else if (result > 0) {
+                chunk.swapEntries(i, --upper);
+            } else {
+                i += 1;
+            }
+        }
+        return ((long) lower << 32) | upper;
+    }
+
+    private static int medianOfThree(Chunk chunk, int a, int b, int c, int prefixDepth) {
+        long first = chunk.getEntry(a);
+        long second = chunk.getEntry(b);
+        long third = chunk.getEntry(c);
+
+        if (chunk.compareEntries(first, second, prefixDepth) < 0) {
+            if (chunk.compareEntries(second, third, prefixDepth) < 0) {
+                return b;
+            }
+            return chunk.compareEntries(first, third, prefixDepth) < 0 ? c : a;
+        }
+        if (chunk.compareEntries(first, third, prefixDepth) < 0) {
+            return a;
+        }
+        return chunk.compareEntries(second, third, prefixDepth) < 0 ? c : b;
+    }
+
+    static void insertionSort(Chunk chunk, int from, int to, int prefixDepth) {
+        for (int i = from + 1; i < to; i++) {
+            long entry = chunk.getEntry(i);
+            int j = i - 1;
+            while (j >= from && chunk.compareEntries(chunk.getEntry(j), entry, prefixDepth) > 0) {
+                chunk.setEntry(j + 1, chunk.getEntry(j));
+                j -= 1;
+            }
+            chunk.setEntry(j + 1, entry);
+        }
+    }
+
+    private static void heapSort(Chunk chunk, int from, int to, int prefixDepth) {
+        int size = to - from;
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(chunk, from, i, size, prefixDepth);
+        }
+        for (int last = size - 1; last > 0; last--) {
+            chunk.swapEntries(from, from + last);
+            siftDown(chunk, from, 0, last, prefixDepth);
+        }
+    }
+
+    private static void siftDown(Chunk chunk, int from, int node, int size, int prefixDepth) {
+        long entry = chunk.getEntry(from + node);
+        int child;
+        while ((child = 2 * node + 1) < size) {
+            if (child + 1 < size && chunk.compareEntries(
+                    chunk.getEntry(from + child), chunk.getEntry(from + child + 1), prefixDepth) < 0) {
+                child += 1;
+            }
+            if (chunk.compareEntries(entry, chunk.getEntry(from + child), prefixDepth) >= 0) {
+                break;
+            }
+            chunk.setEntry(from + node, chunk.getEntry(from + child));
+            node = child;
+        }
+        chunk.setEntry(from + node, entry);
+    }
+
+    // Maximum recursion depth before switching to heapsort
+    private static int depthLimit(int size) {
+        return 2 * (32 - Integer.numberOfLeadingZeros(size));
+    }
+
+
+
+
+
+    /**
+     * Sorting task partitioning its range and forking the partitions
+     */
+    private static class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Chunk chunk;
+        private int from;
+        private int to;
+        private int prefixDepth;
+        private int depth;
+
+        SortTask(Chunk chunk, int from, int to, int prefixDepth, int depth) {
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+            this.prefixDepth = prefixDepth;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD || depth == 0) {
+                quickSort(chunk, from, to, prefixDepth, depth);
+                return;
+            }
+
+            long bounds = partition(chunk, from, to, prefixDepth);
+            invokeAll(new SortTask(chunk, from, (int) (bounds >>> 32), prefixDepth, depth - 1),
+                      new SortTask(chunk, (int) bounds, to, prefixDepth, depth - 1));
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.odanc.filesorter;
+
+import java.util.Iterator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Word reader of the strings of an iterator, every string is a word
+ * taken as it is, without being split by delimiters. Strings are
+ * encoded to UTF-8 one by one as they are read.
+ */
+class IteratorWordReader implements WordReader {
+    private Iterator<String> words;
+    private String word;
+    private byte[] bytes;
+
+    IteratorWordReader(Iterator<String> words) {
+        this.words = words;
+    }
+
+    @Override
+    public boolean next() {
+        if (!words.hasNext()) {
+            return false;
+        }
+
+        word = words.next();
+        if (word == null) {
+            throw new NullPointerException("word is null");
+        }
+        bytes = word.getBytes(UTF_8);
+        return true;
+    }
+
+    @Override
+    public String word() {
+        return word;
+    }
+
+    @Override
+    public int length() {
+        return bytes.length;
+    }
+
+    @Override
+    public void copyTo(byte[] destination, int offset) {
+        System.arraycopy(bytes, 0, destination, offset, bytes.length);
+    }
+
+    @Override
+    public void close() { }
+}
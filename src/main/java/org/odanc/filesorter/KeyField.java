@@ -0,0 +1,109 @@
+package org.odanc.filesorter;
+
+/**
+ * Key of a record spanning one or more fields, the same way as
+ * {@code sort -k} keys do. Fields are numbered from 1, the key starts
+ * at the beginning of the first field and ends at the end of the last field
+ * or at the end of the record. Blanks leading the first field are a part
+ * of the key unless they are skipped, the same way as {@code sort -b} does.
+ */
+class KeyField {
+
+    // Last field of a key spanning the rest of the record
+    static final int END_OF_RECORD = 0;
+
+    private int firstField;
+    private int lastField;
+    private Collation collation;
+    private boolean blanksSkipped;
+
+    /**
+     * Creates a key of the fields range
+     *
+     * @param firstField number of the first field of the key
+     * @param lastField number of the last field of the key
+     *                  or {@link #END_OF_RECORD}
+     * @param collation collation of the key, {@code null} for the natural order
+     */
+    KeyField(int firstField, int lastField, Collation collation) {
+        this(firstField, lastField, collation, false);
+    }
+
+    /**
+     * Creates a key of the fields range
+     *
+     * @param firstField number of the first field of the key
+     * @param lastField number of the last field of the key
+     *                  or {@link #END_OF_RECORD}
+     * @param collation collation of the key, {@code null} for the natural order
+     * @param blanksSkipped whether blanks leading the first field are skipped
+     */
+    KeyField(int firstField, int lastField, Collation collation, boolean blanksSkipped) {
+        if (firstField < 1 || lastField != END_OF_RECORD && lastField < firstField) {
+            throw new IllegalArgumentException("invalid fields range " + firstField + "," + lastField);
+        }
+        this.firstField = firstField;
+        this.lastField = lastField;
+        this.collation = collation;
+        this.blanksSkipped = blanksSkipped;
+    }
+
+    /**
+     * Parses a key definition of {@code sort -k} form: the first field,
+     * optionally followed by a comma and the last field, and optionally
+     * followed by {@code n} for the numeric order or {@code f} to ignore case
+     * and by {@code b} to skip leading blanks
+     *
+     * @param definition key definition, e.g. {@code "2"}, {@code "2,3"}, {@code "3,3n"} or {@code "2bf"}
+     * @param collation collation of the key if the definition has none,
+     *                  {@code null} for the natural order
+     * @return key of the fields range
+     * @throws IllegalArgumentException if the definition is malformed
+     */
+    static KeyField parse(String definition, Collation collation) {
+        String range = definition;
+        boolean blanksSkipped = false;
+        while (!range.isEmpty() && "nfb".indexOf(range.charAt(range.length() - 1)) >= 0) {
+            char option = range.charAt(range.length() - 1);
+            if (option == 'n') {
+                collation = StandardCollation.NUMERIC;
+            } else if (option == 'f') {
+                collation = StandardCollation.CASE_INSENSITIVE;
+            } else {
+                blanksSkipped = true;
+            }
+            range = range.substring(0, range.length() - 1);
+        }
+
+        try {
+            int comma = range.indexOf(',');
+            return comma < 0
+                    ? new KeyField(Integer.parseInt(range), END_OF_RECORD, collation, blanksSkipped)
+                    : new KeyField(Integer.parseInt(range.substring(0, comma)),
+                                   Integer.parseInt(range.substring(comma + 1)), collation, blanksSkipped);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid key " + definition, e);
+        }
+    }
+
+    int getFirstField() {
+        return firstField;
+    }
+
+    int getLastField() {
+        return lastField;
+    }
+
+    Collation getCollation() {
+        return collation;
+    }
+
+    boolean isBlanksSkipped() {
+        return blanksSkipped;
+    }
+
+    @Override
+    public String toString() {
+        return firstField + "," + lastField + (blanksSkipped ? "b" : "") + (collation != null ? " " + collation : "");
+    }
+}
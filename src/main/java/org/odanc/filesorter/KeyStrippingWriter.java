@@ -0,0 +1,31 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+
+/**
+ * Writer removing sort keys from keyed words, see {@link KeyedWordReader},
+ * so only the words are passed to the underlying writer
+ */
+class KeyStrippingWriter implements WordWriter {
+    private WordWriter writer;
+
+    KeyStrippingWriter(WordWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        write(bytes, offset, length, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length, long count) throws IOException {
+        int start = KeyedWordReader.wordStart(bytes, offset, length);
+        writer.write(bytes, start, offset + length - start, count);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
@@ -0,0 +1,151 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+
+/**
+ * Reader prefixing every word of the underlying reader with its sort key,
+ * so words are sorted and merged by their keys without calling the collation
+ * again. The bytes of a word become a keyed word: the encoded key, the
+ * terminator and the word itself. The keyed words are stored in words buffers
+ * and temporary files instead of the words and the keys are removed before
+ * the words are written to the output file, see {@link #wordStart}.
+ * <p>
+ * Keyed words are compared the same way as the words are, with
+ * {@link Utf8Order}, which ranks bytes below EE as themselves. The terminator
+ * is byte 0 and the key bytes 0 and 1 are escaped as 0101 and 0102, so the
+ * terminator is less than any key byte and a shorter key is less than
+ * the longer one starting with it. Key bytes from EE are stored as the bytes
+ * having their values as ranks. Therefore keyed words are ordered by their
+ * keys as unsigned bytes first and by the words for equal keys.
+ */
+class KeyedWordReader implements WordReader {
+
+    // Byte having the given rank in Utf8Order
+    private static final byte[] UNRANK = new byte[256];
+
+    static {
+        for (int b = 0; b < UNRANK.length; b++) {
+            UNRANK[Utf8Order.RANK[b]] = (byte) b;
+        }
+    }
+
+    private WordReader reader;
+    private Collation collation;
+    private SortKey key = new SortKey();
+    private byte[] word = new byte[64];
+    private byte[] keyed = new byte[128];
+    private int length;
+
+    KeyedWordReader(WordReader reader, Collation collation) {
+        this.reader = reader;
+        this.collation = collation;
+    }
+
+    /**
+     * Wraps the reader if the words are sorted by a collation
+     *
+     * @param reader reader of words
+     * @param collation collation of words, {@code null} for the natural order
+     * @return the same reader for the natural order, keyed reader otherwise
+     */
+    static WordReader wrap(WordReader reader, Collation collation) {
+        return collation != null ? new KeyedWordReader(reader, collation) : reader;
+    }
+
+    /**
+     * Finds the word in the keyed word
+     *
+     * @param bytes array containing the keyed word
+     * @param offset offset of the keyed word
+     * @param length length of the keyed word in bytes
+     * @return offset of the word right after the key terminator
+     */
+    static int wordStart(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            if (bytes[i] == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (!reader.next()) {
+            return false;
+        }
+
+        int wordLength = reader.length();
+        if (word.length < wordLength) {
+            word = new byte[Math.max(wordLength, word.length * 2)];
+        }
+        reader.copyTo(word, 0);
+
+        key.clear();
+        collation.computeKey(word, 0, wordLength, key);
+
+        // Every key byte takes at most two bytes
+        int required = 2 * key.length() + 1 + wordLength;
+        if (keyed.length < required) {
+            keyed = new byte[Math.max(required, keyed.length * 2)];
+        }
+
+        byte[] keyBytes = key.array();
+        length = 0;
+        for (int i = 0; i < key.length(); i++) {
+            int b = keyBytes[i] & 0xFF;
+            if (b < 2) {
+                keyed[length++] = 1;
+                keyed[length++] = (byte) (b + 1);
+            } else {
+                keyed[length++] = UNRANK[b];
+            }
+        }
+        keyed[length++] = 0;
+        System.arraycopy(word, 0, keyed, length, wordLength);
+        length += wordLength;
+        return true;
+    }
+
+    /**
+     * Gets the current word without its key
+     *
+     * @return current word
+     */
+    @Override
+    public String word() {
+        return reader.word();
+    }
+
+    /**
+     * Gets the length of the current keyed word
+     *
+     * @return length of the key, the terminator and the word in bytes
+     */
+    @Override
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Copies the current keyed word to the array
+     *
+     * @param destination array to copy the keyed word to
+     * @param offset offset in the array to copy the keyed word at
+     */
+    @Override
+    public void copyTo(byte[] destination, int offset) {
+        System.arraycopy(keyed, 0, destination, offset, length);
+    }
+
+    @Override
+    public long position() {
+        return reader.position();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,67 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+
+/**
+ * Writer passing a range of the written words to the underlying writer:
+ * the given number of words after the skipped ones. The words after
+ * the range are dropped, so writing may be stopped once it is done.
+ * Placed after {@link DuplicateFilter}, it counts collapsed copies
+ * of a word as a single word.
+ */
+class LimitingWriter implements WordWriter {
+    private WordWriter writer;
+    private long skip;
+    private long end;
+    private long written;
+
+    /**
+     * Creates a writer of the first words
+     *
+     * @param writer underlying writer
+     * @param limit number of words passed to the underlying writer
+     */
+    LimitingWriter(WordWriter writer, long limit) {
+        this(writer, 0, limit);
+    }
+
+    /**
+     * Creates a writer of the words after the skipped ones
+     *
+     * @param writer underlying writer
+     * @param skip number of words dropped before the range
+     * @param limit number of words passed to the underlying writer
+     */
+    LimitingWriter(WordWriter writer, long skip, long limit) {
+        this.writer = writer;
+        this.skip = skip;
+        this.end = skip + limit;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        write(bytes, offset, length, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length, long count) throws IOException {
+        if (written >= skip && written < end) {
+            writer.write(bytes, offset, length, count);
+        }
+        written += 1;
+    }
+
+    /**
+     * Checks whether all the words of the range are written
+     *
+     * @return {@code true} if the following words are dropped
+     */
+    boolean isDone() {
+        return written >= end;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
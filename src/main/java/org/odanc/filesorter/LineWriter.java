@@ -0,0 +1,129 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writer of the sorted output file, every word is written on a separate line
+ * and every record is followed by the record separator.
+ * Counted words are prefixed with their numbers of copies right-aligned
+ * the same way as {@code uniq -c} does. Filled buffers are written
+ * by an {@link OutputStage} while the next words are being merged.
+ */
+class LineWriter implements WordWriter {
+
+    static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(UTF_8);
+
+    // Minimum width of the number of copies
+    private static final int COUNT_WIDTH = 7;
+
+    private WritableByteChannel channel;
+    private OutputStage stage;
+    private ByteBuffer buffer;
+    private byte[] separator;
+    private boolean counted;
+    private boolean force;
+
+    // Number of copies followed by a space, filled from the end
+    private byte[] countPrefix = new byte[20 + 1];
+
+    /**
+     * Creates a writer to the given file
+     *
+     * @param file path to the output file
+     * @param stage output stage writing filled buffers
+     * @param separator bytes written after every word, e.g. {@link #LINE_SEPARATOR}
+     * @param counted {@code true} to prefix words with numbers of their copies
+     * @param force {@code true} to force the file to the storage device when it is closed
+     * @throws IOException I/O error happened while opening file
+     */
+    LineWriter(Path file, OutputStage stage, byte[] separator, boolean counted, boolean force)
+            throws IOException {
+        this(FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE), stage, separator, counted, force);
+    }
+
+    /**
+     * Creates a writer to the given channel, e.g. to a region of the output file
+     *
+     * @param channel channel of the output file, closed with the writer
+     * @param stage output stage writing filled buffers
+     * @param separator bytes written after every word, e.g. {@link #LINE_SEPARATOR}
+     * @param counted {@code true} to prefix words with numbers of their copies
+     * @param force {@code true} to force the file to the storage device when it is closed
+     *              if the channel is a file channel
+     * @throws IOException error happened while writing previous buffers
+     */
+    LineWriter(WritableByteChannel channel, OutputStage stage, byte[] separator, boolean counted, boolean force)
+            throws IOException {
+        this.channel = channel;
+        this.stage = stage;
+        this.separator = separator;
+        this.counted = counted;
+        this.force = force;
+        try {
+            buffer = stage.take();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        write(bytes, offset, length, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length, long count) throws IOException {
+        if (counted) {
+            writeCount(count);
+        }
+        put(bytes, offset, length);
+        put(separator, 0, separator.length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            stage.finish(channel, buffer, force);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeCount(long count) throws IOException {
+        int start = countPrefix.length;
+        countPrefix[--start] = ' ';
+        do {
+            countPrefix[--start] = (byte) ('0' + count % 10);
+            count /= 10;
+        } while (count > 0);
+        while (countPrefix.length - start <= COUNT_WIDTH) {
+            countPrefix[--start] = ' ';
+        }
+        put(countPrefix, start, countPrefix.length - start);
+    }
+
+    // Puts the bytes to the buffer, sending the buffer
+    // to be written every time it is filled
+    private void put(byte[] bytes, int offset, int length) throws IOException {
+        while (length > buffer.remaining()) {
+            int count = buffer.remaining();
+            buffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+
+            stage.write(channel, buffer);
+            buffer = stage.take();
+        }
+        buffer.put(bytes, offset, length);
+    }
+}
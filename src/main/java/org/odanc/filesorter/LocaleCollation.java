@@ -0,0 +1,38 @@
+package org.odanc.filesorter;
+
+import java.text.Collator;
+import java.util.Locale;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Collation ordering words by the rules of a locale, see {@link Collator}.
+ * Keys are the bytes of collation keys, so the collator is called once per word.
+ * Every thread computing keys uses its own copy of the collator
+ */
+class LocaleCollation implements Collation {
+    private Locale locale;
+    private ThreadLocal<Collator> collators;
+
+    /**
+     * Creates a collation with the default strength of the locale
+     *
+     * @param locale locale defining the order of words
+     */
+    LocaleCollation(Locale locale) {
+        this.locale = locale;
+        Collator collator = Collator.getInstance(locale);
+        collators = ThreadLocal.withInitial(() -> (Collator) collator.clone());
+    }
+
+    @Override
+    public void computeKey(byte[] word, int offset, int length, SortKey key) {
+        byte[] bytes = collators.get().getCollationKey(new String(word, offset, length, UTF_8)).toByteArray();
+        key.add(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public String toString() {
+        return "locale " + locale.toLanguageTag();
+    }
+}
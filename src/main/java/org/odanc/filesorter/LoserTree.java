@@ -0,0 +1,112 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Tournament tree of losers merging several sorted runs into one sorted sequence.
+ * Every internal node of the tree keeps the index of the cursor which lost
+ * the match at this node, the overall winner is kept separately. When the winner
+ * moves to its next word only the matches on the path from its leaf to the root
+ * are replayed, so each word costs about log2(k) comparisons for k runs.
+ * No objects are allocated while merging, the cursors themselves are reused.
+ * Cursors positioned at equal words are taken in the order of the run list.
+ *
+ * @param <C> type of run cursors
+ */
+class LoserTree<C extends RunCursor> {
+    private C[] cursors;
+    private Comparator<? super C> order;
+    private boolean[] exhausted;
+
+    // tree[0] is the winner index, tree[1..k-1] are the losers of internal nodes.
+    // Leaves are the nodes k..2k-1 referring to cursors 0..k-1
+    private int[] tree;
+
+    /**
+     * Creates a tree and moves every cursor to its first word
+     *
+     * @param runs cursors over sorted runs
+     * @param cursorOrder order of cursors by their current words
+     * @throws IOException I/O error happened while reading words
+     */
+    @SuppressWarnings("unchecked")
+    LoserTree(List<? extends C> runs, Comparator<? super C> cursorOrder) throws IOException {
+        cursors = (C[]) runs.toArray(new RunCursor[runs.size()]);
+        order = cursorOrder;
+        exhausted = new boolean[cursors.length];
+        tree = new int[Math.max(cursors.length, 1)];
+
+        for (int i = 0; i < cursors.length; i++) {
+            exhausted[i] = !cursors[i].next();
+        }
+        if (cursors.length > 0) {
+            tree[0] = playMatches(1);
+        }
+    }
+
+    /**
+     * Checks whether all the runs are entirely merged
+     *
+     * @return {@code true} if there are no more words
+     */
+    boolean isEmpty() {
+        return cursors.length == 0 || exhausted[tree[0]];
+    }
+
+    /**
+     * Gets the cursor positioned at the smallest word among all the runs
+     *
+     * @return winner cursor
+     */
+    C peek() {
+        return cursors[tree[0]];
+    }
+
+    /**
+     * Moves the winner cursor to its next word and finds the new winner
+     *
+     * @throws IOException I/O error happened while reading words
+     */
+    void advance() throws IOException {
+        int winner = tree[0];
+        exhausted[winner] = !cursors[winner].next();
+
+        for (int node = (winner + cursors.length) >> 1; node > 0; node >>= 1) {
+            int loser = tree[node];
+            if (isLess(loser, winner)) {
+                tree[node] = winner;
+                winner = loser;
+            }
+        }
+        tree[0] = winner;
+    }
+
+    // Fills the subtree of the given node with losers and returns its winner
+    private int playMatches(int node) {
+        if (node >= cursors.length) {
+            return node - cursors.length;
+        }
+
+        int left = playMatches(2 * node);
+        int right = playMatches(2 * node + 1);
+        if (isLess(right, left)) {
+            tree[node] = left;
+            return right;
+        } else {
+            tree[node] = right;
+            return left;
+        }
+    }
+
+    // Exhausted cursors lose every match. Equal words are won by the first run
+    private boolean isLess(int first, int second) {
+        if (exhausted[first] || exhausted[second]) {
+            return !exhausted[first];
+        }
+
+        int result = order.compare(cursors[first], cursors[second]);
+        return result < 0 || (result == 0 && first < second);
+    }
+}
@@ -1,8 +1,16 @@
 package org.odanc.filesorter;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 public class Main {
     
@@ -10,11 +18,12 @@ public class Main {
         
         // All args should be already checked at this point.
         // This class is meant to be run from filesorter-runner.jar
-        if (args.length != 2) {
+        if (args.length < 2) {
             terminate("wrong number of arguments");
         }
         
-        Path sourceFile = Paths.get(args[0]);
+        // Source path may be a file, a directory or a glob pattern
+        List<Path> sourceFiles = new ArrayList<>(findSourceFiles(args[0]));
         int maxHeapSize;
         
         try {
@@ -23,18 +32,142 @@ public class Main {
             maxHeapSize = 0;
         }
         
-        // Creating configuration with mandatory settings for file sorter to use
-        Config config = Config.newBuilder(sourceFile, maxHeapSize).build();
-        FileSorter fileSorter = new FileSorter(config);
+        // Creating the sorter with the heap size and optional settings following it
+        WordSorter.Builder builder = WordSorter.newBuilder().setHeapSize(maxHeapSize);
+        int progressInterval = 0;
+        Path summaryFile = null;
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "-i":
+                case "--input":
+                    sourceFiles.addAll(findSourceFiles(valueOf(args, ++i)));
+                    break;
+                case "-u":
+                case "--unique":
+                    builder.setUnique();
+                    break;
+                case "-c":
+                case "--count":
+                    builder.setCounted();
+                    break;
+                case "-r":
+                case "--replacement-selection":
+                    builder.setReplacementSelection(true);
+                    break;
+                case "-p":
+                case "--presorted":
+                    builder.setPresortedDetection(true);
+                    break;
+                case "-f":
+                case "--ignore-case":
+                    builder.setCaseInsensitiveOrder();
+                    break;
+                case "-n":
+                case "--numeric":
+                    builder.setNumericOrder();
+                    break;
+                case "-l":
+                case "--locale":
+                    builder.setLocaleOrder(Locale.forLanguageTag(valueOf(args, ++i)));
+                    break;
+                case "-L":
+                case "--lines":
+                    builder.setRecordSeparator('\n');
+                    break;
+                case "--record-separator":
+                    builder.setRecordSeparator(toSeparator(valueOf(args, ++i)));
+                    break;
+                case "-k":
+                case "--key":
+                    builder.addKey(valueOf(args, ++i));
+                    break;
+                case "-t":
+                case "--field-separator":
+                    builder.setFieldSeparator(toSeparator(valueOf(args, ++i)));
+                    break;
+                case "-z":
+                case "--compress":
+                    builder.setCompression(true);
+                    break;
+                case "-w":
+                case "--work-dir":
+                    builder.setWorkDirectory(Paths.get(valueOf(args, ++i)));
+                    break;
+                case "--head":
+                    builder.setFirstWords(toCount(valueOf(args, ++i)));
+                    break;
+                case "--tail":
+                    builder.setLastWords(toCount(valueOf(args, ++i)));
+                    break;
+                case "--progress":
+                    progressInterval = toInterval(valueOf(args, ++i));
+                    break;
+                case "--summary":
+                    summaryFile = Paths.get(valueOf(args, ++i));
+                    break;
+                default:
+                    terminate("unknown option " + args[i]);
+            }
+        }
         
+        // Key fields are checked once all the options are known
+        WordSorter sorter = null;
         try {
-            System.out.println("Sorting file " + sourceFile.toString());
-            fileSorter.sort();
+            sorter = builder.build();
+        } catch (IllegalArgumentException e) {
+            terminate(e.getMessage());
+        }
+        SortJob job = sorter.newJob(sourceFiles, Config.DEFAULT_OUTPUT_FILE);
+        ProgressReporter progress = progressInterval > 0
+                ? new ProgressReporter(job.getMetrics(), progressInterval, System.out)
+                : null;
+        
+        try {
+            if (sourceFiles.size() == 1) {
+                System.out.println("Sorting file " + sourceFiles.get(0).toString());
+            } else {
+                System.out.println("Sorting " + sourceFiles.size() + " files");
+            }
+            try {
+                job.run();
+            } finally {
+                if (progress != null) {
+                    progress.close();
+                }
+            }
+            if (job.getNaturalRunCount() > 0) {
+                System.out.println("Found " + job.getNaturalRunCount() + " sorted stretch(es)");
+            }
+            System.out.println("Split into " + job.getRunCount() + " temporary file(s), words buffers took "
+                    + job.getPeakBufferMemory() / 1_048_576 + " MB");
+            System.out.println("Merged temporary files in " + job.getMergePassCount() + " pass(es), "
+                    + job.getMergeRangeCount() + " range(s) at once");
+            System.out.println("Merge waited for temporary files " + job.getMergeStalls().getCount()
+                    + " time(s), " + job.getMergeStalls().getTime(TimeUnit.MILLISECONDS) + " ms");
+            SortMetrics metrics = job.getMetrics();
+            if (metrics.getInputs().size() > 1) {
+                for (InputMetrics input : metrics.getInputs()) {
+                    System.out.println("Read " + input.getFile() + ": " + input.getWordsRead() + " word(s), "
+                            + input.getBytesRead() / 1_048_576 + " MB in "
+                            + input.getReadTime(TimeUnit.MILLISECONDS) + " ms");
+                }
+            }
+            for (SortPhase phase : SortPhase.values()) {
+                if (metrics.isFinished(phase)) {
+                    System.out.println(phase.name().charAt(0) + phase.name().substring(1).toLowerCase(Locale.ROOT)
+                            + " took " + metrics.getWallTime(phase, TimeUnit.MILLISECONDS) + " ms, CPU "
+                            + metrics.getCpuTime(phase, TimeUnit.MILLISECONDS) + " ms, GC "
+                            + metrics.getGcTime(phase, TimeUnit.MILLISECONDS) + " ms");
+                }
+            }
+            if (summaryFile != null) {
+                Files.write(summaryFile, (metrics.toJson() + System.lineSeparator()).getBytes(UTF_8));
+            }
             System.out.println("Done!");
             
         // Checking just for sure, shouldn't happen if is run from filesort-runner jar    
         } catch (NoSuchFileException nsfe) {
-            terminate("file " + sourceFile.toString() + " doesn't exist");
+            terminate("file " + nsfe.getFile() + " doesn't exist");
             
         // All exceptions of file sorting routine are printed to output stream.
         // Application execution is then aborted since there is nothing else to do.
@@ -43,6 +176,66 @@ public class Main {
         }
     }
     
+    // Gets the value of the option at the given position
+    private static String valueOf(String[] args, int i) {
+        if (i == args.length) {
+            terminate("missing value of option " + args[i - 1]);
+        }
+        return args[i];
+    }
+    
+    // Finds the source files of a path, terminates if there are none
+    private static List<Path> findSourceFiles(String location) {
+        try {
+            return SourceFiles.find(location);
+        } catch (IOException e) {
+            terminate("no files to sort at " + location);
+            return null;
+        }
+    }
+    
+    // Converts the value of a separator option to an ASCII character,
+    // escapes \t and \0 stand for tab and null characters
+    private static char toSeparator(String value) {
+        switch (value) {
+            case "\\t":
+                return '\t';
+            case "\\0":
+                return '\0';
+            default:
+                if (value.length() != 1 || value.charAt(0) >= 0x80) {
+                    terminate("separator " + value + " is not a single ASCII character");
+                }
+                return value.charAt(0);
+        }
+    }
+    
+    // Converts the value of the progress option to a positive number of seconds
+    private static int toInterval(String value) {
+        try {
+            int seconds = Integer.parseInt(value);
+            if (seconds > 0) {
+                return seconds;
+            }
+        } catch (NumberFormatException ignore) {
+        }
+        terminate("progress interval " + value + " is not a positive number of seconds");
+        return 0;
+    }
+    
+    // Converts the value of the head or tail option to a positive number of words
+    private static long toCount(String value) {
+        try {
+            long count = Long.parseLong(value);
+            if (count > 0) {
+                return count;
+            }
+        } catch (NumberFormatException ignore) {
+        }
+        terminate("number of words " + value + " is not positive");
+        return 0;
+    }
+    
     private static void terminate(String errorMessage) {
         System.err.println("Error: " + errorMessage);
         System.exit(-1);
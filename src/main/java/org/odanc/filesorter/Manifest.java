@@ -0,0 +1,343 @@
+package org.odanc.filesorter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Checkpoints of a sorting kept in the work directory, so a sorting
+ * stopped by a failure resumes from the last checkpoint instead of
+ * starting over. The manifest is a text file of lines appended as
+ * temporary files are completed:
+ * <pre>
+ * sort &lt;signature&gt;
+ * run &lt;file&gt; &lt;from&gt; &lt;to&gt; &lt;size&gt; &lt;crc&gt;
+ * split
+ * merge &lt;file&gt; &lt;size&gt; &lt;crc&gt; &lt;merged files...&gt;
+ * </pre>
+ * The signature is a hash of the source file and the settings the temporary
+ * files depend on, a manifest of another sorting is discarded. A run is
+ * a temporary file holding the words of the source file range from-to,
+ * -1 if the range isn't known. Split ends the runs, merges replace the
+ * merged files with their results. Lines after a malformed or incomplete
+ * one are ignored, so the manifest survives a failure while it is appended.
+ * <p>
+ * When the manifest is opened, the completed files are checked by their size
+ * and CRC-32. If the source file is split, all the files must be intact.
+ * Otherwise the runs of contiguous ranges from the start of the source file
+ * are kept and the source file is read again from the end of the last of them.
+ * Temporary files of the directory not referenced by the manifest are deleted,
+ * the directory is locked by the sorting, see {@link WorkDirectoryLock}.
+ * Lines are not forced to the storage device, so checkpoints survive
+ * failures of the process, but not necessarily of the system.
+ */
+class Manifest implements Closeable {
+
+    // Name of the manifest file in the work directory
+    static final String FILE_NAME = "filesorter.manifest";
+
+    private Path directory;
+    private Path file;
+    private String signature;
+    private FileChannel channel;
+
+    // Completed files in the order they were recorded, whether the source
+    // file is split and the position it is read again from if it isn't
+    private Map<Path, Entry> entries = new LinkedHashMap<>();
+    private boolean splitDone;
+    private long resumePosition;
+
+    private Manifest(Path directory, String signature) {
+        this.directory = directory;
+        this.file = directory.resolve(FILE_NAME);
+        this.signature = signature;
+    }
+
+    /**
+     * Opens the manifest of the work directory, the directory is created
+     * if it doesn't exist. Checkpoints of the same sorting are kept,
+     * otherwise the manifest is started over
+     *
+     * @param directory work directory
+     * @param description description of the source file and the settings
+     *                    temporary files depend on
+     * @return manifest ready to record checkpoints
+     * @throws IOException I/O error happened while reading or writing the manifest
+     */
+    static Manifest open(Path directory, String description) throws IOException {
+        Files.createDirectories(directory);
+        Manifest manifest = new Manifest(directory, hash(description));
+        manifest.load();
+        manifest.deleteUnreferenced();
+        manifest.rewrite();
+        return manifest;
+    }
+
+    /**
+     * Gets the temporary files the sorting continues with: runs of the source
+     * file range read before or all the files left to merge if the source
+     * file is split
+     *
+     * @return paths to the temporary files
+     */
+    synchronized List<Path> getFiles() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    /**
+     * Gets the position in the source file reading continues from
+     *
+     * @return position of the first word not written to the runs
+     */
+    long getResumePosition() {
+        return resumePosition;
+    }
+
+    boolean isSplitDone() {
+        return splitDone;
+    }
+
+    synchronized boolean contains(Path file) {
+        return entries.containsKey(file);
+    }
+
+    /**
+     * Records a written run
+     *
+     * @param run path to the closed temporary file in the work directory
+     * @param from position of the first word of the run in the source file, -1 if unknown
+     * @param to position of the word after the run in the source file, -1 if unknown
+     * @param checksum CRC-32 of the temporary file
+     * @throws IOException I/O error happened while appending to the manifest
+     */
+    synchronized void runWritten(Path run, long from, long to, long checksum) throws IOException {
+        Entry entry = new Entry(from, to, Files.size(run), checksum);
+        append("run " + run.getFileName() + " " + from + " " + to + " " + entry.size + " " + checksum);
+        entries.put(run, entry);
+    }
+
+    /**
+     * Records the end of the split, all the runs are recorded
+     *
+     * @throws IOException I/O error happened while appending to the manifest
+     */
+    synchronized void splitDone() throws IOException {
+        append("split");
+        splitDone = true;
+    }
+
+    /**
+     * Records an intermediate merge replacing the merged files
+     *
+     * @param inputs paths to the merged files
+     * @param output path to the closed merged file in the work directory
+     * @param checksum CRC-32 of the merged file
+     * @throws IOException I/O error happened while appending to the manifest
+     */
+    synchronized void merged(List<Path> inputs, Path output, long checksum) throws IOException {
+        Entry entry = new Entry(-1, -1, Files.size(output), checksum);
+        StringBuilder line = new StringBuilder("merge ")
+                .append(output.getFileName()).append(' ').append(entry.size).append(' ').append(checksum);
+        for (Path input : inputs) {
+            line.append(' ').append(input.getFileName());
+        }
+        append(line.toString());
+        entries.keySet().removeAll(inputs);
+        entries.put(output, entry);
+    }
+
+    /**
+     * Closes and deletes the manifest after the sorting is finished
+     *
+     * @throws IOException I/O error happened while deleting the manifest
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Reads the checkpoints of the manifest of the same sorting,
+    // up to the first line which isn't complete or valid
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        String content = new String(Files.readAllBytes(file), UTF_8);
+        String[] lines = content.substring(0, content.lastIndexOf('\n') + 1).split("\n");
+        if (!lines[0].equals("sort " + signature)) {
+            return;
+        }
+        int i = 1;
+        while (i < lines.length && parse(lines[i].split(" "))) {
+            i += 1;
+        }
+
+        if (splitDone) {
+            for (Map.Entry<Path, Entry> entry : entries.entrySet()) {
+                if (!entry.getValue().verify(entry.getKey())) {
+                    entries.clear();
+                    splitDone = false;
+                    return;
+                }
+            }
+            return;
+        }
+
+        // Runs are completed out of order, so only the ranges up to the first
+        // missing one are kept, other runs are written again
+        List<Map.Entry<Path, Entry>> runs = new ArrayList<>(entries.entrySet());
+        runs.sort(Comparator.comparingLong(run -> run.getValue().from));
+        entries.clear();
+        for (Map.Entry<Path, Entry> run : runs) {
+            Entry entry = run.getValue();
+            if (entry.from != resumePosition || entry.to < entry.from || !entry.verify(run.getKey())) {
+                break;
+            }
+            entries.put(run.getKey(), entry);
+            resumePosition = entry.to;
+        }
+    }
+
+    // Applies the line split into fields, returns false if it isn't valid
+    private boolean parse(String[] fields) {
+        try {
+            if (fields[0].equals("run") && fields.length == 6 && !splitDone) {
+                entries.put(directory.resolve(fields[1]), new Entry(Long.parseLong(fields[2]),
+                        Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5])));
+                return true;
+            } else if (fields[0].equals("split") && fields.length == 1 && !splitDone) {
+                splitDone = true;
+                return true;
+            } else if (fields[0].equals("merge") && fields.length > 4 && splitDone) {
+                Entry entry = new Entry(-1, -1, Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+                List<Path> inputs = new ArrayList<>();
+                for (int i = 4; i < fields.length; i++) {
+                    inputs.add(directory.resolve(fields[i]));
+                }
+                if (!entries.keySet().containsAll(inputs)) {
+                    return false;
+                }
+                entries.keySet().removeAll(inputs);
+                entries.put(directory.resolve(fields[1]), entry);
+                return true;
+            }
+        } catch (NumberFormatException ignore) {
+        }
+        return false;
+    }
+
+    // Deletes temporary files of the directory left by the sortings
+    // which aren't referenced by the manifest
+    private void deleteUnreferenced() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, RunFiles.FILE_PREFIX + "*")) {
+            for (Path file : files) {
+                if (!entries.containsKey(file)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    // Replaces the manifest with the kept checkpoints only
+    // and opens it for appending
+    private void rewrite() throws IOException {
+        StringBuilder content = new StringBuilder("sort ").append(signature).append('\n');
+        for (Map.Entry<Path, Entry> entry : entries.entrySet()) {
+            Entry run = entry.getValue();
+            content.append("run ").append(entry.getKey().getFileName()).append(' ').append(run.from).append(' ')
+                    .append(run.to).append(' ').append(run.size).append(' ').append(run.checksum).append('\n');
+        }
+        if (splitDone) {
+            content.append("split\n");
+        }
+
+        Path newFile = directory.resolve(FILE_NAME + ".tmp");
+        Files.write(newFile, content.toString().getBytes(UTF_8));
+        Files.move(newFile, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        channel = FileChannel.open(file, CREATE, WRITE, APPEND);
+    }
+
+    private void append(String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String hash(String description) {
+        try {
+            StringBuilder hash = new StringBuilder();
+            for (byte b : MessageDigest.getInstance("SHA-256").digest(description.getBytes(UTF_8))) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+
+
+
+    /**
+     * Completed temporary file: the source file range of its words,
+     * its size and checksum
+     */
+    private static class Entry {
+        private long from;
+        private long to;
+        private long size;
+        private long checksum;
+
+        Entry(long from, long to, long size, long checksum) {
+            this.from = from;
+            this.to = to;
+            this.size = size;
+            this.checksum = checksum;
+        }
+
+        // Checks whether the file is the same as it was recorded
+        boolean verify(Path file) throws IOException {
+            if (!Files.isRegularFile(file) || Files.size(file) != size) {
+                return false;
+            }
+
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[65_536];
+            try (InputStream in = Files.newInputStream(file)) {
+                for (int count = in.read(buffer); count >= 0; count = in.read(buffer)) {
+                    crc.update(buffer, 0, count);
+                }
+            }
+            return crc.getValue() == checksum;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.odanc.filesorter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manager of the memory taken by words buffers. Buffers reserve bytes
+ * from a shared budget before their arrays grow and release them when
+ * the arrays are dropped, so the memory used for sorting is the real size
+ * of the buffered words whatever their lengths are. A buffer which can't
+ * grow is full and is written to a temporary file.
+ * <p>
+ * The budget planned by the configuration is also checked against the heap
+ * of the running JVM: it is cut to a half of the heap left by the data already
+ * live when sorting starts, and no buffer grows while the last garbage collection
+ * left a heap pool used over its {@link #HEAP_USAGE_THRESHOLD threshold part},
+ * which means the heap is almost full of live data. The usage of the pools is
+ * only read, their thresholds are left to the application the sorting runs in.
+ */
+class MemoryManager {
+
+    // Part of a heap pool which may be taken by live data after a garbage collection
+    static final double HEAP_USAGE_THRESHOLD = 0.9;
+
+    // Budget which is left to buffers whatever the heap usage is
+    private static final long MIN_BUDGET = 1_048_576;
+
+    private long budget;
+    private long reserved;
+    private long peak;
+    private List<HeapPool> pools;
+
+    /**
+     * Creates a manager of the budget watching the heap of the running JVM
+     *
+     * @param budget maximum memory taken by all the words buffers in bytes
+     */
+    MemoryManager(long budget) {
+        this(budget, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax(), getHeapPools());
+    }
+
+    /**
+     * Creates a manager of the budget watching the given heap
+     *
+     * @param budget maximum memory taken by all the words buffers in bytes
+     * @param maxHeap maximum size of the heap in bytes, -1 if it is not known
+     * @param pools pools of the heap
+     */
+    MemoryManager(long budget, long maxHeap, List<HeapPool> pools) {
+        this.pools = pools;
+
+        // Usage after the last collection doesn't count garbage
+        long liveHeap = 0;
+        for (HeapPool pool : pools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            liveHeap += usage != null ? usage.getUsed() : pool.getUsage().getUsed();
+        }
+
+        // Buffers take a half of the free heap as the other half is left
+        // to output, merge and the garbage collector moving big arrays
+        long headroom = maxHeap > 0
+                ? ((long) (maxHeap * HEAP_USAGE_THRESHOLD) - liveHeap) / 2
+                : budget;
+        this.budget = Math.min(budget, Math.max(headroom, MIN_BUDGET));
+    }
+
+    private MemoryManager() {
+        budget = Long.MAX_VALUE;
+        pools = new ArrayList<>();
+    }
+
+    /**
+     * Creates a manager without a budget which doesn't watch the heap
+     *
+     * @return manager permitting any reservation
+     */
+    static MemoryManager unbounded() {
+        return new MemoryManager();
+    }
+
+    /**
+     * Reserves memory if it fits in the budget and the heap isn't full
+     *
+     * @param bytes number of bytes to reserve
+     * @return {@code true} if memory is reserved
+     */
+    synchronized boolean tryReserve(long bytes) {
+        if (reserved + bytes > budget || isHeapFull()) {
+            return false;
+        }
+        reserve(bytes);
+        return true;
+    }
+
+    /**
+     * Reserves memory over the budget, e.g. for a single word
+     * which is bigger than any buffer
+     *
+     * @param bytes number of bytes to reserve
+     */
+    synchronized void reserve(long bytes) {
+        reserved += bytes;
+        peak = Math.max(peak, reserved);
+    }
+
+    /**
+     * Returns memory to the budget
+     *
+     * @param bytes number of bytes to release
+     */
+    synchronized void release(long bytes) {
+        reserved -= bytes;
+    }
+
+    synchronized long getBudget() {
+        return budget;
+    }
+
+    synchronized long getReserved() {
+        return reserved;
+    }
+
+    /**
+     * Gets the maximum memory reserved at once
+     *
+     * @return peak reserved memory in bytes
+     */
+    synchronized long getPeak() {
+        return peak;
+    }
+
+    // Checks whether the last garbage collection left any pool used
+    // over its threshold part. Pools not collected separately are not watched
+    private boolean isHeapFull() {
+        for (HeapPool pool : pools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getMax() > 0 && usage.getUsed() > usage.getMax() * HEAP_USAGE_THRESHOLD) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Gets the heap pools of the running JVM
+    private static List<HeapPool> getHeapPools() {
+        List<HeapPool> pools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pools.add(new PlatformPool(pool));
+            }
+        }
+        return pools;
+    }
+
+
+
+
+
+    /**
+     * Memory pool of the heap, whose usage is read the same way
+     * as it is read from {@link MemoryPoolMXBean}
+     */
+    interface HeapPool {
+
+        /**
+         * Gets the current usage of the pool
+         *
+         * @return usage of the pool
+         */
+        MemoryUsage getUsage();
+
+        /**
+         * Gets the usage of the pool right after the last garbage collection
+         *
+         * @return usage of the pool after a collection, {@code null} if it is not known
+         */
+        MemoryUsage getCollectionUsage();
+    }
+
+    /**
+     * Heap pool of the running JVM
+     */
+    private static class PlatformPool implements HeapPool {
+        private MemoryPoolMXBean pool;
+
+        PlatformPool(MemoryPoolMXBean pool) {
+            this.pool = pool;
+        }
+
+        @Override
+        public MemoryUsage getUsage() {
+            return pool.getUsage();
+        }
+
+        @Override
+        public MemoryUsage getCollectionUsage() {
+            return pool.getCollectionUsage();
+        }
+    }
+}
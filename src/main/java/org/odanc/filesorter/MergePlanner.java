@@ -0,0 +1,127 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Planner of the merge phase which limits the number of temporary files
+ * merged at once. While there are more files than the fan-in limit,
+ * the smallest files are merged into intermediate files, the same way
+ * as Huffman coding joins the least frequent symbols first.
+ * The first intermediate merge takes only as many files as needed
+ * for all the following merges, including the final one, to be full.
+ */
+class MergePlanner {
+    private int fanIn;
+    private Path directory;
+    private int passCount;
+
+    /**
+     * Creates a merge planner
+     *
+     * @param maxFanIn maximum number of files merged at once, at least 2
+     */
+    MergePlanner(int maxFanIn) {
+        this(maxFanIn, null);
+    }
+
+    /**
+     * Creates a merge planner writing intermediate files to the directory
+     *
+     * @param maxFanIn maximum number of files merged at once, at least 2
+     * @param directory work directory, {@code null} for the default temporary directory
+     */
+    MergePlanner(int maxFanIn, Path directory) {
+        fanIn = maxFanIn;
+        this.directory = directory;
+    }
+
+    /**
+     * Merges the smallest temporary files into intermediate ones until there are
+     * no more files than the fan-in limit. Merged files are deleted
+     *
+     * @param files temporary files with sorted words
+     * @param merge procedure merging files into a new file
+     * @return files remaining to be merged into the output file
+     * @throws IOException I/O error happened while merging files
+     */
+    List<Path> reduce(List<Path> files, Merge merge) throws IOException {
+        PriorityQueue<Run> runs = new PriorityQueue<>(Math.max(files.size(), 1),
+                Comparator.comparingLong((Run run) -> run.size).thenComparingInt(run -> run.depth));
+        for (Path file : files) {
+            runs.add(new Run(file, Files.size(file), 0));
+        }
+
+        if (runs.size() > fanIn) {
+            int mergeSize = (runs.size() - 2) % (fanIn - 1) + 2;
+
+            while (runs.size() > fanIn) {
+                List<Path> inputs = new ArrayList<>(mergeSize);
+                int depth = 0;
+                for (int i = 0; i < mergeSize; i++) {
+                    Run run = runs.poll();
+                    inputs.add(run.file);
+                    depth = Math.max(depth, run.depth);
+                }
+
+                Path output = RunFiles.createTempFile(directory);
+                merge.merge(inputs, output);
+                for (Path input : inputs) {
+                    Files.delete(input);
+                }
+
+                runs.add(new Run(output, Files.size(output), depth + 1));
+                mergeSize = fanIn;
+            }
+        }
+
+        // The final merge into the output file is one more pass
+        List<Path> remaining = new ArrayList<>(runs.size());
+        passCount = 1;
+        for (Run run : runs) {
+            remaining.add(run.file);
+            passCount = Math.max(passCount, run.depth + 1);
+        }
+        return remaining;
+    }
+
+    /**
+     * Gets the number of times the most merged words were read and written,
+     * including the final merge into the output file
+     *
+     * @return number of merge passes
+     */
+    int getPassCount() {
+        return passCount;
+    }
+
+
+
+
+
+    /**
+     * Procedure merging sorted temporary files into a new file
+     */
+    interface Merge {
+
+        void merge(List<Path> files, Path outputFile) throws IOException;
+    }
+
+    // Temporary file with its size and the number of merges it went through
+    private static class Run {
+        private Path file;
+        private long size;
+        private int depth;
+
+        Run(Path file, long size, int depth) {
+            this.file = file;
+            this.size = size;
+            this.depth = depth;
+        }
+    }
+}
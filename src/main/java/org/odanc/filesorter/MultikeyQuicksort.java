@@ -0,0 +1,172 @@
+package org.odanc.filesorter;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * In-place multikey quicksort of the words buffer index, also known as
+ * three-way radix quicksort. The range is partitioned by a single byte
+ * of the words at the current depth into words with a less, equal and
+ * greater byte, and only the words with the equal byte move to the next
+ * byte, so the common prefixes of the words are never compared again.
+ * <p>
+ * Bytes are taken from the prefixes cached in the index entries, which
+ * are refreshed for the range once it gets past them. Ranges which are
+ * partitioned badly too many times are finished by {@link IntroSort},
+ * short ranges are sorted by insertion sort. Sorting in parallel forks
+ * big partitions to the common fork-join pool.
+ */
+final class MultikeyQuicksort {
+
+    // Ranges shorter than this are sorted by insertion sort
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    // Ranges longer than this are sorted in parallel
+    private static final int PARALLEL_THRESHOLD = 8_192;
+
+    private MultikeyQuicksort() { }
+
+    /**
+     * Sorts the index of the words buffer
+     *
+     * @param chunk words buffer
+     * @param parallel {@code true} to sort by multiple threads
+     */
+    static void sort(Chunk chunk, boolean parallel) {
+        int size = chunk.size();
+        if (parallel && size > PARALLEL_THRESHOLD) {
+            ForkJoinPool.commonPool().invoke(new SortTask(chunk, 0, size, 0, 0, budget(size)));
+        } else {
+            sort(chunk, 0, size, 0, 0, budget(size));
+        }
+    }
+
+    // Sorts the range of words equal before the given depth, recursing into
+    // the less and greater partitions and looping over the equal one
+    private static void sort(Chunk chunk, int from, int to, int depth, int prefixDepth, int budget) {
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            if (budget == 0) {
+                IntroSort.sort(chunk, from, to, prefixDepth);
+                return;
+            }
+            prefixDepth = refreshPrefixes(chunk, from, to, depth, prefixDepth);
+
+            int pivot = medianOfThree(chunk, from, to, depth, prefixDepth);
+            long bounds = partition(chunk, from, to, depth, prefixDepth, pivot);
+            int lower = (int) (bounds >>> 32);
+            int upper = (int) bounds;
+
+            sort(chunk, from, lower, depth, prefixDepth, budget - 1);
+            sort(chunk, upper, to, depth, prefixDepth, budget - 1);
+
+            // Words with the pivot symbol 0 are equal
+            if (pivot == 0) {
+                return;
+            }
+            from = lower;
+            to = upper;
+            depth += 1;
+        }
+        IntroSort.insertionSort(chunk, from, to, prefixDepth);
+    }
+
+    // Caches prefixes of the range starting from the given depth
+    // if the depth is past the cached prefixes. Returns the new prefix depth
+    private static int refreshPrefixes(Chunk chunk, int from, int to, int depth, int prefixDepth) {
+        if (depth < prefixDepth + Chunk.PREFIX_LENGTH) {
+            return prefixDepth;
+        }
+
+        for (int i = from; i < to; i++) {
+            chunk.cachePrefix(i, depth);
+        }
+        return depth;
+    }
+
+    // Partitions the range into words with symbols at the given depth less than,
+    // equal to and greater than the pivot. Returns bounds of the equal words packed in long
+    private static long partition(Chunk chunk, int from, int to, int depth, int prefixDepth, int pivot) {
+        int lower = from;
+        int upper = to;
+        int i = from;
+
+        while (i < upper) {
+            int symbol = chunk.symbolAt(chunk.getEntry(i), depth, prefixDepth);
+            if (symbol < pivot) {
+                chunk.swapEntries(lower++, i++);
+            } else if (symbol > pivot) {
+                chunk.swapEntries(i, --upper);
+            } else {
+                i += 1;
+            }
+        }
+        return ((long) lower << 32) | upper;
+    }
+
+    // Median of symbols of the first, middle and last words of the range
+    private static int medianOfThree(Chunk chunk, int from, int to, int depth, int prefixDepth) {
+        int first = chunk.symbolAt(chunk.getEntry(from), depth, prefixDepth);
+        int second = chunk.symbolAt(chunk.getEntry(from + (to - from) / 2), depth, prefixDepth);
+        int third = chunk.symbolAt(chunk.getEntry(to - 1), depth, prefixDepth);
+
+        if (first < second) {
+            return second < third ? second : Math.max(first, third);
+        }
+        return first < third ? first : Math.max(second, third);
+    }
+
+    // Maximum number of nested less and greater partitions
+    // before switching to introsort
+    private static int budget(int size) {
+        return 2 * (32 - Integer.numberOfLeadingZeros(size));
+    }
+
+
+
+
+
+    /**
+     * Sorting task partitioning its range and forking the partitions
+     */
+    private static class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private Chunk chunk;
+        private int from;
+        private int to;
+        private int depth;
+        private int prefixDepth;
+        private int budget;
+
+        SortTask(Chunk chunk, int from, int to, int depth, int prefixDepth, int budget) {
+            this.chunk = chunk;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+            this.prefixDepth = prefixDepth;
+            this.budget = budget;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD || budget == 0) {
+                sort(chunk, from, to, depth, prefixDepth, budget);
+                return;
+            }
+            prefixDepth = refreshPrefixes(chunk, from, to, depth, prefixDepth);
+
+            int pivot = medianOfThree(chunk, from, to, depth, prefixDepth);
+            long bounds = partition(chunk, from, to, depth, prefixDepth, pivot);
+            int lower = (int) (bounds >>> 32);
+            int upper = (int) bounds;
+
+            SortTask less = new SortTask(chunk, from, lower, depth, prefixDepth, budget - 1);
+            SortTask greater = new SortTask(chunk, upper, to, depth, prefixDepth, budget - 1);
+            if (pivot == 0) {
+                invokeAll(less, greater);
+            } else {
+                invokeAll(less, greater, new SortTask(chunk, lower, upper, depth + 1, prefixDepth, budget));
+            }
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Natural runs of the source file: stretches of words which are already
+ * in sorted order. Long enough runs are merged straight from the source file
+ * without being buffered, sorted and written to temporary files, while the
+ * gaps between them are split into temporary files as usual. An already
+ * sorted file is a single natural run, so sorting it takes one more
+ * sequential reading of the file besides copying it to the output file.
+ * <p>
+ * Runs and gaps are bounded by positions right after words, so every range
+ * can be read by a separate reader, see {@link ByteWordReader#endPosition}.
+ */
+class NaturalRuns {
+    private Path file;
+    private int delimiter;
+    private Collation collation;
+
+    // Start and end positions of the runs and of the gaps between them in file order
+    private List<long[]> runs;
+    private List<long[]> gaps;
+
+    private NaturalRuns(Path file, int delimiter, Collation collation, List<long[]> runs, List<long[]> gaps) {
+        this.file = file;
+        this.delimiter = delimiter;
+        this.collation = collation;
+        this.runs = runs;
+        this.gaps = gaps;
+    }
+
+    /**
+     * Reads the whole file looking for natural runs. Only the longest runs
+     * are kept if there are too many of them, the rest are left in gaps
+     *
+     * @param file path to the source file
+     * @param delimiter delimiter byte or {@link ByteWordReader#WHITESPACE}
+     * @param collation collation of words, {@code null} for the natural order
+     * @param minRunSize minimum size of a natural run in bytes
+     * @param maxRunCount maximum number of natural runs
+     * @return natural runs of the file
+     * @throws IOException I/O error happened while reading file
+     */
+    static NaturalRuns detect(Path file, int delimiter, Collation collation, long minRunSize, int maxRunCount)
+            throws IOException {
+        List<long[]> runs = new ArrayList<>();
+        long size;
+
+        try (FileChannel channel = FileChannel.open(file)) {
+            size = channel.size();
+            ByteWordReader reader = new ByteWordReader(channel, delimiter);
+            WordReader words = KeyedWordReader.wrap(reader, collation);
+
+            // Run starts right after the last word of the previous run
+            long runStart = 0;
+            long runEnd = 0;
+            byte[] previous = new byte[64];
+            int previousLength = -1;
+            boolean previousEmpty = false;
+            byte[] word = new byte[64];
+
+            while (words.next()) {
+                int length = words.length();
+                if (word.length < length) {
+                    word = new byte[Math.max(length, word.length * 2)];
+                }
+                words.copyTo(word, 0);
+
+                boolean descent = previousLength >= 0
+                        && Utf8Order.compare(word, 0, length, previous, 0, previousLength) < 0;
+                if (descent && previousEmpty) {
+
+                    // An empty word at the end of a range is not read, so the run is
+                    // left in a gap ending with this word and the next run starts after it
+                    runStart = reader.endPosition();
+                    previousLength = -1;
+                    runEnd = runStart;
+                    continue;
+                }
+                if (descent) {
+                    addRun(runs, runStart, runEnd, minRunSize);
+                    runStart = runEnd;
+                }
+                runEnd = reader.endPosition();
+
+                byte[] swap = previous;
+                previous = word;
+                previousLength = length;
+                previousEmpty = reader.length() == 0;
+                word = swap;
+            }
+
+            // The last run ends at the end of file, since an empty word at the end
+            // of a range is not read. Other runs end with non-empty words, because
+            // no word is less than an empty one in the natural order and runs
+            // ending with an empty word are dropped otherwise
+            addRun(runs, runStart, size, minRunSize);
+        }
+
+        // Keeps the longest runs in file order
+        if (runs.size() > maxRunCount) {
+            runs.sort(Comparator.comparingLong((long[] run) -> run[0] - run[1]));
+            runs = new ArrayList<>(runs.subList(0, Math.max(maxRunCount, 0)));
+            runs.sort(Comparator.comparingLong((long[] run) -> run[0]));
+        }
+
+        List<long[]> gaps = new ArrayList<>(runs.size() + 1);
+        long gapStart = 0;
+        for (long[] run : runs) {
+            if (gapStart < run[0]) {
+                gaps.add(new long[] {gapStart, run[0]});
+            }
+            gapStart = run[1];
+        }
+        if (gapStart < size) {
+            gaps.add(new long[] {gapStart, size});
+        }
+        return new NaturalRuns(file, delimiter, collation, runs, gaps);
+    }
+
+    int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Opens cursors over the natural runs
+     *
+     * @return cursors positioned before the first words of the runs
+     * @throws IOException I/O error happened while opening file
+     */
+    List<WordCursor> openRuns() throws IOException {
+        List<WordCursor> cursors = new ArrayList<>(runs.size());
+        try {
+            for (long[] run : runs) {
+                cursors.add(new SourceCursor(KeyedWordReader.wrap(openRange(run), collation)));
+            }
+        } catch (IOException e) {
+            for (WordCursor cursor : cursors) {
+                cursor.close();
+            }
+            throw e;
+        }
+        return cursors;
+    }
+
+    /**
+     * Opens a reader of all the words outside of the natural runs.
+     * Words are read without sort keys
+     *
+     * @return reader of the gaps between the runs
+     */
+    WordReader openGaps() {
+        return new GapReader();
+    }
+
+    private ByteWordReader openRange(long[] range) throws IOException {
+        return new ByteWordReader(FileChannel.open(file), delimiter,
+                range[0], range[1], ByteWordReader.DEFAULT_WINDOW_SIZE);
+    }
+
+    // Adds the run to the list if it is long enough
+    private static void addRun(List<long[]> runs, long start, long end, long minRunSize) {
+        if (end - start >= minRunSize && end > start) {
+            runs.add(new long[] {start, end});
+        }
+    }
+
+
+
+
+
+    /**
+     * Cursor over words of a natural run read from the source file
+     */
+    private static class SourceCursor implements WordCursor {
+        private WordReader reader;
+        private byte[] word = new byte[64];
+        private int length;
+
+        SourceCursor(WordReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean next() throws IOException {
+            if (!reader.next()) {
+                return false;
+            }
+
+            length = reader.length();
+            if (word.length < length) {
+                word = Arrays.copyOf(word, Math.max(length, word.length * 2));
+            }
+            reader.copyTo(word, 0);
+            return true;
+        }
+
+        @Override
+        public byte[] array() {
+            return word;
+        }
+
+        @Override
+        public int offset() {
+            return 0;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public long count() {
+            return 1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+
+
+
+
+    /**
+     * Reader of the gaps one after another, every gap is opened
+     * when the previous one is read entirely
+     */
+    private class GapReader implements WordReader {
+        private int next;
+        private ByteWordReader reader;
+
+        @Override
+        public boolean next() throws IOException {
+            while (reader == null || !reader.next()) {
+                if (reader != null) {
+                    reader.close();
+                    reader = null;
+                }
+                if (next == gaps.size()) {
+                    return false;
+                }
+                reader = openRange(gaps.get(next++));
+            }
+            return true;
+        }
+
+        @Override
+        public String word() {
+            return reader.word();
+        }
+
+        @Override
+        public int length() {
+            return reader.length();
+        }
+
+        @Override
+        public void copyTo(byte[] destination, int offset) {
+            reader.copyTo(destination, offset);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.odanc.filesorter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Output stage writing filled buffers to files by a separate thread.
+ * Writers encode words into one buffer while the previously filled buffers
+ * are being written, and wait for a free buffer only if all of them are
+ * in use. Buffers are direct and reused for all the files written through
+ * the stage, files are written one after another.
+ */
+class OutputStage implements Closeable {
+    private int bufferSize;
+    private int maxBufferCount;
+    private int bufferCount;
+    private BlockingQueue<ByteBuffer> freeBuffers;
+    private StallCounter stalls;
+
+    private ExecutorService writer;
+    private AtomicReference<IOException> failure = new AtomicReference<>();
+
+    /**
+     * Creates an output stage
+     *
+     * @param bufferCount number of buffers, at least two
+     * @param bufferSize size of a buffer in bytes
+     */
+    OutputStage(int bufferCount, int bufferSize) {
+        this(bufferCount, bufferSize, new StallCounter());
+    }
+
+    /**
+     * Creates an output stage counting the time writers wait for free buffers
+     *
+     * @param bufferCount number of buffers, at least two
+     * @param bufferSize size of a buffer in bytes
+     * @param stalls counter of time writers wait for buffers to be written
+     */
+    OutputStage(int bufferCount, int bufferSize, StallCounter stalls) {
+        this.bufferSize = bufferSize;
+        this.stalls = stalls;
+        maxBufferCount = bufferCount;
+        freeBuffers = new ArrayBlockingQueue<>(bufferCount);
+        writer = Executors.newSingleThreadExecutor(new DaemonThreadFactory("output"));
+    }
+
+    /**
+     * Gets an empty buffer. Waits until one of the buffers is written
+     * if all the buffers are in use
+     *
+     * @return empty buffer
+     * @throws IOException error happened while writing buffers
+     */
+    ByteBuffer take() throws IOException {
+        ByteBuffer buffer = freeBuffers.poll();
+        if (buffer == null && bufferCount < maxBufferCount) {
+            bufferCount += 1;
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+        } else if (buffer == null) {
+            buffer = waitForBuffer();
+        }
+
+        checkForFailure();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Sends the filled buffer to be written to the channel.
+     * The buffer is returned to the free buffers after that
+     *
+     * @param channel channel to write the buffer to
+     * @param buffer filled buffer
+     */
+    void write(WritableByteChannel channel, ByteBuffer buffer) {
+        buffer.flip();
+        writer.execute(() -> {
+            try {
+                if (failure.get() == null) {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            } catch (IOException e) {
+                failure.compareAndSet(null, e);
+            } catch (RuntimeException e) {
+                failure.compareAndSet(null, new IOException(e));
+            } finally {
+                freeBuffers.add(buffer);
+            }
+        });
+    }
+
+    /**
+     * Writes the last buffer to the channel and waits
+     * until all the buffers sent to the channel are written
+     *
+     * @param channel channel to write the buffer to
+     * @param buffer the last filled buffer
+     * @param force {@code true} to force the written data to the storage device
+     *              if the channel is a file channel
+     * @throws IOException error happened while writing buffers
+     */
+    void finish(WritableByteChannel channel, ByteBuffer buffer, boolean force) throws IOException {
+        write(channel, buffer);
+        Future<?> written = writer.submit(() -> { });
+        try {
+            written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for output to be written");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+
+        checkForFailure();
+        if (force && channel instanceof FileChannel) {
+            ((FileChannel) channel).force(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        writer.shutdownNow();
+    }
+
+    private ByteBuffer waitForBuffer() throws IOException {
+        long start = System.nanoTime();
+        try {
+            ByteBuffer buffer = freeBuffers.take();
+            stalls.add(System.nanoTime() - start);
+            return buffer;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for output buffer");
+        }
+    }
+
+    private void checkForFailure() throws IOException {
+        IOException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Plan of merging sorted temporary files by ranges of words, so every range
+ * is merged by a separate thread into its own region of the output file.
+ * Splitter words are picked from the samples of the file indexes, so the ranges
+ * hold about the same number of bytes. A range holds the words not less than
+ * its splitter and less than the splitter of the next range, so equal words
+ * of all the files fall into the same range and the ranges merged one after
+ * another are the same as all the files merged at once.
+ * <p>
+ * Bounds of the ranges in every file are found by reading the file from
+ * the last sample before the splitter, and the numbers of words and word bytes
+ * of every range are counted on the way, so the output size of every range
+ * is known before it is merged.
+ */
+class PartitionedMerge {
+    private List<Path> files;
+    private List<RunIndex> indexes;
+    private List<byte[]> splitters = new ArrayList<>();
+
+    // Offsets of the ranges in every file, the numbers of words and word bytes
+    // before them. The last bound of every file is the end of the file
+    private long[][] offsets;
+    private long[][] wordsBefore;
+    private long[][] bytesBefore;
+
+    /**
+     * Plans the ranges of the files
+     *
+     * @param files temporary files with sorted words
+     * @param indexes indexes of the files
+     * @param maxRangeCount maximum number of ranges, the ranges are fewer
+     *                      if there aren't enough sampled words
+     * @param runFiles factory of temporary files reading the files
+     * @throws IOException I/O error happened while reading the files
+     */
+    PartitionedMerge(List<Path> files, List<RunIndex> indexes, int maxRangeCount, RunFiles runFiles)
+            throws IOException {
+        this.files = files;
+        this.indexes = indexes;
+        pickSplitters(maxRangeCount);
+
+        int rangeCount = splitters.size() + 1;
+        offsets = new long[rangeCount + 1][files.size()];
+        wordsBefore = new long[rangeCount + 1][files.size()];
+        bytesBefore = new long[rangeCount + 1][files.size()];
+        for (int i = 0; i < files.size(); i++) {
+            RunIndex index = indexes.get(i);
+            for (int range = 1; range < rangeCount; range++) {
+                findBound(i, range, runFiles);
+            }
+            offsets[rangeCount][i] = index.getFileSize();
+            wordsBefore[rangeCount][i] = index.getWordCount();
+            bytesBefore[rangeCount][i] = index.getByteCount();
+        }
+    }
+
+    int getRangeCount() {
+        return splitters.size() + 1;
+    }
+
+    /**
+     * Gets the size of the range written to the output file
+     *
+     * @param range number of the range
+     * @param separatorLength length of the separator written after every word
+     * @return number of bytes the words of the range take in the output file
+     */
+    long getOutputSize(int range, int separatorLength) {
+        long size = 0;
+        for (int i = 0; i < files.size(); i++) {
+            size += bytesBefore[range + 1][i] - bytesBefore[range][i]
+                    + (wordsBefore[range + 1][i] - wordsBefore[range][i]) * separatorLength;
+        }
+        return size;
+    }
+
+    /**
+     * Opens cursors of the range of all the files which have words in the range
+     *
+     * @param range number of the range
+     * @param runFiles factory of temporary files
+     * @param bufferSize initial size of the read buffer of a file
+     * @return cursors of the range
+     * @throws IOException I/O error happened while opening the files
+     */
+    List<WordCursor> openRange(int range, RunFiles runFiles, int bufferSize) throws IOException {
+        List<WordCursor> cursors = new ArrayList<>();
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                if (offsets[range][i] < offsets[range + 1][i]) {
+                    cursors.add(runFiles.newReader(files.get(i), offsets[range][i], offsets[range + 1][i],
+                            bufferSize));
+                }
+            }
+        } catch (IOException e) {
+            for (WordCursor cursor : cursors) {
+                cursor.close();
+            }
+            throw e;
+        }
+        return cursors;
+    }
+
+    // Picks increasing splitters from the samples of all the files, so the ranges
+    // take about the same number of bytes. A sample stands for the bytes of its file
+    // up to the next sample
+    private void pickSplitters(int maxRangeCount) {
+        List<Sample> samples = new ArrayList<>();
+        long total = 0;
+        for (RunIndex index : indexes) {
+            for (int i = 0; i < index.size(); i++) {
+                long next = i + 1 < index.size() ? index.getOffset(i + 1) : index.getFileSize();
+                samples.add(new Sample(index.getSample(i), next - index.getOffset(i)));
+            }
+            total += index.getFileSize();
+        }
+        samples.sort(Comparator.comparing(sample -> sample.word, (first, second) ->
+                Utf8Order.compare(first, 0, first.length, second, 0, second.length)));
+
+        // Bytes before the first samples of the files belong to the first range
+        long weight = total;
+        for (Sample sample : samples) {
+            weight -= sample.weight;
+        }
+        for (Sample sample : samples) {
+            if (splitters.size() + 1 == maxRangeCount) {
+                break;
+            }
+            long bound = total * (splitters.size() + 1) / maxRangeCount;
+            byte[] last = splitters.isEmpty() ? null : splitters.get(splitters.size() - 1);
+            if (weight >= bound && (last == null
+                    || Utf8Order.compare(last, 0, last.length, sample.word, 0, sample.word.length) < 0)) {
+                splitters.add(sample.word);
+            }
+            weight += sample.weight;
+        }
+    }
+
+    // Finds the first word of the file not less than the splitter of the range
+    // by reading the file from the last sample less than the splitter
+    private void findBound(int file, int range, RunFiles runFiles) throws IOException {
+        RunIndex index = indexes.get(file);
+        byte[] splitter = splitters.get(range - 1);
+        int sample = index.findBefore(splitter, 0, splitter.length);
+        long offset = sample >= 0 ? index.getOffset(sample) : 0;
+        long words = sample >= 0 ? index.getWordsBefore(sample) : 0;
+        long bytes = sample >= 0 ? index.getBytesBefore(sample) : 0;
+
+        try (RunReader reader = runFiles.newReader(files.get(file), offset, index.getFileSize(),
+                ByteWordReader.DEFAULT_BUFFER_SIZE)) {
+            while (reader.next() && Utf8Order.compare(reader.array(), reader.offset(), reader.length(),
+                    splitter, 0, splitter.length) < 0) {
+                offset += varIntSize(reader.length()) + reader.length();
+                words += 1;
+                bytes += reader.length();
+            }
+        }
+        offsets[range][file] = offset;
+        wordsBefore[range][file] = words;
+        bytesBefore[range][file] = bytes;
+    }
+
+    // Size of the length of a word encoded by RunWriter
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size += 1;
+        }
+        return size;
+    }
+
+
+
+
+
+    /**
+     * Sampled word and the number of bytes of its file it stands for
+     */
+    private static class Sample {
+        private byte[] word;
+        private long weight;
+
+        Sample(byte[] word, long weight) {
+            this.word = word;
+            this.weight = weight;
+        }
+    }
+}
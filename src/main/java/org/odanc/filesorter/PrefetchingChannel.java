@@ -0,0 +1,149 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Channel reading a temporary file by big blocks which are read ahead
+ * by a pool of threads while the previous blocks are being consumed.
+ * Every channel keeps a bounded number of blocks, so when many temporary
+ * files are merged at once each of them is read sequentially by big reads
+ * instead of small interleaved ones. Time spent waiting for blocks
+ * which aren't read in time is counted as stalls.
+ */
+class PrefetchingChannel implements ReadableByteChannel {
+
+    // Number of blocks read ahead in addition to the block being consumed
+    static final int PREFETCH_BLOCKS = 2;
+
+    private FileChannel file;
+    private Executor executor;
+    private StallCounter stalls;
+    private int blockSize;
+    private long size;
+
+    private ByteBuffer block;
+    private long nextPosition;
+    private Deque<Future<ByteBuffer>> pending = new ArrayDeque<>();
+    private Deque<ByteBuffer> freeBlocks = new ArrayDeque<>();
+    private boolean open = true;
+
+    /**
+     * Creates a channel reading ahead the file
+     *
+     * @param file temporary file, closed with this channel
+     * @param executor executor reading blocks
+     * @param blockSize size of a block in bytes
+     * @param stalls counter of time spent waiting for blocks
+     * @throws IOException I/O error happened while reading file
+     */
+    PrefetchingChannel(FileChannel file, Executor executor, int blockSize, StallCounter stalls)
+            throws IOException {
+        this.file = file;
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.stalls = stalls;
+        size = file.size();
+        prefetch();
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        while (block == null || !block.hasRemaining()) {
+            if (block != null) {
+                freeBlocks.add(block);
+                block = null;
+            }
+            if (pending.isEmpty()) {
+                return -1;
+            }
+
+            block = await(pending.poll());
+            prefetch();
+        }
+
+        int count = Math.min(destination.remaining(), block.remaining());
+        int limit = block.limit();
+        block.limit(block.position() + count);
+        destination.put(block);
+        block.limit(limit);
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        file.close();
+    }
+
+    // Sends the next blocks to be read until enough blocks are read ahead
+    private void prefetch() {
+        while (nextPosition < size && pending.size() < PREFETCH_BLOCKS) {
+            ByteBuffer next = freeBlocks.isEmpty() ? ByteBuffer.allocate(blockSize) : freeBlocks.poll();
+            long position = nextPosition;
+            nextPosition += blockSize;
+
+            pending.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return readBlock(next, position);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor));
+        }
+    }
+
+    // Reads the block of the file starting from the given position,
+    // the block is shorter at the end of file
+    private ByteBuffer readBlock(ByteBuffer buffer, long position) throws IOException {
+        buffer.clear();
+        buffer.limit((int) Math.min(blockSize, size - position));
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // Waits for the block counting the time if it isn't read yet
+    private ByteBuffer await(Future<ByteBuffer> future) throws IOException {
+        try {
+            if (future.isDone()) {
+                return future.get();
+            }
+
+            long start = System.nanoTime();
+            ByteBuffer buffer = future.get();
+            stalls.add(System.nanoTime() - start);
+            return buffer;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for read ahead block");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
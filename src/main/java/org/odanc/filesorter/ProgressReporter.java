@@ -0,0 +1,69 @@
+package org.odanc.filesorter;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints a progress line of the sorting periodically by a background thread:
+ * the running phase, the estimated done part, the elapsed time, the speed
+ * of reading the source file and the estimated time left, e.g.
+ * {@code "split: 37% done in 0:01:02, read 512 MB at 8 MB/s, ETA 0:01:45"}.
+ */
+class ProgressReporter implements Closeable {
+    private SortMetrics metrics;
+    private PrintStream out;
+    private ScheduledExecutorService timer;
+
+    /**
+     * Starts reporting the progress
+     *
+     * @param metrics metrics of the sorting
+     * @param interval interval between progress lines in seconds
+     * @param out stream to print progress lines to
+     */
+    ProgressReporter(SortMetrics metrics, int interval, PrintStream out) {
+        this.metrics = metrics;
+        this.out = out;
+        timer = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("progress"));
+        timer.scheduleAtFixedRate(this::report, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Formats the current progress of the sorting
+     *
+     * @return progress line or {@code null} if sorting isn't started
+     */
+    String format() {
+        SortPhase phase = metrics.getPhase();
+        if (phase == null) {
+            return null;
+        }
+
+        long elapsed = metrics.getElapsedTime(TimeUnit.SECONDS);
+        long read = metrics.getBytesRead() / 1_048_576;
+        long remaining = metrics.getRemainingTime(TimeUnit.SECONDS);
+        return String.format(Locale.ROOT, "%s: %d%% done in %s, read %d MB at %d MB/s, ETA %s",
+                phase.name().toLowerCase(Locale.ROOT), (int) (metrics.getProgress() * 100), formatTime(elapsed),
+                read, elapsed > 0 ? read / elapsed : read, remaining >= 0 ? formatTime(remaining) : "unknown");
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private void report() {
+        String line = format();
+        if (line != null) {
+            out.println(line);
+        }
+    }
+
+    private static String formatTime(long seconds) {
+        return String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
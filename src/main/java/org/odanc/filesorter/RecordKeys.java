@@ -0,0 +1,130 @@
+package org.odanc.filesorter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collation of records, e.g. lines of CSV or TSV files, by one or more
+ * key fields. Records are compared by the first key, then by the second
+ * one and so on, and by the whole records when all the keys are equal,
+ * the same way as {@code sort -k} compares lines.
+ * <p>
+ * Fields are delimited either by every separator byte or by runs of
+ * spaces and tabs. A field delimited by blanks starts with the blanks
+ * before it, so they are a part of its key unless the key skips them,
+ * the same way as {@code sort -k} without {@code -b} does.
+ * The sort key of a record is the keys of all its key fields one after
+ * another, every key is ended by byte 0 while bytes 0 and 1 inside keys
+ * are escaped as 0101 and 0102, so a key is less than any longer key
+ * starting with it. Fields ordered naturally are keyed by ranks of their
+ * bytes from {@link Utf8Order}. Fields are found once per record
+ * when it is read, sorting and merging compare the keys only.
+ */
+class RecordKeys implements Collation {
+
+    // Marker of fields delimited by blanks
+    static final int BLANKS = -1;
+
+    private int separator;
+    private List<KeyField> keys;
+
+    // Key of a single field computed by its collation before it is escaped
+    private ThreadLocal<SortKey> fieldKeys = ThreadLocal.withInitial(SortKey::new);
+
+    /**
+     * Creates a collation of records by the given keys
+     *
+     * @param separator field separator byte or {@link #BLANKS}
+     * @param keys key fields in the order of significance
+     */
+    RecordKeys(int separator, List<KeyField> keys) {
+        this.separator = separator;
+        this.keys = new ArrayList<>(keys);
+    }
+
+    @Override
+    public void computeKey(byte[] record, int offset, int length, SortKey key) {
+        int end = offset + length;
+        for (KeyField field : keys) {
+            int from = skipFields(record, offset, end, field.getFirstField() - 1);
+            int to = end;
+            if (field.getLastField() != KeyField.END_OF_RECORD) {
+                int lastStart = skipFields(record, from, end, field.getLastField() - field.getFirstField());
+                to = fieldEnd(record, lastStart, end);
+            }
+            if (field.isBlanksSkipped()) {
+                from = skipBlanks(record, from, to);
+            }
+
+            Collation collation = field.getCollation();
+            if (collation == null) {
+                for (int i = from; i < to; i++) {
+                    putEscaped(Utf8Order.RANK[record[i] & 0xFF], key);
+                }
+            } else {
+                SortKey fieldKey = fieldKeys.get();
+                fieldKey.clear();
+                collation.computeKey(record, from, to - from, fieldKey);
+                byte[] bytes = fieldKey.array();
+                for (int i = 0; i < fieldKey.length(); i++) {
+                    putEscaped(bytes[i] & 0xFF, key);
+                }
+            }
+            key.add(0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "fields " + separator + " " + keys;
+    }
+
+    // Finds the start of the field which is the given number of fields
+    // after the field starting at the position, the end of the record
+    // if there are fewer fields
+    private int skipFields(byte[] record, int position, int end, int count) {
+        for (int i = 0; i < count && position < end; i++) {
+            position = fieldEnd(record, position, end);
+            if (separator != BLANKS && position < end) {
+                position += 1;
+            }
+        }
+        return position;
+    }
+
+    // Finds the end of the field starting at the position,
+    // a field delimited by blanks starts with the blanks before it
+    private int fieldEnd(byte[] record, int position, int end) {
+        if (separator == BLANKS) {
+            position = skipBlanks(record, position, end);
+        }
+        while (position < end && !isSeparator(record[position])) {
+            position += 1;
+        }
+        return position;
+    }
+
+    private int skipBlanks(byte[] record, int position, int end) {
+        while (position < end && isBlank(record[position])) {
+            position += 1;
+        }
+        return position;
+    }
+
+    private boolean isSeparator(byte b) {
+        return separator == BLANKS ? isBlank(b) : b == separator;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    private static void putEscaped(int b, SortKey key) {
+        if (b < 2) {
+            key.add(1);
+            key.add(b + 1);
+        } else {
+            key.add(b);
+        }
+    }
+}
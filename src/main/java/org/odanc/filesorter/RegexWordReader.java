@@ -0,0 +1,64 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.Scanner;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Word reader for words delimited by an arbitrary regex-pattern.
+ * Backed by {@link Scanner} so it is considerably slower than
+ * {@link ByteWordReader} and is used only when the delimiter
+ * can't be matched byte by byte.
+ */
+class RegexWordReader implements WordReader {
+    private Scanner scanner;
+    private String word;
+    private byte[] bytes;
+
+    RegexWordReader(Path file, String delimiter) throws IOException {
+        scanner = new Scanner(file, UTF_8.name());
+        scanner.useDelimiter(delimiter);
+    }
+
+    RegexWordReader(ReadableByteChannel channel, String delimiter) {
+        scanner = new Scanner(channel, UTF_8.name());
+        scanner.useDelimiter(delimiter);
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (scanner.hasNext()) {
+            word = scanner.next();
+            bytes = word.getBytes(UTF_8);
+            return true;
+        }
+
+        if (scanner.ioException() != null) {
+            throw scanner.ioException();
+        }
+        return false;
+    }
+
+    @Override
+    public String word() {
+        return word;
+    }
+
+    @Override
+    public int length() {
+        return bytes.length;
+    }
+
+    @Override
+    public void copyTo(byte[] destination, int offset) {
+        System.arraycopy(bytes, 0, destination, offset, bytes.length);
+    }
+
+    @Override
+    public void close() {
+        scanner.close();
+    }
+}
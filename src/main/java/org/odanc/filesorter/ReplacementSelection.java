@@ -0,0 +1,407 @@
+package org.odanc.filesorter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Run generator writing sorted temporary files by replacement selection.
+ * Words are kept in a heap ordered by their run numbers first and by
+ * the words themselves then. The smallest word is written to the current
+ * temporary file and replaced by the next word of the source file, which
+ * joins the current run if it isn't less than the written word and
+ * the next run otherwise. Runs are about twice as long as the memory
+ * on random input and much longer on nearly sorted input.
+ * <p>
+ * Words are packed into a single byte array the same way as in {@link Chunk}:
+ * words are appended from the start of the array and the heap grows from
+ * the end of the array towards them. Every word is prefixed with its length,
+ * a mark of written words and the parity of its run. Space of written words
+ * is reclaimed by compacting the array once enough of it is taken by them,
+ * the heap is rebuilt from the remaining words then. The array grows while
+ * the memory manager permits, then the words are written to make room.
+ * <p>
+ * Every heap entry is a word offset in its lower half and the parity of
+ * the word run with the cached key prefix of the word in its upper half,
+ * see {@link Chunk}. Words in the heap belong either to the current run
+ * or to the next one, so the parity is enough to tell their runs apart.
+ */
+class ReplacementSelection implements Closeable {
+
+    // Initial size of the array in bytes
+    private static final int INITIAL_SIZE = 1_048_576;
+
+    // Size of a heap entry in bytes
+    private static final int ENTRY_SIZE = 8;
+
+    // Flags of the word header following the word length
+    private static final int WRITTEN = 2;
+    private static final int ODD_RUN = 1;
+    private static final int FLAG_BITS = 2;
+
+    // The array is compacted when written words take this part of it
+    private static final int COMPACTION_RATIO = 8;
+
+    // Size of a key prefix symbol in bits and position of the run parity in an entry half
+    private static final int SYMBOL_SIZE = 9;
+    private static final int SYMBOL_MASK = (1 << SYMBOL_SIZE) - 1;
+    private static final int PARITY_SHIFT = Chunk.PREFIX_LENGTH * SYMBOL_SIZE;
+    private static final int PREFIX_MASK = (1 << PARITY_SHIFT) - 1;
+
+    private Config config;
+    private RunFiles runFiles;
+    private OutputStage outputStage;
+    private MemoryManager memory;
+    private SortMetrics metrics;
+    private long memoryLimit;
+
+    private byte[] data;
+    private ByteBuffer heap;
+
+    // Number of bytes taken by all the words and by the words not written yet,
+    // number of words in the heap
+    private int used;
+    private int live;
+    private int size;
+
+    private List<Path> runs = new ArrayList<>();
+    private WordWriter writer;
+    private int currentRun;
+    private long runWords;
+    private byte[] lastWord = new byte[64];
+    private int lastWordLength = -1;
+
+    /**
+     * Creates a run generator
+     *
+     * @param configuration configuration with all required settings
+     * @param runFiles factory of temporary files
+     * @param memoryLimit maximum size of the words array in bytes
+     * @param memory manager the array reserves its memory from
+     * @param metrics metrics written temporary files are counted in
+     */
+    ReplacementSelection(Config configuration, RunFiles runFiles, long memoryLimit, MemoryManager memory,
+                         SortMetrics metrics) {
+        config = configuration;
+        this.runFiles = runFiles;
+        this.memory = memory;
+        this.metrics = metrics;
+        this.memoryLimit = Math.min(memoryLimit, Integer.MAX_VALUE - 8);
+        outputStage = new OutputStage(
+                config.getOutputBufferCount(), config.getOutputBufferSize(), metrics.getWriteStalls());
+
+        int length = (int) Math.min(this.memoryLimit, INITIAL_SIZE);
+        memory.reserve(length);
+        allocate(length);
+    }
+
+    /**
+     * Reads all the words of the reader and writes them to sorted temporary files
+     *
+     * @param reader reader of the source file words
+     * @return paths to all written temporary files
+     * @throws IOException I/O error happened while reading or writing words
+     */
+    List<Path> generate(WordReader reader) throws IOException {
+        while (reader.next()) {
+            int length = reader.length();
+            int headerSize = varIntSize(length << FLAG_BITS);
+            makeRoom(headerSize + length);
+
+            // Words less than the last written one are left for the next run
+            int offset = used;
+            reader.copyTo(data, offset + headerSize);
+            boolean fitsCurrentRun = lastWordLength < 0
+                    || Utf8Order.compare(data, offset + headerSize, length, lastWord, 0, lastWordLength) >= 0;
+            int run = fitsCurrentRun ? currentRun : currentRun + 1;
+
+            putVarInt(length << FLAG_BITS | (run & 1), offset);
+            used += headerSize + length;
+            live += headerSize + length;
+            push(toEntry(run & 1, offset));
+        }
+
+        while (size > 0) {
+            writeSmallest();
+        }
+        closeRun();
+        return runs;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeRun();
+        } finally {
+            outputStage.close();
+            if (data != null) {
+                memory.release(data.length);
+                data = null;
+            }
+        }
+    }
+
+    // Writes the smallest words, compacts or grows the array
+    // until the word of the given size and its heap entry fit in it
+    private void makeRoom(int recordSize) throws IOException {
+        while (used + recordSize + (size + 1) * ENTRY_SIZE > data.length) {
+            int garbage = used - live;
+            if (data.length < memoryLimit && grow(used + recordSize + (size + 1) * ENTRY_SIZE, false)) {
+                continue;
+            }
+            if (garbage > 0 && (garbage >= data.length / COMPACTION_RATIO || size == 0)) {
+                compact();
+            } else if (size > 0) {
+                writeSmallest();
+            } else {
+
+                // A single word bigger than the whole array is added to the empty array
+                grow(recordSize + ENTRY_SIZE, true);
+            }
+        }
+    }
+
+    // Removes the smallest word from the heap and writes it,
+    // starting the next temporary file if the word belongs to the next run
+    private void writeSmallest() throws IOException {
+        long entry = pop();
+        int offset = offsetOf(entry);
+        int run = currentRun + relativeRunOf(entry);
+
+        if (writer == null || run != currentRun) {
+            closeRun();
+            Path tempFile = runFiles.createFile();
+            runs.add(tempFile);
+
+            DuplicateMode mode = config.getDuplicateMode();
+            boolean keyed = config.getCollation() != null;
+            writer = mode.filter(runFiles.newWriter(tempFile, outputStage, mode.isCounted()), keyed);
+            currentRun = run;
+        }
+
+        int header = getVarInt(offset);
+        int start = offset + varIntSize(header);
+        int length = header >>> FLAG_BITS;
+        writer.write(data, start, length);
+        runWords += 1;
+
+        // The header keeps its size with the flag set
+        putVarInt(header | WRITTEN, offset);
+        live -= start - offset + length;
+
+        if (lastWord.length < length) {
+            lastWord = new byte[Math.max(length, lastWord.length * 2)];
+        }
+        System.arraycopy(data, start, lastWord, 0, length);
+        lastWordLength = length;
+    }
+
+    private void closeRun() throws IOException {
+        if (writer != null) {
+            WordWriter closed = writer;
+            writer = null;
+            closed.close();
+
+            Path run = runs.get(runs.size() - 1);
+            metrics.runWritten(run, runWords, Files.size(run));
+            runWords = 0;
+        }
+    }
+
+    // Moves the words not written yet to the start of the array
+    // and rebuilds the heap of their entries
+    private void compact() {
+        int from = 0;
+        int to = 0;
+        size = 0;
+
+        while (from < used) {
+            int header = getVarInt(from);
+            int recordSize = varIntSize(header) + (header >>> FLAG_BITS);
+            if ((header & WRITTEN) == 0) {
+                System.arraycopy(data, from, data, to, recordSize);
+
+                setEntry(size++, toEntry(header & ODD_RUN, to));
+                to += recordSize;
+            }
+            from += recordSize;
+        }
+        used = to;
+
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i, getEntry(i));
+        }
+    }
+
+    // Moves words and heap to a bigger array keeping them at its start and end.
+    // Unless forced, fails and stops growing if the memory manager refuses the growth
+    private boolean grow(int required, boolean force) {
+        byte[] oldData = data;
+        int heapSize = size * ENTRY_SIZE;
+        int length = required > memoryLimit
+                ? required
+                : (int) Math.min(memoryLimit, Math.max(required, 2L * oldData.length));
+
+        // Both arrays are taken while words are copied
+        if (force) {
+            memory.reserve(length);
+        } else if (!memory.tryReserve(length)) {
+            memoryLimit = oldData.length;
+            return false;
+        }
+
+        allocate(length);
+        System.arraycopy(oldData, 0, data, 0, used);
+        System.arraycopy(oldData, oldData.length - heapSize, data, data.length - heapSize, heapSize);
+        memory.release(oldData.length);
+        return true;
+    }
+
+    private void allocate(int length) {
+        data = new byte[length];
+        heap = ByteBuffer.wrap(data);
+    }
+
+    private void push(long entry) {
+        int node = size++;
+        while (node > 0) {
+            int parent = (node - 1) / 2;
+            long parentEntry = getEntry(parent);
+            if (compareEntries(entry, parentEntry) >= 0) {
+                break;
+            }
+            setEntry(node, parentEntry);
+            node = parent;
+        }
+        setEntry(node, entry);
+    }
+
+    private long pop() {
+        long smallest = getEntry(0);
+        size -= 1;
+        if (size > 0) {
+            siftDown(0, getEntry(size));
+        }
+        return smallest;
+    }
+
+    private void siftDown(int node, long entry) {
+        int child;
+        while ((child = 2 * node + 1) < size) {
+            long childEntry = getEntry(child);
+            if (child + 1 < size) {
+                long rightEntry = getEntry(child + 1);
+                if (compareEntries(rightEntry, childEntry) < 0) {
+                    child += 1;
+                    childEntry = rightEntry;
+                }
+            }
+            if (compareEntries(entry, childEntry) <= 0) {
+                break;
+            }
+            setEntry(node, childEntry);
+            node = child;
+        }
+        setEntry(node, entry);
+    }
+
+    private long getEntry(int i) {
+        return heap.getLong(data.length - (i + 1) * ENTRY_SIZE);
+    }
+
+    private void setEntry(int i, long entry) {
+        heap.putLong(data.length - (i + 1) * ENTRY_SIZE, entry);
+    }
+
+    // Compares entries by their runs, then by their cached prefixes
+    // and then by the rest of their words
+    private int compareEntries(long first, long second) {
+        int firstRun = relativeRunOf(first);
+        int secondRun = relativeRunOf(second);
+        if (firstRun != secondRun) {
+            return firstRun < secondRun ? -1 : 1;
+        }
+
+        int firstPrefix = (int) (first >>> 32) & PREFIX_MASK;
+        int secondPrefix = (int) (second >>> 32) & PREFIX_MASK;
+        if (firstPrefix != secondPrefix) {
+            return firstPrefix < secondPrefix ? -1 : 1;
+        }
+
+        // Equal prefixes ending with 0 mean both words end at the same position
+        if ((firstPrefix & SYMBOL_MASK) == 0) {
+            return 0;
+        }
+
+        int firstOffset = offsetOf(first);
+        int secondOffset = offsetOf(second);
+        int firstHeader = getVarInt(firstOffset);
+        int secondHeader = getVarInt(secondOffset);
+        int depth = Chunk.PREFIX_LENGTH;
+        return Utf8Order.compare(
+                data, firstOffset + varIntSize(firstHeader) + depth, (firstHeader >>> FLAG_BITS) - depth,
+                data, secondOffset + varIntSize(secondHeader) + depth, (secondHeader >>> FLAG_BITS) - depth);
+    }
+
+    // Gets 0 if the word of the entry belongs to the current run, 1 if to the next one
+    private int relativeRunOf(long entry) {
+        return ((int) (entry >>> (32 + PARITY_SHIFT)) ^ currentRun) & 1;
+    }
+
+    // Creates a heap entry of the word at the given offset
+    // with the run parity and the key prefix of the word
+    private long toEntry(int parity, int offset) {
+        int header = getVarInt(offset);
+        int start = offset + varIntSize(header);
+        int length = header >>> FLAG_BITS;
+
+        int key = parity;
+        for (int i = 0; i < Chunk.PREFIX_LENGTH; i++) {
+            int symbol = i < length ? Utf8Order.RANK[data[start + i] & 0xFF] + 1 : 0;
+            key = (key << SYMBOL_SIZE) | symbol;
+        }
+        return ((long) key << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int offsetOf(long entry) {
+        return (int) entry;
+    }
+
+    private int putVarInt(int value, int offset) {
+        while ((value & ~0x7F) != 0) {
+            data[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[offset++] = (byte) value;
+        return offset;
+    }
+
+    private int getVarInt(int offset) {
+        byte b = data[offset];
+        if (b >= 0) {
+            return b;
+        }
+
+        int value = 0;
+        int shift = 0;
+        do {
+            b = data[offset++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size += 1;
+        }
+        return size;
+    }
+}
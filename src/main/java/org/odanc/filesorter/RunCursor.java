@@ -0,0 +1,21 @@
+package org.odanc.filesorter;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Cursor over a sorted sequence of words, e.g. a temporary file.
+ * The cursor is positioned before the first word after creation.
+ * Cursors are compared by the words they are currently positioned at.
+ */
+interface RunCursor extends Closeable {
+
+    /**
+     * Moves the cursor to the next word
+     *
+     * @return {@code true} if the cursor is positioned at a word,
+     *         {@code false} if there are no more words
+     * @throws IOException I/O error happened while reading words
+     */
+    boolean next() throws IOException;
+}
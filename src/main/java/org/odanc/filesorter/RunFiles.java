@@ -0,0 +1,260 @@
+package org.odanc.filesorter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Opens writers and readers of temporary files. If temporary files are
+ * compressed, blocks are compressed and decompressed by a pool of threads,
+ * so that the codec work overlaps with sorting and merging of words.
+ * Temporary files are read ahead by big blocks by another pool of threads,
+ * see {@link PrefetchingChannel}.
+ */
+class RunFiles implements Closeable {
+
+    // Number of threads reading blocks of temporary files ahead
+    private static final int PREFETCH_THREADS = 4;
+
+    // Prefix of temporary files created in a work directory
+    static final String FILE_PREFIX = "filesorter-run-";
+
+    private Compression compression;
+    private ExecutorService executor;
+    private ThreadLocal<BlockCodec> codecs;
+
+    private int blockSize;
+    private ExecutorService prefetcher;
+    private StallCounter readStalls;
+
+    // Files are checksummed when they are written if they are checkpointed
+    private Path directory;
+    private boolean checksummed;
+    private Map<Path, Long> checksums = new ConcurrentHashMap<>();
+
+    // Indexes of uncompressed files which don't store numbers of copies
+    private Map<Path, RunIndex> indexes = new ConcurrentHashMap<>();
+
+    /**
+     * Creates temporary files factory which doesn't read files ahead
+     *
+     * @param compression compression of temporary files
+     * @param threads number of threads compressing and decompressing blocks
+     */
+    RunFiles(Compression compression, int threads) {
+        this(compression, threads, 0);
+    }
+
+    /**
+     * Creates temporary files factory
+     *
+     * @param compression compression of temporary files
+     * @param threads number of threads compressing and decompressing blocks
+     * @param readAheadSize memory taken by blocks of a file read ahead in bytes,
+     *                      0 to read files by the reading thread
+     */
+    RunFiles(Compression compression, int threads, int readAheadSize) {
+        this(compression, threads, readAheadSize, new StallCounter());
+    }
+
+    /**
+     * Creates temporary files factory counting read stalls with the given counter
+     *
+     * @param compression compression of temporary files
+     * @param threads number of threads compressing and decompressing blocks
+     * @param readAheadSize memory taken by blocks of a file read ahead in bytes,
+     *                      0 to read files by the reading thread
+     * @param readStalls counter of time readers wait for blocks
+     */
+    RunFiles(Compression compression, int threads, int readAheadSize, StallCounter readStalls) {
+        this(compression, threads, readAheadSize, readStalls, null, false);
+    }
+
+    /**
+     * Creates temporary files factory creating files in the work directory
+     *
+     * @param compression compression of temporary files
+     * @param threads number of threads compressing and decompressing blocks
+     * @param readAheadSize memory taken by blocks of a file read ahead in bytes,
+     *                      0 to read files by the reading thread
+     * @param readStalls counter of time readers wait for blocks
+     * @param directory work directory, {@code null} for the default temporary directory
+     * @param checksummed {@code true} to checksum files as they are written,
+     *                    so they can be checkpointed
+     */
+    RunFiles(Compression compression, int threads, int readAheadSize, StallCounter readStalls, Path directory,
+             boolean checksummed) {
+        this.compression = compression;
+        this.readStalls = readStalls;
+        this.directory = directory;
+        this.checksummed = checksummed;
+        if (compression.isEnabled()) {
+            ThreadFactory factory = new DaemonThreadFactory("codec");
+            executor = Executors.newFixedThreadPool(threads, task -> factory.newThread(() -> runWithCodec(task)));
+            codecs = new ThreadLocal<>();
+        }
+        if (readAheadSize > 0) {
+            blockSize = Math.max(readAheadSize / (PrefetchingChannel.PREFETCH_BLOCKS + 1), 1);
+            prefetcher = Executors.newFixedThreadPool(PREFETCH_THREADS, new DaemonThreadFactory("prefetch"));
+        }
+    }
+
+    /**
+     * Creates a new empty temporary file in the directory
+     *
+     * @param directory work directory, {@code null} for the default temporary directory
+     * @return path to the file
+     * @throws IOException I/O error happened while creating file
+     */
+    static Path createTempFile(Path directory) throws IOException {
+        return directory != null
+                ? Files.createTempFile(directory, FILE_PREFIX, ".tmp")
+                : Files.createTempFile(null, null);
+    }
+
+    /**
+     * Creates a new empty temporary file in the work directory of the factory
+     *
+     * @return path to the file
+     * @throws IOException I/O error happened while creating file
+     */
+    Path createFile() throws IOException {
+        return createTempFile(directory);
+    }
+
+    /**
+     * Gets CRC-32 of the temporary file written by a checksumming factory
+     *
+     * @param file path to temporary file which writer is closed
+     * @return checksum of the file
+     */
+    long getChecksum(Path file) {
+        return checksums.remove(file);
+    }
+
+    /**
+     * Gets the index of the temporary file and forgets it.
+     * Only uncompressed files which don't store numbers of copies
+     * are indexed as they are written
+     *
+     * @param file path to temporary file
+     * @return index of the file or {@code null} if the file isn't indexed
+     *         or its writer isn't closed
+     */
+    RunIndex removeIndex(Path file) {
+        RunIndex index = indexes.remove(file);
+        return index != null && index.isFinished() ? index : null;
+    }
+
+    /**
+     * Opens a writer of the temporary file
+     *
+     * @param file path to temporary file
+     * @param stage output stage writing filled buffers
+     * @param counted {@code true} to store numbers of copies of words
+     * @return writer of the temporary file
+     * @throws IOException I/O error happened while opening file
+     */
+    RunWriter newWriter(Path file, OutputStage stage, boolean counted) throws IOException {
+        WritableByteChannel channel = FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE);
+        if (checksummed) {
+            channel = new ChecksumChannel(channel, checksum -> checksums.put(file, checksum));
+        }
+        if (compression.isEnabled()) {
+            return new RunWriter(new CompressingChannel(channel, executor, codecs), stage, counted);
+        } else if (counted) {
+            return new RunWriter(channel, stage, true);
+        }
+
+        RunIndex index = new RunIndex();
+        indexes.put(file, index);
+        return new RunWriter(channel, stage, false, index);
+    }
+
+    /**
+     * Opens a reader of the region of the temporary file
+     * which isn't read ahead by the factory
+     *
+     * @param file path to temporary file
+     * @param start offset of the first word to read
+     * @param end offset of the region end
+     * @param bufferSize initial size of the read buffer
+     * @return reader of the region of the temporary file
+     * @throws IOException I/O error happened while opening file
+     */
+    RunReader newReader(Path file, long start, long end, int bufferSize) throws IOException {
+        return new RunReader(new FileRegionChannel(FileChannel.open(file), start, end), bufferSize, false);
+    }
+
+    /**
+     * Opens a reader of the temporary file
+     *
+     * @param file path to temporary file
+     * @param bufferSize initial size of the read buffer
+     * @param counted {@code true} if the file stores numbers of copies of words
+     * @return reader of the temporary file
+     * @throws IOException I/O error happened while opening file
+     */
+    RunReader newReader(Path file, int bufferSize, boolean counted) throws IOException {
+        FileChannel channel = FileChannel.open(file);
+        try {
+            ReadableByteChannel source = prefetcher != null
+                    ? new PrefetchingChannel(channel, prefetcher, blockSize, readStalls)
+                    : channel;
+            if (compression.isEnabled()) {
+                source = new DecompressingChannel(source, executor, codecs);
+            }
+            return new RunReader(source, bufferSize, counted);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gets the counter of time readers spent waiting
+     * for blocks which weren't read ahead in time
+     *
+     * @return counter of read stalls
+     */
+    StallCounter getReadStalls() {
+        return readStalls;
+    }
+
+    // Runs the work of a thread of the codec pool with a codec of its own,
+    // which is closed when the thread finishes, so its native memory
+    // is freed without waiting for the codec to be collected
+    private void runWithCodec(Runnable work) {
+        BlockCodec codec = compression.newCodec();
+        codecs.set(codec);
+        try {
+            work.run();
+        } finally {
+            codecs.remove();
+            codec.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        if (prefetcher != null) {
+            prefetcher.shutdownNow();
+        }
+    }
+}
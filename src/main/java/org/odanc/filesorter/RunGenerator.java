@@ -0,0 +1,239 @@
+package org.odanc.filesorter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Pipeline generating sorted temporary files from words buffers.
+ * The thread reading the source file fills buffers one by one while
+ * the filled buffers are sorted by a pool of sorting threads and
+ * written to temporary files by a separate writing thread.
+ * Memory usage is bounded by the number of buffers from the configuration:
+ * the reading thread waits for a free buffer when all of them are in use.
+ * Buffers reserve their memory from the manager as they grow, so a buffer
+ * is written as soon as the memory budget of all buffers is reached.
+ */
+class RunGenerator implements Closeable {
+    private Config config;
+    private RunFiles runFiles;
+    private ExecutorService sorters;
+    private ExecutorService writer;
+    private OutputStage outputStage;
+    private MemoryManager memory;
+    private SortMetrics metrics;
+    private Manifest manifest;
+
+    // Buffers available for filling and the total number of created buffers
+    private BlockingQueue<Chunk> freeChunks;
+    private int chunkCount;
+
+    // Temporary files are added by the writing thread only
+    private List<Path> runs = new ArrayList<>();
+    private AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * Creates a run generator
+     *
+     * @param configuration configuration with all required settings
+     * @param runFiles factory of temporary files
+     * @param memory manager buffers reserve their memory from
+     * @param metrics metrics written temporary files are counted in
+     */
+    RunGenerator(Config configuration, RunFiles runFiles, MemoryManager memory, SortMetrics metrics) {
+        this(configuration, runFiles, memory, metrics, null);
+    }
+
+    /**
+     * Creates a run generator recording written temporary files
+     * together with the source file ranges of their words in the manifest
+     *
+     * @param configuration configuration with all required settings
+     * @param runFiles factory of temporary files in the work directory
+     * @param memory manager buffers reserve their memory from
+     * @param metrics metrics written temporary files are counted in
+     * @param manifest manifest of the sorting, {@code null} not to record files
+     */
+    RunGenerator(Config configuration, RunFiles runFiles, MemoryManager memory, SortMetrics metrics,
+                 Manifest manifest) {
+        config = configuration;
+        this.manifest = manifest;
+        this.runFiles = runFiles;
+        this.memory = memory;
+        this.metrics = metrics;
+        freeChunks = new ArrayBlockingQueue<>(config.getChunkCount());
+        sorters = Executors.newFixedThreadPool(config.getSortThreads(), new DaemonThreadFactory("sorter"));
+        writer = Executors.newSingleThreadExecutor(new DaemonThreadFactory("writer"));
+        outputStage = new OutputStage(
+                config.getOutputBufferCount(), config.getOutputBufferSize(), metrics.getWriteStalls());
+    }
+
+    /**
+     * Gets an empty words buffer. Waits until one of the buffers is written
+     * if all the buffers are in use. Buffers may be taken by several threads
+     *
+     * @return empty words buffer
+     * @throws IOException error happened while sorting or writing buffers
+     */
+    Chunk takeChunk() throws IOException {
+        Chunk chunk = freeChunks.poll();
+        if (chunk == null) {
+            chunk = createChunk();
+        }
+        if (chunk == null) {
+            chunk = waitForChunk();
+        }
+
+        checkForFailure();
+        return chunk;
+    }
+
+    /**
+     * Sends the filled buffer to be sorted and written to a temporary file.
+     * The buffer is returned to the free buffers after that
+     *
+     * @param chunk filled words buffer
+     */
+    void submit(Chunk chunk) {
+        submit(chunk, -1, -1);
+    }
+
+    /**
+     * Sends the filled buffer of the source file range to be sorted
+     * and written to a temporary file. The temporary file is recorded
+     * in the manifest if the range is known
+     *
+     * @param chunk filled words buffer
+     * @param from position of the first word of the buffer in the source file, -1 if unknown
+     * @param to position of the word after the buffer in the source file, -1 if unknown
+     */
+    void submit(Chunk chunk, long from, long to) {
+        CompletableFuture.runAsync(() -> chunk.sort(config.getSortAlgorithm(), config.isParallelSort()), sorters)
+                .thenRunAsync(() -> writeRun(chunk, from, to), writer)
+                .whenComplete((ignore, e) -> {
+                    if (e != null) {
+                        failure.compareAndSet(null, e.getCause() != null ? e.getCause() : e);
+                    }
+                    chunk.clear();
+                    freeChunks.add(chunk);
+                });
+    }
+
+    /**
+     * Returns the buffer without sorting and writing it
+     *
+     * @param chunk words buffer
+     */
+    void release(Chunk chunk) {
+        chunk.clear();
+        freeChunks.add(chunk);
+    }
+
+    /**
+     * Waits until all submitted buffers are written and frees the buffers
+     *
+     * @return paths to all written temporary files
+     * @throws IOException error happened while sorting or writing buffers
+     */
+    synchronized List<Path> finish() throws IOException {
+        for (; chunkCount > 0; chunkCount--) {
+            waitForChunk().free();
+        }
+        checkForFailure();
+        return runs;
+    }
+
+    @Override
+    public void close() {
+        sorters.shutdownNow();
+        writer.shutdownNow();
+        outputStage.close();
+    }
+
+    // Writes words from the sorted buffer to a temporary file
+    // and stores the temporary file name. Only the words which may be
+    // among the first or the last words of the output file are written
+    // if the output file is limited to them
+    private void writeRun(Chunk chunk, long from, long to) {
+        try {
+            Path tempFile = runFiles.createFile();
+            runs.add(tempFile);
+
+            DuplicateMode mode = config.getDuplicateMode();
+            boolean keyed = config.getCollation() != null;
+            long limit = config.getWordLimit();
+            boolean distinct = mode != DuplicateMode.KEEP;
+            int start = limit > 0 && config.isLastWords() ? chunk.tailStart(limit, distinct, keyed) : 0;
+            int end = limit > 0 && !config.isLastWords() ? chunk.headEnd(limit, distinct, keyed) : chunk.size();
+            try (WordWriter writer = mode.filter(
+                    runFiles.newWriter(tempFile, outputStage, mode.isCounted()), keyed)) {
+                chunk.writeTo(writer, start, end);
+            }
+            if (manifest != null && from >= 0) {
+                manifest.runWritten(tempFile, from, to, runFiles.getChecksum(tempFile));
+            }
+            metrics.runWritten(tempFile, end - start, Files.size(tempFile));
+        } catch (IOException e) {
+            throw new RunGenerationException(e);
+        }
+    }
+
+    // Creates a new buffer unless the number of buffers reached the limit
+    private synchronized Chunk createChunk() {
+        if (chunkCount == config.getChunkCount()) {
+            return null;
+        }
+        chunkCount += 1;
+        return new Chunk(config.getChunkSize(), memory);
+    }
+
+    private Chunk waitForChunk() throws IOException {
+        try {
+            return freeChunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for words buffer");
+        }
+    }
+
+    private void checkForFailure() throws IOException {
+        Throwable e = failure.get();
+        if (e instanceof RunGenerationException) {
+            throw ((RunGenerationException) e).getCause();
+        } else if (e instanceof Error) {
+            throw (Error) e;
+        } else if (e != null) {
+            throw new IOException(e);
+        }
+    }
+
+
+
+
+
+    /**
+     * Unchecked wrapper of I/O errors happened in the writing thread
+     */
+    private static class RunGenerationException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        RunGenerationException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
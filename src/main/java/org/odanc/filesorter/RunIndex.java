@@ -0,0 +1,122 @@
+package org.odanc.filesorter;
+
+import java.util.Arrays;
+
+/**
+ * Sparse index of a temporary file recorded by {@link RunWriter} while
+ * the file is written. A sample word is taken about every {@link #INTERVAL}
+ * bytes together with its offset in the file and the number of words
+ * and word bytes before it, so a sorted file can be split into ranges
+ * of words without reading it. Samples are in the order of the file.
+ */
+class RunIndex {
+
+    // Minimum distance between sampled words in bytes of the file
+    static final int INTERVAL = 65_536;
+
+    private long[] offsets = new long[16];
+    private long[] wordsBefore = new long[16];
+    private long[] bytesBefore = new long[16];
+    private byte[][] samples = new byte[16][];
+    private int size;
+
+    private long nextOffset = INTERVAL;
+    private long wordCount;
+    private long byteCount;
+    private long fileSize = -1;
+
+    /**
+     * Adds the next word written to the file
+     *
+     * @param offset offset of the encoded word in the file
+     * @param word array containing the word
+     * @param wordOffset offset of the word in the array
+     * @param length length of the word in bytes
+     */
+    void add(long offset, byte[] word, int wordOffset, int length) {
+        if (offset >= nextOffset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                wordsBefore = Arrays.copyOf(wordsBefore, size * 2);
+                bytesBefore = Arrays.copyOf(bytesBefore, size * 2);
+                samples = Arrays.copyOf(samples, size * 2);
+            }
+            offsets[size] = offset;
+            wordsBefore[size] = wordCount;
+            bytesBefore[size] = byteCount;
+            samples[size] = Arrays.copyOfRange(word, wordOffset, wordOffset + length);
+            size += 1;
+            nextOffset = offset + INTERVAL;
+        }
+        wordCount += 1;
+        byteCount += length;
+    }
+
+    /**
+     * Completes the index when the file is written
+     *
+     * @param size size of the file in bytes
+     */
+    void finish(long size) {
+        fileSize = size;
+    }
+
+    boolean isFinished() {
+        return fileSize >= 0;
+    }
+
+    /**
+     * Finds the last sample less than the word
+     *
+     * @param word array containing the word
+     * @param offset offset of the word in the array
+     * @param length length of the word in bytes
+     * @return number of the sample, -1 if all the samples are not less
+     */
+    int findBefore(byte[] word, int offset, int length) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            byte[] sample = samples[middle];
+            if (Utf8Order.compare(sample, 0, sample.length, word, offset, length) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getOffset(int sample) {
+        return offsets[sample];
+    }
+
+    long getWordsBefore(int sample) {
+        return wordsBefore[sample];
+    }
+
+    long getBytesBefore(int sample) {
+        return bytesBefore[sample];
+    }
+
+    byte[] getSample(int sample) {
+        return samples[sample];
+    }
+
+    long getWordCount() {
+        return wordCount;
+    }
+
+    long getByteCount() {
+        return byteCount;
+    }
+
+    long getFileSize() {
+        return fileSize;
+    }
+}
@@ -0,0 +1,167 @@
+package org.odanc.filesorter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Run cursor reading words from a temporary file written by {@link RunWriter}.
+ * The current word is available as a range of the read buffer, so words
+ * are compared as raw bytes without creating strings.
+ */
+class RunReader implements WordCursor {
+
+    private ReadableByteChannel channel;
+    private boolean counted;
+    private byte[] buffer;
+    private ByteBuffer window;
+    private int position;
+    private int limit;
+    private boolean endOfInput;
+
+    private int wordOffset;
+    private int wordLength;
+    private long wordCount;
+
+    /**
+     * Opens a reader of the given temporary file
+     *
+     * @param file path to temporary file
+     * @param bufferSize initial size of the read buffer,
+     *                   it grows if a single word doesn't fit in it
+     * @throws IOException I/O error happened while opening file
+     */
+    RunReader(Path file, int bufferSize) throws IOException {
+        this(file, bufferSize, false);
+    }
+
+    /**
+     * Opens a reader of the given temporary file
+     *
+     * @param file path to temporary file
+     * @param bufferSize initial size of the read buffer,
+     *                   it grows if a single word doesn't fit in it
+     * @param counted {@code true} if the file stores numbers of copies of words
+     * @throws IOException I/O error happened while opening file
+     */
+    RunReader(Path file, int bufferSize, boolean counted) throws IOException {
+        this(FileChannel.open(file), bufferSize, counted);
+    }
+
+    /**
+     * Creates a reader of the given channel
+     *
+     * @param channel channel of temporary file, closed with the reader
+     * @param bufferSize initial size of the read buffer,
+     *                   it grows if a single word doesn't fit in it
+     * @param counted {@code true} if the file stores numbers of copies of words
+     */
+    RunReader(ReadableByteChannel channel, int bufferSize, boolean counted) {
+        this.channel = channel;
+        buffer = new byte[bufferSize];
+        window = ByteBuffer.wrap(buffer);
+        this.counted = counted;
+    }
+
+    @Override
+    public boolean next() throws IOException {
+        if (!isAvailable(1)) {
+            return false;
+        }
+
+        int length = (int) readVarLong();
+        wordCount = counted ? readVarLong() : 1;
+        if (!isAvailable(length)) {
+            throw new EOFException("temporary file is truncated");
+        }
+
+        wordOffset = position;
+        wordLength = length;
+        position += length;
+        return true;
+    }
+
+    @Override
+    public byte[] array() {
+        return buffer;
+    }
+
+    @Override
+    public int offset() {
+        return wordOffset;
+    }
+
+    @Override
+    public int length() {
+        return wordLength;
+    }
+
+    @Override
+    public long count() {
+        return wordCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // Reads a variable-length integer at the current position
+    private long readVarLong() throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (!isAvailable(1)) {
+                throw new EOFException("temporary file is truncated");
+            }
+            b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    // Ensures the given number of bytes starting from the current position
+    // is loaded to the buffer
+    private boolean isAvailable(int count) throws IOException {
+        while (limit - position < count) {
+            if (!fill(count)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Reads the next portion of bytes from the channel keeping the unread bytes.
+    // The buffer grows if the requested number of bytes doesn't fit in it
+    private boolean fill(int count) throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        if (count > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(count, buffer.length * 2));
+            window = ByteBuffer.wrap(buffer);
+        }
+
+        window.limit(buffer.length).position(limit);
+        int read = channel.read(window);
+        if (read < 0) {
+            endOfInput = true;
+            return false;
+        }
+
+        limit += read;
+        return true;
+    }
+}
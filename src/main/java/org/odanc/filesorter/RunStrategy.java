@@ -0,0 +1,20 @@
+package org.odanc.filesorter;
+
+/**
+ * Strategies splitting the source file into sorted temporary files
+ */
+enum RunStrategy {
+
+    /**
+     * Words buffers are filled, sorted and written one by one,
+     * every temporary file is one buffer long, see {@link RunGenerator}
+     */
+    CHUNKS,
+
+    /**
+     * Words are written from a heap which is refilled while it is written,
+     * temporary files are about twice as long as the memory on random input
+     * and much longer on nearly sorted input, see {@link ReplacementSelection}
+     */
+    REPLACEMENT_SELECTION
+}
@@ -0,0 +1,153 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writer of temporary files in the internal binary format.
+ * Every word is written as its length in bytes encoded as a variable-length
+ * integer (7 bits per byte, least significant first) followed by the UTF-8
+ * encoded word itself. Such files are read back by {@link RunReader} without
+ * any tokenizing or charset decoding. Counted temporary files also store
+ * the number of copies of every word as a variable-length integer between
+ * its length and the word. Filled buffers are written by an {@link OutputStage}.
+ * Words may be sampled to an index of the file while they are written.
+ */
+class RunWriter implements WordWriter {
+
+    // Maximum length of an encoded int and long
+    private static final int MAX_VARINT_SIZE = 5;
+    private static final int MAX_VARLONG_SIZE = 10;
+
+    private WritableByteChannel channel;
+    private OutputStage stage;
+    private ByteBuffer buffer;
+    private boolean counted;
+    private RunIndex index;
+
+    // Number of bytes sent to be written before the current buffer
+    private long flushed;
+
+    /**
+     * Creates a writer to the given file
+     *
+     * @param file path to temporary file
+     * @param stage output stage writing filled buffers
+     * @throws IOException I/O error happened while opening file
+     */
+    RunWriter(Path file, OutputStage stage) throws IOException {
+        this(file, stage, false);
+    }
+
+    /**
+     * Creates a writer to the given file
+     *
+     * @param file path to temporary file
+     * @param stage output stage writing filled buffers
+     * @param counted {@code true} to store numbers of copies of words
+     * @throws IOException I/O error happened while opening file
+     */
+    RunWriter(Path file, OutputStage stage, boolean counted) throws IOException {
+        this(FileChannel.open(file, CREATE, TRUNCATE_EXISTING, WRITE), stage, counted);
+    }
+
+    /**
+     * Creates a writer to the given channel
+     *
+     * @param channel channel of temporary file, closed with the writer
+     * @param stage output stage writing filled buffers
+     * @param counted {@code true} to store numbers of copies of words
+     * @throws IOException error happened while writing previous buffers
+     */
+    RunWriter(WritableByteChannel channel, OutputStage stage, boolean counted) throws IOException {
+        this(channel, stage, counted, null);
+    }
+
+    /**
+     * Creates a writer to the given channel sampling words to the index
+     *
+     * @param channel channel of temporary file, closed with the writer
+     * @param stage output stage writing filled buffers
+     * @param counted {@code true} to store numbers of copies of words
+     * @param index empty index of the file, finished when the writer is closed,
+     *              {@code null} not to index the file
+     * @throws IOException error happened while writing previous buffers
+     */
+    RunWriter(WritableByteChannel channel, OutputStage stage, boolean counted, RunIndex index)
+            throws IOException {
+        this.channel = channel;
+        this.stage = stage;
+        this.counted = counted;
+        this.index = index;
+        try {
+            buffer = stage.take();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        write(bytes, offset, length, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length, long count) throws IOException {
+        if (buffer.remaining() < MAX_VARINT_SIZE + MAX_VARLONG_SIZE) {
+            flush();
+        }
+        if (index != null) {
+            index.add(flushed + buffer.position(), bytes, offset, length);
+        }
+
+        putVarLong(length);
+        if (counted) {
+            putVarLong(count);
+        }
+
+        while (length > 0) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int portion = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, portion);
+            offset += portion;
+            length -= portion;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        long size = flushed + buffer.position();
+        try {
+            stage.finish(channel, buffer, false);
+        } finally {
+            channel.close();
+        }
+        if (index != null) {
+            index.finish(size);
+        }
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void flush() throws IOException {
+        flushed += buffer.position();
+        stage.write(channel, buffer);
+        buffer = stage.take();
+    }
+}
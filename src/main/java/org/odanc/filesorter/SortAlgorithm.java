@@ -0,0 +1,35 @@
+package org.odanc.filesorter;
+
+/**
+ * Algorithms sorting words buffers in memory
+ */
+enum SortAlgorithm {
+
+    /**
+     * Comparison sort of the words, see {@link IntroSort}
+     */
+    INTROSORT {
+        @Override
+        void sort(Chunk chunk, boolean parallel) {
+            IntroSort.sort(chunk, parallel);
+        }
+    },
+
+    /**
+     * Radix sort of the words byte by byte, see {@link MultikeyQuicksort}
+     */
+    MULTIKEY_QUICKSORT {
+        @Override
+        void sort(Chunk chunk, boolean parallel) {
+            MultikeyQuicksort.sort(chunk, parallel);
+        }
+    };
+
+    /**
+     * Sorts the index of the words buffer
+     *
+     * @param chunk words buffer
+     * @param parallel {@code true} to sort by multiple threads
+     */
+    abstract void sort(Chunk chunk, boolean parallel);
+}
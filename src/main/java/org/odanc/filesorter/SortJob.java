@@ -0,0 +1,90 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+
+/**
+ * Sorting of source files into an output file created by {@link WordSorter}.
+ * Its metrics are updated while it runs, so they can be read by another
+ * thread to report progress, and describe the whole sorting once it is done.
+ * A job may be run again, its counters are reset then.
+ */
+public final class SortJob {
+    private FileSorter fileSorter;
+
+    SortJob(FileSorter fileSorter) {
+        this.fileSorter = fileSorter;
+    }
+
+    /**
+     * Sorts the words of the source files into the output file
+     *
+     * @throws IOException I/O error happened while processing files
+     */
+    public void run() throws IOException {
+        fileSorter.sort();
+    }
+
+    /**
+     * Gets metrics of the sorting, which are updated while it runs
+     *
+     * @return sorting metrics
+     */
+    public SortMetrics getMetrics() {
+        return fileSorter.getMetrics();
+    }
+
+    /**
+     * Gets the number of already sorted stretches of the source file
+     * which were merged without being split
+     *
+     * @return number of sorted stretches
+     */
+    public int getNaturalRunCount() {
+        return fileSorter.getNaturalRunCount();
+    }
+
+    /**
+     * Gets the number of sorted temporary files the source files were split into
+     *
+     * @return number of temporary files
+     */
+    public int getRunCount() {
+        return fileSorter.getRunCount();
+    }
+
+    /**
+     * Gets the maximum memory words buffers took at once while the source files were split
+     *
+     * @return peak memory of words buffers in bytes
+     */
+    public long getPeakBufferMemory() {
+        return fileSorter.getPeakBufferMemory();
+    }
+
+    /**
+     * Gets the number of merge passes the sorting took
+     *
+     * @return number of merge passes
+     */
+    public int getMergePassCount() {
+        return fileSorter.getMergePassCount();
+    }
+
+    /**
+     * Gets the number of ranges of words merged into the output file by separate threads
+     *
+     * @return number of merged ranges, 1 if words were merged by a single thread
+     */
+    public int getMergeRangeCount() {
+        return fileSorter.getMergeRangeCount();
+    }
+
+    /**
+     * Gets the counter of time merging waited for temporary files to be read
+     *
+     * @return counter of merge stalls
+     */
+    public StallCounter getMergeStalls() {
+        return fileSorter.getMergeStalls();
+    }
+}
@@ -0,0 +1,53 @@
+package org.odanc.filesorter;
+
+import java.util.Arrays;
+
+/**
+ * Growing byte array a sort key of a word is built in.
+ * The same key is reused for all the words of a reader.
+ */
+final class SortKey {
+    private byte[] bytes = new byte[64];
+    private int length;
+
+    /**
+     * Appends the lower 8 bits of the value to the key
+     *
+     * @param b byte to append
+     */
+    void add(int b) {
+        ensureCapacity(length + 1);
+        bytes[length++] = (byte) b;
+    }
+
+    /**
+     * Appends the bytes to the key
+     *
+     * @param source array containing the bytes
+     * @param offset offset of the first byte
+     * @param count number of bytes to append
+     */
+    void add(byte[] source, int offset, int count) {
+        ensureCapacity(length + count);
+        System.arraycopy(source, offset, bytes, length, count);
+        length += count;
+    }
+
+    byte[] array() {
+        return bytes;
+    }
+
+    int length() {
+        return length;
+    }
+
+    void clear() {
+        length = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.odanc.filesorter;
+
+import java.nio.file.Path;
+
+/**
+ * Listener of sorting events. Methods are called by the threads doing
+ * the work, so they should return quickly. Counters of the whole sorting
+ * are kept by {@link SortMetrics} which is passed to the phase events.
+ */
+interface SortListener {
+
+    /**
+     * Listener ignoring all the events
+     */
+    SortListener NONE = new SortListener() { };
+
+    /**
+     * Called when the phase starts
+     *
+     * @param phase started phase
+     * @param metrics metrics of the sorting
+     */
+    default void phaseStarted(SortPhase phase, SortMetrics metrics) { }
+
+    /**
+     * Called when the phase is finished
+     *
+     * @param phase finished phase
+     * @param metrics metrics of the sorting including times of the phase
+     */
+    default void phaseFinished(SortPhase phase, SortMetrics metrics) { }
+
+    /**
+     * Called when a sorted temporary file is written while the source file is split
+     *
+     * @param file path to the temporary file
+     * @param words number of words written to the file
+     * @param bytes size of the file in bytes
+     */
+    default void runWritten(Path file, long words, long bytes) { }
+}
@@ -0,0 +1,434 @@
+package org.odanc.filesorter;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of sorting a file: counters updated by the threads doing the work
+ * and times of every phase, counters of every source file are kept apart too.
+ * Counters may be read by another thread while the file is being sorted,
+ * e.g. to report progress, and events are passed on to the listener.
+ * <p>
+ * Phase times are the wall time, the CPU time of the whole process and
+ * the time the garbage collector took while the phase ran. I/O wait is
+ * the time merging waited for temporary files to be read ahead and the time
+ * writers waited for output buffers to be written.
+ */
+public final class SortMetrics {
+    private SortListener listener;
+
+    private long sourceSize;
+    private List<InputMetrics> inputs = Collections.emptyList();
+    private long startTime;
+    private volatile long finishTime;
+    private LongAdder bytesRead = new LongAdder();
+    private LongAdder wordsRead = new LongAdder();
+    private LongAdder wordsMerged = new LongAdder();
+    private LongAdder runCount = new LongAdder();
+    private LongAdder runWords = new LongAdder();
+    private LongAdder runBytes = new LongAdder();
+    private AtomicLong maxRunBytes = new AtomicLong();
+    private volatile long peakBufferMemory;
+    private volatile int mergePassCount;
+    private volatile long bytesWritten;
+    private StallCounter readStalls = new StallCounter();
+    private StallCounter writeStalls = new StallCounter();
+
+    // The running phase, bits of the started and finished phases,
+    // start times of the phases and totals of the finished ones.
+    // CPU times are -1 if the JVM doesn't measure them
+    private volatile SortPhase phase;
+    private volatile int startedPhases;
+    private volatile int finishedPhases;
+    private long[] phaseStarts = new long[SortPhase.values().length];
+    private long[] cpuStarts = new long[SortPhase.values().length];
+    private long[] gcStarts = new long[SortPhase.values().length];
+    private long[] wallTimes = new long[SortPhase.values().length];
+    private long[] cpuTimes = new long[SortPhase.values().length];
+    private long[] gcTimes = new long[SortPhase.values().length];
+
+    SortMetrics() {
+        this(SortListener.NONE);
+    }
+
+    /**
+     * Creates metrics passing events to the listener
+     *
+     * @param listener listener of sorting events
+     */
+    SortMetrics(SortListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Starts counting the sorting of new source files
+     *
+     * @param sourceFiles paths to the source files
+     * @throws IOException I/O error happened while getting sizes of the files
+     */
+    void start(List<Path> sourceFiles) throws IOException {
+        List<InputMetrics> metrics = new ArrayList<>(sourceFiles.size());
+        long size = 0;
+        for (Path file : sourceFiles) {
+            metrics.add(new InputMetrics(file, Files.size(file)));
+            size += Files.size(file);
+        }
+        inputs = Collections.unmodifiableList(metrics);
+        start(size);
+    }
+
+    /**
+     * Starts counting the sorting of a new file
+     *
+     * @param size size of the source file in bytes
+     */
+    void start(long size) {
+        sourceSize = size;
+        startTime = System.nanoTime();
+        for (LongAdder counter : new LongAdder[] {bytesRead, wordsRead, wordsMerged, runCount, runWords, runBytes}) {
+            counter.reset();
+        }
+        maxRunBytes.set(0);
+        readStalls = new StallCounter();
+        writeStalls = new StallCounter();
+        finishTime = 0;
+        phase = null;
+        startedPhases = 0;
+        finishedPhases = 0;
+    }
+
+    /**
+     * Stops the clock of the sorting, so the elapsed time doesn't grow anymore
+     */
+    void finish() {
+        finishTime = System.nanoTime();
+    }
+
+    void startPhase(SortPhase started) {
+        int i = started.ordinal();
+        phaseStarts[i] = System.nanoTime();
+        cpuStarts[i] = processCpuTime();
+        gcStarts[i] = gcTime();
+        startedPhases |= 1 << i;
+        phase = started;
+        listener.phaseStarted(started, this);
+    }
+
+    void finishPhase(SortPhase finished) {
+        int i = finished.ordinal();
+        long cpuTime = processCpuTime();
+        wallTimes[i] = System.nanoTime() - phaseStarts[i];
+        cpuTimes[i] = cpuTime >= 0 && cpuStarts[i] >= 0 ? cpuTime - cpuStarts[i] : -1;
+        gcTimes[i] = gcTime() - gcStarts[i];
+        finishedPhases |= 1 << i;
+        listener.phaseFinished(finished, this);
+    }
+
+    /**
+     * Counts words read from the source file
+     *
+     * @param words number of words
+     * @param bytes number of bytes of the words including their delimiters
+     */
+    void addRead(long words, long bytes) {
+        wordsRead.add(words);
+        bytesRead.add(bytes);
+    }
+
+    /**
+     * Forgets the words read from the source files,
+     * so the files are counted again if they are read once more
+     */
+    void resetRead() {
+        List<InputMetrics> metrics = new ArrayList<>(inputs.size());
+        for (InputMetrics input : inputs) {
+            metrics.add(new InputMetrics(input.getFile(), input.getSize()));
+        }
+        inputs = Collections.unmodifiableList(metrics);
+        bytesRead.reset();
+        wordsRead.reset();
+    }
+
+    /**
+     * Counts words merged into the output file
+     *
+     * @param words number of words including the copies collapsed before
+     */
+    void addMerged(long words) {
+        wordsMerged.add(words);
+    }
+
+    /**
+     * Counts a sorted temporary file written while the source file is split
+     *
+     * @param file path to the temporary file
+     * @param words number of words written to the file
+     * @param bytes size of the file in bytes
+     */
+    void runWritten(Path file, long words, long bytes) {
+        runCount.increment();
+        runWords.add(words);
+        runBytes.add(bytes);
+        maxRunBytes.accumulateAndGet(bytes, Math::max);
+        listener.runWritten(file, words, bytes);
+    }
+
+    void setPeakBufferMemory(long bytes) {
+        peakBufferMemory = bytes;
+    }
+
+    void setMergePassCount(int count) {
+        mergePassCount = count;
+    }
+
+    void setBytesWritten(long bytes) {
+        bytesWritten = bytes;
+    }
+
+    public long getSourceSize() {
+        return sourceSize;
+    }
+
+    /**
+     * Gets metrics of every source file in the order of the files
+     *
+     * @return metrics of the source files
+     */
+    public List<InputMetrics> getInputs() {
+        return inputs;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getWordsRead() {
+        return wordsRead.sum();
+    }
+
+    public long getRunCount() {
+        return runCount.sum();
+    }
+
+    /**
+     * Gets the number of words written to the sorted temporary files,
+     * copies collapsed in a file count as a single word
+     *
+     * @return number of words of the temporary files
+     */
+    public long getRunWords() {
+        return runWords.sum();
+    }
+
+    public long getRunBytes() {
+        return runBytes.sum();
+    }
+
+    public long getMaxRunBytes() {
+        return maxRunBytes.get();
+    }
+
+    public long getPeakBufferMemory() {
+        return peakBufferMemory;
+    }
+
+    public int getMergePassCount() {
+        return mergePassCount;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Gets the counter of time merging waited for temporary files to be read
+     *
+     * @return counter of read stalls
+     */
+    public StallCounter getReadStalls() {
+        return readStalls;
+    }
+
+    /**
+     * Gets the counter of time writers waited for output buffers to be written
+     *
+     * @return counter of write stalls
+     */
+    public StallCounter getWriteStalls() {
+        return writeStalls;
+    }
+
+    /**
+     * Gets the running phase or the last finished one
+     *
+     * @return phase or {@code null} if sorting isn't started
+     */
+    public SortPhase getPhase() {
+        return phase;
+    }
+
+    public boolean isFinished(SortPhase phase) {
+        return (finishedPhases & 1 << phase.ordinal()) != 0;
+    }
+
+    public long getElapsedTime(TimeUnit unit) {
+        long endTime = finishTime != 0 ? finishTime : System.nanoTime();
+        return unit.convert(endTime - startTime, TimeUnit.NANOSECONDS);
+    }
+
+    public long getWallTime(SortPhase phase, TimeUnit unit) {
+        return unit.convert(wallTimes[phase.ordinal()], TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Gets the CPU time all the threads of the process took while the phase ran
+     *
+     * @param phase finished phase
+     * @param unit unit of the time
+     * @return CPU time in the given unit or -1 if the JVM doesn't measure it
+     */
+    public long getCpuTime(SortPhase phase, TimeUnit unit) {
+        long time = cpuTimes[phase.ordinal()];
+        return time >= 0 ? unit.convert(time, TimeUnit.NANOSECONDS) : -1;
+    }
+
+    public long getGcTime(SortPhase phase, TimeUnit unit) {
+        return unit.convert(gcTimes[phase.ordinal()], TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Estimates the done part of the sorting. Splitting and merging
+     * are considered equal halves: the split part is the part of the source
+     * file read, the merge part is the part of the read words merged into
+     * the output file. Intermediate merges and the detection of sorted
+     * stretches aren't counted
+     *
+     * @return number from 0 to 1
+     */
+    public double getProgress() {
+        double split = isFinished(SortPhase.SPLIT) || sourceSize == 0
+                ? 1
+                : Math.min((double) getBytesRead() / sourceSize, 1);
+        long words = getWordsRead();
+        double merge = isFinished(SortPhase.MERGE)
+                ? 1
+                : words > 0 ? Math.min((double) wordsMerged.sum() / words, 1) : 0;
+        return (split + merge) / 2;
+    }
+
+    /**
+     * Estimates the time left to the end of the sorting
+     * by the progress made since the split started
+     *
+     * @param unit unit of the time
+     * @return remaining time in the given unit or -1 if it can't be estimated yet
+     */
+    public long getRemainingTime(TimeUnit unit) {
+        double progress = getProgress();
+        int split = SortPhase.SPLIT.ordinal();
+        if ((startedPhases & 1 << split) == 0 || progress == 0) {
+            return -1;
+        }
+        long elapsed = System.nanoTime() - phaseStarts[split];
+        return unit.convert((long) (elapsed * (1 - progress) / progress), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Formats the metrics as a single line JSON object. Times are in milliseconds,
+     * times of the phases which didn't run are omitted
+     *
+     * @return JSON object
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"sourceBytes\":").append(sourceSize)
+            .append(",\"bytesRead\":").append(getBytesRead())
+            .append(",\"wordsRead\":").append(getWordsRead())
+            .append(",\"inputs\":[");
+
+        String separator = "";
+        for (InputMetrics input : inputs) {
+            json.append(separator).append("{\"file\":").append(quote(input.getFile().toString()))
+                .append(",\"sourceBytes\":").append(input.getSize())
+                .append(",\"bytesRead\":").append(input.getBytesRead())
+                .append(",\"wordsRead\":").append(input.getWordsRead())
+                .append(",\"readMs\":").append(input.getReadTime(TimeUnit.MILLISECONDS)).append('}');
+            separator = ",";
+        }
+
+        json.append(']')
+            .append(",\"runs\":{\"count\":").append(getRunCount())
+            .append(",\"bytes\":").append(getRunBytes())
+            .append(",\"maxBytes\":").append(getMaxRunBytes()).append('}')
+            .append(",\"peakBufferBytes\":").append(peakBufferMemory)
+            .append(",\"mergePasses\":").append(mergePassCount)
+            .append(",\"bytesWritten\":").append(bytesWritten)
+            .append(",\"elapsedMs\":").append(getElapsedTime(TimeUnit.MILLISECONDS))
+            .append(",\"phases\":{");
+
+        separator = "";
+        for (SortPhase phase : SortPhase.values()) {
+            if (!isFinished(phase)) {
+                continue;
+            }
+            long cpuTime = getCpuTime(phase, TimeUnit.MILLISECONDS);
+            json.append(separator).append('"').append(phase.name().toLowerCase(Locale.ROOT)).append("\":{")
+                .append("\"wallMs\":").append(getWallTime(phase, TimeUnit.MILLISECONDS))
+                .append(",\"cpuMs\":").append(cpuTime >= 0 ? Long.toString(cpuTime) : "null")
+                .append(",\"gcMs\":").append(getGcTime(phase, TimeUnit.MILLISECONDS)).append('}');
+            separator = ",";
+        }
+
+        json.append("},\"ioWait\":{")
+            .append("\"readMs\":").append(readStalls.getTime(TimeUnit.MILLISECONDS))
+            .append(",\"reads\":").append(readStalls.getCount())
+            .append(",\"writeMs\":").append(writeStalls.getTime(TimeUnit.MILLISECONDS))
+            .append(",\"writes\":").append(writeStalls.getCount())
+            .append("}}");
+        return json.toString();
+    }
+
+    // Quotes the string as a JSON string
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    // CPU time of all the threads of the process in nanoseconds, -1 if it isn't measured
+    private static long processCpuTime() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        return os instanceof com.sun.management.OperatingSystemMXBean
+                ? ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime()
+                : -1;
+    }
+
+    // Total time of all garbage collections in milliseconds
+    private static long gcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(collector.getCollectionTime(), 0);
+        }
+        return time;
+    }
+}
@@ -0,0 +1,24 @@
+package org.odanc.filesorter;
+
+/**
+ * Phases of sorting a file, in the order they run
+ */
+public enum SortPhase {
+
+    /**
+     * The source file is read once to find already sorted stretches of words.
+     * Runs only if the detection of sorted stretches is enabled
+     */
+    DETECTION,
+
+    /**
+     * The source file is split into sorted temporary files
+     */
+    SPLIT,
+
+    /**
+     * Temporary files are merged into intermediate files
+     * and then into the output file
+     */
+    MERGE
+}
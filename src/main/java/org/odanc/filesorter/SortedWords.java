@@ -0,0 +1,179 @@
+package org.odanc.filesorter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Sorted words returned by {@link WordSorter}. The words are kept
+ * in sorted temporary files which are merged as the words are iterated,
+ * so the words are never held in memory all at once. Words are collapsed,
+ * counted and limited the same way as they are in the sorted output file,
+ * counted words are prefixed with their numbers of copies the same way
+ * as {@code uniq -c} does.
+ * <p>
+ * The temporary files are deleted when the words are closed, which
+ * happens by itself once all the words are iterated. I/O errors happened
+ * while the files are read are thrown as {@link UncheckedIOException}.
+ * The words are iterated by a single thread.
+ */
+public final class SortedWords implements Iterator<String>, Closeable {
+    private List<WordCursor> cursors;
+    private LoserTree<WordCursor> tree;
+    private WordWriter writer;
+    private LimitingWriter limit;
+    private Closeable cleanup;
+
+    // Words passed through the writer and not returned yet
+    private Queue<String> words = new ArrayDeque<>();
+    private boolean counted;
+    private boolean finished;
+    private boolean closed;
+
+    /**
+     * Creates words merged from the temporary files
+     *
+     * @param cursors readers of the temporary files
+     * @param config configuration the words were sorted with
+     * @param skipCount number of words dropped before the words returned
+     *                  if the words are limited to the last ones
+     * @param cleanup deleting the temporary files when the words are closed,
+     *                left to the caller if the words fail to be created
+     * @throws IOException I/O error happened while reading the files,
+     *                     the readers are closed then
+     */
+    SortedWords(List<WordCursor> cursors, Config config, long skipCount, Closeable cleanup) throws IOException {
+        this.cursors = cursors;
+        this.cleanup = cleanup;
+        counted = config.getDuplicateMode().isCounted();
+        boolean keyed = config.getCollation() != null;
+        try {
+            tree = new LoserTree<>(cursors, WordCursor.WORD_ORDER);
+        } catch (IOException | RuntimeException | Error e) {
+            for (WordCursor cursor : cursors) {
+                cursor.close();
+            }
+            throw e;
+        }
+
+        // Sort keys are removed from words after copies are collapsed by keys
+        WordWriter output = new Collector();
+        if (keyed) {
+            output = new KeyStrippingWriter(output);
+        }
+        if (config.getWordLimit() > 0) {
+            output = limit = new LimitingWriter(output, skipCount, config.getWordLimit());
+        }
+        writer = config.getDuplicateMode().filter(output, keyed);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (words.isEmpty() && !finished) {
+                if (!tree.isEmpty() && (limit == null || !limit.isDone())) {
+                    WordCursor cursor = tree.peek();
+                    writer.write(cursor.array(), cursor.offset(), cursor.length(), cursor.count());
+                    tree.advance();
+                } else {
+                    // The last word is passed once the writer is closed
+                    writer.close();
+                    finished = true;
+                    release();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return !words.isEmpty();
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return words.remove();
+    }
+
+    /**
+     * Gets the words as a sequential stream. Closing the stream
+     * closes the words
+     *
+     * @return stream of the sorted words
+     */
+    public Stream<String> stream() {
+        Spliterator<String> spliterator = Spliterators.spliteratorUnknownSize(
+                this, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Stops iterating the words and deletes the temporary files.
+     * The words which are not iterated yet are dropped
+     *
+     * @throws IOException I/O error happened while deleting the files
+     */
+    @Override
+    public void close() throws IOException {
+        words.clear();
+        finished = true;
+        release();
+    }
+
+    // Closes the readers of the temporary files and deletes the files
+    private void release() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            for (WordCursor cursor : cursors) {
+                cursor.close();
+            }
+        } finally {
+            cleanup.close();
+        }
+    }
+
+
+
+
+
+    /**
+     * Writer decoding the words passed by the collapsing and limiting writers
+     */
+    private class Collector implements WordWriter {
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            write(bytes, offset, length, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length, long count) {
+            String word = new String(bytes, offset, length, UTF_8);
+            words.add(counted ? String.format("%7d %s", count, word) : word);
+        }
+
+        @Override
+        public void close() { }
+    }
+}
@@ -0,0 +1,76 @@
+package org.odanc.filesorter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the source files given by a path: a single file, all the files
+ * of a directory or the files matching a glob pattern in their names,
+ * e.g. {@code "shards/part-*.txt"}. Patterns don't match directories
+ * in the middle of a path and don't look into subdirectories.
+ */
+class SourceFiles {
+
+    private SourceFiles() { }
+
+    /**
+     * Finds the source files by the path. Files of a directory are sorted
+     * by their names and hidden files are skipped
+     *
+     * @param location path to a file or a directory, or a path with a glob pattern
+     *                 in the file name
+     * @return paths to the source files, a single file is returned
+     *         even if it doesn't exist
+     * @throws NoSuchFileException if no file matches the pattern
+     *                             or the directory is empty
+     * @throws IOException I/O error happened while listing a directory
+     */
+    static List<Path> find(String location) throws IOException {
+        int nameStart = Math.max(location.lastIndexOf('/'), location.lastIndexOf(File.separatorChar)) + 1;
+        String name = location.substring(nameStart);
+        Path directory;
+        String pattern;
+        if (isPattern(name)) {
+            directory = Paths.get(nameStart > 0 ? location.substring(0, nameStart) : ".");
+            pattern = name;
+        } else {
+            Path path = Paths.get(location);
+            if (!Files.isDirectory(path)) {
+                return Collections.singletonList(path);
+            }
+            directory = path;
+            pattern = "*";
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, pattern)) {
+            for (Path file : entries) {
+                if (Files.isRegularFile(file) && !Files.isHidden(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            throw new NoSuchFileException(location, null, "no files to sort");
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static boolean isPattern(String name) {
+        for (char c : "*?[{".toCharArray()) {
+            if (name.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,37 @@
+package org.odanc.filesorter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counter of the time a thread spent waiting for data which
+ * wasn't read ahead in time. Stalls can be counted by several threads.
+ */
+public final class StallCounter {
+    private LongAdder count = new LongAdder();
+    private LongAdder nanos = new LongAdder();
+
+    /**
+     * Counts a stall
+     *
+     * @param duration duration of the stall in nanoseconds
+     */
+    void add(long duration) {
+        count.increment();
+        nanos.add(duration);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the total time of all the stalls
+     *
+     * @param unit unit of the time
+     * @return total time of the stalls in the given unit
+     */
+    public long getTime(TimeUnit unit) {
+        return unit.convert(nanos.sum(), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,122 @@
+package org.odanc.filesorter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Collations which don't depend on a locale
+ */
+enum StandardCollation implements Collation {
+
+    /**
+     * Words are ordered ignoring case differences. Characters are folded
+     * the same way as {@link String#CASE_INSENSITIVE_ORDER} folds them and
+     * compared as code points, so supplementary characters follow all the others
+     */
+    CASE_INSENSITIVE {
+        @Override
+        public void computeKey(byte[] word, int offset, int length, SortKey key) {
+
+            // ASCII words are folded byte by byte without decoding
+            for (int i = 0; i < length; i++) {
+                if (word[offset + i] < 0) {
+                    foldCase(new String(word, offset, length, UTF_8), key);
+                    return;
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                byte b = word[offset + i];
+                key.add(b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b);
+            }
+        }
+    },
+
+    /**
+     * Words are ordered by their numeric values, the same way as {@code sort -n}
+     * orders them: an optional sign, digits and an optional fraction at the start
+     * of a word after its leading blanks are the number, words not starting
+     * with a number are zeros
+     */
+    NUMERIC {
+        @Override
+        public void computeKey(byte[] word, int offset, int length, SortKey key) {
+            int end = offset + length;
+            int position = offset;
+            while (position < end && (word[position] == ' ' || word[position] == '\t')) {
+                position += 1;
+            }
+            boolean negative = false;
+            if (position < end && (word[position] == '-' || word[position] == '+')) {
+                negative = word[position] == '-';
+                position += 1;
+            }
+
+            // Leading zeros of the integer part and trailing zeros of the fraction
+            // don't change the value
+            while (position < end && word[position] == '0') {
+                position += 1;
+            }
+            int integerStart = position;
+            while (position < end && isDigit(word[position])) {
+                position += 1;
+            }
+            int integerEnd = position;
+
+            int fractionStart = integerEnd;
+            int fractionEnd = integerEnd;
+            if (position < end && word[position] == '.') {
+                fractionStart = ++position;
+                while (position < end && isDigit(word[position])) {
+                    position += 1;
+                }
+                fractionEnd = position;
+                while (fractionEnd > fractionStart && word[fractionEnd - 1] == '0') {
+                    fractionEnd -= 1;
+                }
+            }
+
+            int integerLength = integerEnd - integerStart;
+            if (integerLength == 0 && fractionEnd == fractionStart) {
+                key.add(ZERO);
+                return;
+            }
+
+            // Longer integer parts are bigger numbers, then digits are compared one by one.
+            // Bytes of negative numbers are inverted, so bigger absolute values go first
+            int mask = negative ? 0xFF : 0;
+            key.add(negative ? NEGATIVE : POSITIVE);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                key.add((integerLength >>> shift) ^ mask);
+            }
+            for (int i = integerStart; i < integerEnd; i++) {
+                key.add(word[i] ^ mask);
+            }
+            for (int i = fractionStart; i < fractionEnd; i++) {
+                key.add(word[i] ^ mask);
+            }
+
+            // A shorter fraction of a negative number is a bigger number
+            if (negative) {
+                key.add(0xFF);
+            }
+        }
+    };
+
+    // First bytes of numeric keys
+    private static final int NEGATIVE = 1;
+    private static final int ZERO = 2;
+    private static final int POSITIVE = 3;
+
+    // Folds every character the same way as String.CASE_INSENSITIVE_ORDER does
+    // and appends UTF-8 bytes of the folded word, so the keys are ordered
+    // by the folded code points
+    private static void foldCase(String word, SortKey key) {
+        StringBuilder folded = new StringBuilder(word.length());
+        word.codePoints().forEach(c -> folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c))));
+        byte[] bytes = folded.toString().getBytes(UTF_8);
+        key.add(bytes, 0, bytes.length);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
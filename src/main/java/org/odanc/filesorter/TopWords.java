@@ -0,0 +1,127 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+
+/**
+ * Selection of the first or the last words in sorted order kept in
+ * a single words buffer, so they are written to the output file without
+ * temporary files. When the buffer is full, it is sorted and only the words
+ * to be written so far are left in it. The last word left is the threshold
+ * then: the words read afterwards which are beyond the threshold are skipped
+ * without being added, so the buffer is pruned less and less often.
+ * <p>
+ * Copies of a word count as a single word if they are collapsed, all
+ * of them are kept though, so their number is known. The selection fails
+ * if the words left take more than half of the buffer, the words are sorted
+ * through temporary files then.
+ */
+class TopWords {
+    private Chunk chunk;
+    private long count;
+    private boolean last;
+    private boolean distinct;
+    private boolean keyed;
+    private SortAlgorithm algorithm;
+    private boolean parallel;
+
+    // The last word to be written and the current word of the reader,
+    // keyed words are compared by their keys only
+    private byte[] threshold;
+    private int thresholdLength;
+    private byte[] word = new byte[64];
+
+    /**
+     * Creates an empty selection taking its buffer memory from the manager
+     *
+     * @param configuration configuration with the number of words to select
+     * @param memory manager of the memory taken by the buffer
+     */
+    TopWords(Config configuration, MemoryManager memory) {
+        count = configuration.getWordLimit();
+        last = configuration.isLastWords();
+        distinct = configuration.getDuplicateMode() != DuplicateMode.KEEP;
+        keyed = configuration.getCollation() != null;
+        algorithm = configuration.getSortAlgorithm();
+        parallel = configuration.isParallelSort();
+        chunk = new Chunk((int) Math.min(memory.getBudget(), Integer.MAX_VALUE - 8), memory);
+    }
+
+    /**
+     * Adds the current word of the reader unless it is beyond the threshold
+     *
+     * @param reader reader positioned at a word
+     * @return {@code true} if the word is added or skipped,
+     *         {@code false} if the selected words don't fit in the buffer
+     */
+    boolean add(WordReader reader) {
+        if (threshold != null && isBeyondThreshold(reader)) {
+            return true;
+        }
+        if (chunk.add(reader)) {
+            return true;
+        }
+
+        prune();
+        return !chunk.isHalfFull() && chunk.add(reader);
+    }
+
+    /**
+     * Writes the selected words in sorted order
+     *
+     * @param writer writer to write words with
+     * @throws IOException I/O error happened while writing words
+     */
+    void writeTo(WordWriter writer) throws IOException {
+        prune();
+        chunk.writeTo(writer);
+    }
+
+    /**
+     * Gets the number of words selected so far including copies of words
+     *
+     * @return number of words in the buffer
+     */
+    int size() {
+        return chunk.size();
+    }
+
+    /**
+     * Drops the buffer returning its memory to the manager
+     */
+    void free() {
+        chunk.free();
+    }
+
+    // Sorts the buffer and leaves the words to be written so far in it,
+    // their prefixes are cached from the start again for the next sorting.
+    // The threshold is set once some words are removed
+    private void prune() {
+        chunk.sort(algorithm, parallel);
+        int size = chunk.size();
+        int from = last ? chunk.tailStart(count, distinct, keyed) : 0;
+        int to = last ? size : chunk.headEnd(count, distinct, keyed);
+        chunk.retain(from, to);
+        if (to - from < size) {
+            threshold = chunk.copyWord(last ? 0 : to - from - 1);
+            thresholdLength = keyLength(threshold, threshold.length);
+        }
+    }
+
+    // Compares the key of the word with the threshold,
+    // equal keys are never beyond since the word may be a copy
+    private boolean isBeyondThreshold(WordReader reader) {
+        int length = reader.length();
+        if (word.length < length) {
+            word = new byte[Math.max(length, word.length * 2)];
+        }
+        reader.copyTo(word, 0);
+
+        int result = Utf8Order.compare(word, 0, keyLength(word, length), threshold, 0, thresholdLength);
+        return last ? result < 0 : result > 0;
+    }
+
+    // Length of the part of the word copies are compared by
+    private int keyLength(byte[] bytes, int length) {
+        return keyed ? KeyedWordReader.wordStart(bytes, 0, length) : length;
+    }
+}
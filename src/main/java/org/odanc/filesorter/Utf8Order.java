@@ -0,0 +1,58 @@
+package org.odanc.filesorter;
+
+/**
+ * Order of UTF-8 encoded words which is the same as the order of
+ * their {@code String} representations given by {@link String#compareTo}.
+ * Words are compared byte by byte without decoding them.
+ * <p>
+ * Unsigned byte order of UTF-8 is the code point order, while strings are
+ * compared by UTF-16 code units, where supplementary characters (surrogate
+ * pairs D800-DFFF) precede characters E000-FFFF. Bytes at the first difference
+ * are lead bytes of characters from the same position, so it is enough to rank
+ * lead bytes EE and EF (characters E000-FFFF) above lead bytes F0-F4
+ * (supplementary characters).
+ */
+final class Utf8Order {
+
+    // Rank of every byte value, ordering words the same way as strings
+    static final int[] RANK = new int[256];
+
+    static {
+        for (int b = 0; b < RANK.length; b++) {
+            if (b < 0xEE) {
+                RANK[b] = b;
+            } else if (b < 0xF0) {
+                RANK[b] = b + 0x10;
+            } else {
+                RANK[b] = b - 2;
+            }
+        }
+    }
+
+    private Utf8Order() { }
+
+    /**
+     * Compares two UTF-8 encoded words
+     *
+     * @param first array containing the first word
+     * @param firstOffset offset of the first word
+     * @param firstLength length of the first word in bytes
+     * @param second array containing the second word
+     * @param secondOffset offset of the second word
+     * @param secondLength length of the second word in bytes
+     * @return negative number, zero or positive number if the first word
+     *         is less than, equal to or greater than the second one
+     */
+    static int compare(byte[] first, int firstOffset, int firstLength,
+                       byte[] second, int secondOffset, int secondLength) {
+        int length = Math.min(firstLength, secondLength);
+        for (int i = 0; i < length; i++) {
+            byte a = first[firstOffset + i];
+            byte b = second[secondOffset + i];
+            if (a != b) {
+                return RANK[a & 0xFF] - RANK[b & 0xFF];
+            }
+        }
+        return firstLength - secondLength;
+    }
+}
@@ -0,0 +1,33 @@
+package org.odanc.filesorter;
+
+import java.util.Comparator;
+
+/**
+ * Run cursor exposing its current word as a range of UTF-8 encoded bytes,
+ * so words of different runs are compared without creating strings.
+ */
+interface WordCursor extends RunCursor {
+
+    // Orders cursors by their current words
+    Comparator<WordCursor> WORD_ORDER = (first, second) -> Utf8Order.compare(
+            first.array(), first.offset(), first.length(),
+            second.array(), second.offset(), second.length());
+
+    /**
+     * Gets the array containing the current word
+     *
+     * @return array of the current word
+     */
+    byte[] array();
+
+    int offset();
+
+    int length();
+
+    /**
+     * Gets the number of copies of the current word
+     *
+     * @return number of copies, 1 unless the run stores numbers of copies
+     */
+    long count();
+}
@@ -0,0 +1,180 @@
+package org.odanc.filesorter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reader that splits contents of a file into separate words.
+ * Words are read one by one, each call to {@link #next()} moves
+ * the reader to the following word in the file.
+ */
+interface WordReader extends Closeable {
+
+    /**
+     * Opens a reader for the given file. Words delimited by whitespaces
+     * or by a single ASCII character are read directly from the file bytes,
+     * any other delimiter is treated as a regex-pattern.
+     *
+     * @param file path to file to read words from
+     * @param delimiter regex-pattern as a delimiter, {@code null} for whitespaces
+     * @return word reader positioned before the first word
+     * @throws IOException I/O error happened while opening file
+     */
+    static WordReader open(Path file, String delimiter) throws IOException {
+        return open(file, delimiter, false);
+    }
+
+    /**
+     * Opens a reader for the given file reading either words or records.
+     * Every record separator ends a record, so a leading separator
+     * ends an empty record unlike a leading word delimiter
+     *
+     * @param file path to file to read words from
+     * @param delimiter regex-pattern as a delimiter, {@code null} for whitespaces,
+     *                  a single character literal if records are read
+     * @param records whether the delimiter is a record separator
+     * @return word reader positioned before the first word
+     * @throws IOException I/O error happened while opening file
+     */
+    static WordReader open(Path file, String delimiter, boolean records) throws IOException {
+        int delimiterByte = ByteWordReader.toDelimiterByte(delimiter, records);
+        return delimiter == null || delimiterByte != ByteWordReader.WHITESPACE
+                ? new ByteWordReader(FileChannel.open(file), delimiterByte)
+                : new RegexWordReader(file, delimiter);
+    }
+
+    /**
+     * Opens a reader of the words or the records read from the channel,
+     * which are delimited the same way as the words of a file
+     *
+     * @param channel channel to read words from, closed with the reader
+     * @param delimiter regex-pattern as a delimiter, {@code null} for whitespaces,
+     *                  a single character literal if records are read
+     * @param records whether the delimiter is a record separator
+     * @return word reader positioned before the first word
+     */
+    static WordReader open(ReadableByteChannel channel, String delimiter, boolean records) {
+        int delimiterByte = ByteWordReader.toDelimiterByte(delimiter, records);
+        return delimiter == null || delimiterByte != ByteWordReader.WHITESPACE
+                ? new ByteWordReader(channel, delimiterByte)
+                : new RegexWordReader(channel, delimiter);
+    }
+
+    /**
+     * Opens a reader for the given file starting from the position
+     * of a word found by {@link #position()}. Words delimited by
+     * a regex-pattern have no positions
+     *
+     * @param file path to file to read words from
+     * @param delimiter delimiter as a single character literal, {@code null} for whitespaces
+     * @param records whether the delimiter is a record separator
+     * @param position position in the file to start reading from
+     * @return word reader positioned before the word at the position
+     * @throws IOException I/O error happened while opening file
+     */
+    static WordReader open(Path file, String delimiter, boolean records, long position) throws IOException {
+        int delimiterByte = ByteWordReader.toDelimiterByte(delimiter, records);
+        if (delimiter != null && delimiterByte == ByteWordReader.WHITESPACE) {
+            throw new IllegalArgumentException("words delimited by " + delimiter + " have no positions");
+        }
+
+        FileChannel channel = FileChannel.open(file);
+        try {
+            channel.position(position);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new ByteWordReader(channel, delimiterByte, ByteWordReader.DEFAULT_BUFFER_SIZE, position);
+    }
+
+    /**
+     * Opens readers for separate ranges of the file mapped to memory.
+     * The file is split at word boundaries, so the readers read the same words
+     * altogether as a single reader does and can be read in parallel.
+     * Words delimited by a regex-pattern are read by a single regular reader
+     *
+     * @param file path to file to read words from
+     * @param delimiter regex-pattern as a delimiter, {@code null} for whitespaces,
+     *                  a single character literal if records are read
+     * @param records whether the delimiter is a record separator
+     * @param count maximum number of readers
+     * @return word readers of consecutive ranges of the file
+     * @throws IOException I/O error happened while opening file
+     */
+    static List<WordReader> openMapped(Path file, String delimiter, boolean records, int count) throws IOException {
+        int delimiterByte = ByteWordReader.toDelimiterByte(delimiter, records);
+        if (delimiter != null && delimiterByte == ByteWordReader.WHITESPACE) {
+            return Collections.singletonList(new RegexWordReader(file, delimiter));
+        }
+
+        long[] bounds;
+        try (FileChannel channel = FileChannel.open(file)) {
+            bounds = ByteWordReader.splitRanges(channel, delimiterByte, count);
+        }
+
+        List<WordReader> readers = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                if (i == 0 || bounds[i] < bounds[i + 1]) {
+                    readers.add(new ByteWordReader(FileChannel.open(file), delimiterByte,
+                            bounds[i], bounds[i + 1], ByteWordReader.DEFAULT_WINDOW_SIZE));
+                }
+            }
+        } catch (IOException e) {
+            for (WordReader reader : readers) {
+                reader.close();
+            }
+            throw e;
+        }
+        return readers;
+    }
+
+    /**
+     * Moves the reader to the next word
+     *
+     * @return {@code true} if there is a word to read,
+     *         {@code false} if the end of file is reached
+     * @throws IOException I/O error happened while reading file
+     */
+    boolean next() throws IOException;
+
+    /**
+     * Gets the word the reader is positioned at
+     *
+     * @return current word
+     */
+    String word();
+
+    /**
+     * Gets the length of the current word in UTF-8 encoded bytes
+     *
+     * @return length of the current word in bytes
+     */
+    int length();
+
+    /**
+     * Copies UTF-8 encoded bytes of the current word to the array
+     *
+     * @param destination array to copy the word to
+     * @param offset offset in the array to copy the word at
+     */
+    void copyTo(byte[] destination, int offset);
+
+    /**
+     * Gets the position in the file a reader should start from
+     * to read the current word first, see {@link #open(Path, String, boolean, long)}
+     *
+     * @return position of the current word, -1 if the reader
+     *         doesn't know positions of words
+     */
+    default long position() {
+        return -1;
+    }
+}
@@ -0,0 +1,422 @@
+package org.odanc.filesorter;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Sorts words or records which don't fit in memory. Words are read
+ * from an iterator, a stream or a channel, split into sorted temporary
+ * files within the memory budget and returned as {@link SortedWords}
+ * merged from the files while they are iterated, so the sorted words
+ * are consumed one by one without writing an output file. Source files
+ * are sorted into an output file directly, which lets several threads
+ * read and merge them at once.
+ * <p>
+ * A sorter is created by its {@link Builder} and may sort any number
+ * of inputs one after another. Every sort takes the whole memory budget
+ * of the sorter while it splits its input, so sorts running at once need
+ * sorters of their own with heap sizes which fit in the heap together.
+ */
+public final class WordSorter {
+    private int heapSize;
+    private String delimiter;
+    private int recordSeparator;
+    private DuplicateMode duplicateMode;
+    private Collation collation;
+    private RunStrategy runStrategy;
+    private boolean presortedDetection;
+    private Compression compression;
+    private Path workDirectory;
+    private int sortThreads;
+    private long wordLimit;
+    private boolean lastWords;
+
+    private WordSorter(Builder builder) {
+        heapSize = builder.heapSize;
+        delimiter = builder.delimiter;
+        recordSeparator = builder.recordSeparator;
+        duplicateMode = builder.duplicateMode;
+        runStrategy = builder.runStrategy;
+        presortedDetection = builder.presortedDetection;
+        compression = builder.compression;
+        workDirectory = builder.workDirectory;
+        sortThreads = builder.sortThreads;
+        wordLimit = builder.wordLimit;
+        lastWords = builder.lastWords;
+
+        // Key fields imply sorting lines unless records are separated otherwise.
+        // The order of words applies to the keys which don't define their own
+        if (builder.keys.isEmpty()) {
+            collation = builder.order;
+        } else {
+            List<KeyField> fields = new ArrayList<>();
+            for (String key : builder.keys) {
+                fields.add(KeyField.parse(key, builder.order));
+            }
+            collation = new RecordKeys(builder.fieldSeparator, fields);
+            if (recordSeparator < 0) {
+                recordSeparator = '\n';
+            }
+        }
+    }
+
+    /**
+     * Creates a builder of a sorter of words in the natural order
+     * within the maximum heap of the running JVM
+     *
+     * @return sorter builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Sorts the strings of the iterator, every string is a word
+     * taken as it is. The iterator is read to its end before
+     * the words are returned
+     *
+     * @param words words to sort
+     * @return sorted words, which must be closed unless all of them are iterated
+     * @throws IOException I/O error happened while writing temporary files
+     */
+    public SortedWords sort(Iterator<String> words) throws IOException {
+        return new FileSorter(configure(Collections.emptyList()).build()).sort(new IteratorWordReader(words));
+    }
+
+    /**
+     * Sorts the strings of the stream, every string is a word taken as it is.
+     * The stream is read to its end and closed before the words are returned
+     *
+     * @param words words to sort
+     * @return sorted words, which must be closed unless all of them are iterated
+     * @throws IOException I/O error happened while writing temporary files
+     */
+    public SortedWords sort(Stream<String> words) throws IOException {
+        try (Stream<String> stream = words) {
+            return sort(stream.iterator());
+        }
+    }
+
+    /**
+     * Sorts the words of UTF-8 text read from the channel, which are
+     * delimited the same way as the words of a source file. The channel
+     * is read to its end and closed before the words are returned
+     *
+     * @param channel channel of the text
+     * @return sorted words, which must be closed unless all of them are iterated
+     * @throws IOException I/O error happened while reading the channel or writing temporary files
+     */
+    public SortedWords sort(ReadableByteChannel channel) throws IOException {
+        Config config = configure(Collections.emptyList()).build();
+        return new FileSorter(config).sort(WordReader.open(channel, config.getDelimiter(), config.isRecordMode()));
+    }
+
+    /**
+     * Sorts the words of the source files together into the output file.
+     * Every word is written on a separate line, every record is followed
+     * by the record separator
+     *
+     * @param sourceFiles paths to the source files, at least one
+     * @param outputFile path to the output file, replaced if it exists
+     * @throws IOException I/O error happened while processing files
+     */
+    public void sort(List<Path> sourceFiles, Path outputFile) throws IOException {
+        newJob(sourceFiles, outputFile).run();
+    }
+
+    /**
+     * Creates a job sorting the words of the source files together into
+     * the output file the same way as {@link #sort(List, Path)} does,
+     * so the sorting can be watched while it runs and reported afterwards
+     *
+     * @param sourceFiles paths to the source files, at least one
+     * @param outputFile path to the output file, replaced if it exists
+     * @return sorting job which isn't run yet
+     */
+    public SortJob newJob(List<Path> sourceFiles, Path outputFile) {
+        return new SortJob(new FileSorter(configure(sourceFiles).setOutputFile(outputFile).build()));
+    }
+
+    // Creates a configuration builder with the settings of the sorter,
+    // no source files means words are not read from files
+    private Config.ConfigBuilder configure(List<Path> sourceFiles) {
+        Config.ConfigBuilder builder = sourceFiles.isEmpty()
+                ? Config.newBuilder(heapSize)
+                : Config.newBuilder(sourceFiles, heapSize);
+        builder.setWordDelimiter(delimiter)
+               .setDuplicateMode(duplicateMode)
+               .setCollation(collation)
+               .setRunStrategy(runStrategy)
+               .setPresortedDetection(presortedDetection)
+               .setCompression(compression)
+               .setWorkDirectory(workDirectory)
+               .setSortThreads(sortThreads);
+        if (recordSeparator >= 0) {
+            builder.setRecordSeparator((char) recordSeparator);
+        }
+        if (wordLimit > 0) {
+            if (lastWords) {
+                builder.setLastWords(wordLimit);
+            } else {
+                builder.setFirstWords(wordLimit);
+            }
+        }
+        return builder;
+    }
+
+
+
+
+
+    /**
+     * Builder of a sorter. Words are sorted the same way as strings
+     * are compared by {@link String#compareTo} and every copy of a word
+     * is kept by default. Options of the sorted order and of collapsing
+     * copies apply to the last one set
+     */
+    public static final class Builder {
+        private int heapSize;
+        private String delimiter;
+        private int recordSeparator = -1;
+        private DuplicateMode duplicateMode = DuplicateMode.KEEP;
+        private Collation order;
+        private List<String> keys = new ArrayList<>();
+        private int fieldSeparator = RecordKeys.BLANKS;
+        private RunStrategy runStrategy = RunStrategy.CHUNKS;
+        private boolean presortedDetection;
+        private Compression compression = Compression.NONE;
+        private Path workDirectory;
+        private int sortThreads;
+        private long wordLimit;
+        private boolean lastWords;
+
+        private Builder() { }
+
+        /**
+         * Sets the maximum heap size the sorting takes in megabytes,
+         * the maximum heap of the running JVM by default
+         *
+         * @param megabytes heap size in megabytes
+         * @return sorter builder
+         */
+        public Builder setHeapSize(int megabytes) {
+            heapSize = megabytes;
+            return this;
+        }
+
+        /**
+         * Sets the delimiter of words read from channels and source files,
+         * words are delimited by whitespaces by default
+         *
+         * @param regex regex-pattern as a delimiter
+         * @return sorter builder
+         */
+        public Builder setWordDelimiter(String regex) {
+            delimiter = regex;
+            return this;
+        }
+
+        /**
+         * Switches sorting to records, e.g. lines, instead of words.
+         * Records of channels and source files are delimited by the separator
+         *
+         * @param separator ASCII character separating records, e.g. '\n'
+         * @return sorter builder
+         */
+        public Builder setRecordSeparator(char separator) {
+            if (separator >= 0x80) {
+                throw new IllegalArgumentException("record separator is not an ASCII character");
+            }
+            recordSeparator = separator;
+            return this;
+        }
+
+        /**
+         * Keeps a single copy of every word, the same way as {@code sort -u} does
+         *
+         * @return sorter builder
+         */
+        public Builder setUnique() {
+            duplicateMode = DuplicateMode.UNIQUE;
+            return this;
+        }
+
+        /**
+         * Keeps a single copy of every word prefixed with the number
+         * of its copies, the same way as {@code uniq -c} does
+         *
+         * @return sorter builder
+         */
+        public Builder setCounted() {
+            duplicateMode = DuplicateMode.COUNT;
+            return this;
+        }
+
+        /**
+         * Orders words ignoring case differences
+         *
+         * @return sorter builder
+         */
+        public Builder setCaseInsensitiveOrder() {
+            order = StandardCollation.CASE_INSENSITIVE;
+            return this;
+        }
+
+        /**
+         * Orders words by the numbers they start with, the same way as {@code sort -n} does
+         *
+         * @return sorter builder
+         */
+        public Builder setNumericOrder() {
+            order = StandardCollation.NUMERIC;
+            return this;
+        }
+
+        /**
+         * Orders words by the rules of the locale
+         *
+         * @param locale locale of the words
+         * @return sorter builder
+         */
+        public Builder setLocaleOrder(Locale locale) {
+            order = new LocaleCollation(locale);
+            return this;
+        }
+
+        /**
+         * Adds a key field records are ordered by, the same way as {@code sort -k} does.
+         * Key fields imply sorting lines unless records are separated otherwise,
+         * the order of words applies to the keys which don't define their own
+         *
+         * @param definition fields of the key and their order, e.g. "2,3n"
+         * @return sorter builder
+         */
+        public Builder addKey(String definition) {
+            keys.add(definition);
+            return this;
+        }
+
+        /**
+         * Sets the character separating the fields of records,
+         * fields are separated by runs of spaces and tabs by default
+         *
+         * @param separator ASCII character separating fields
+         * @return sorter builder
+         */
+        public Builder setFieldSeparator(char separator) {
+            if (separator >= 0x80) {
+                throw new IllegalArgumentException("field separator is not an ASCII character");
+            }
+            fieldSeparator = separator;
+            return this;
+        }
+
+        /**
+         * Sets whether words are split into temporary files by replacement
+         * selection, which writes fewer and longer files
+         *
+         * @param enabled {@code true} to use replacement selection
+         * @return sorter builder
+         */
+        public Builder setReplacementSelection(boolean enabled) {
+            runStrategy = enabled ? RunStrategy.REPLACEMENT_SELECTION : RunStrategy.CHUNKS;
+            return this;
+        }
+
+        /**
+         * Sets whether source files are read once more before sorting to find
+         * already sorted stretches of words, which are merged without sorting
+         *
+         * @param detection {@code true} to look for sorted stretches
+         * @return sorter builder
+         */
+        public Builder setPresortedDetection(boolean detection) {
+            presortedDetection = detection;
+            return this;
+        }
+
+        /**
+         * Sets whether temporary files are compressed
+         *
+         * @param compressed {@code true} to compress temporary files
+         * @return sorter builder
+         */
+        public Builder setCompression(boolean compressed) {
+            compression = compressed ? Compression.DEFLATE : Compression.NONE;
+            return this;
+        }
+
+        /**
+         * Sets the directory temporary files are written to, the default
+         * temporary directory by default. Sorting of source files is
+         * checkpointed there and resumes from its last checkpoint.
+         * The directory belongs to one sorting at a time, a sorting started
+         * while another one uses the directory fails. Sorted words lock
+         * the directory until they are closed
+         *
+         * @param directory work directory
+         * @return sorter builder
+         */
+        public Builder setWorkDirectory(Path directory) {
+            workDirectory = directory;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads sorting words, one per processor by default
+         *
+         * @param threads number of sorting threads
+         * @return sorter builder
+         */
+        public Builder setSortThreads(int threads) {
+            sortThreads = threads;
+            return this;
+        }
+
+        /**
+         * Limits sorted words to the first ones, the same way as {@code sort | head} does
+         *
+         * @param count number of words
+         * @return sorter builder
+         */
+        public Builder setFirstWords(long count) {
+            return setWordLimit(count, false);
+        }
+
+        /**
+         * Limits sorted words to the last ones, the same way as {@code sort | tail} does
+         *
+         * @param count number of words
+         * @return sorter builder
+         */
+        public Builder setLastWords(long count) {
+            return setWordLimit(count, true);
+        }
+
+        /**
+         * Creates the sorter
+         *
+         * @return sorter with the settings of the builder
+         * @throws IllegalArgumentException if a key field is not valid
+         */
+        public WordSorter build() {
+            return new WordSorter(this);
+        }
+
+        private Builder setWordLimit(long count, boolean last) {
+            if (count <= 0) {
+                throw new IllegalArgumentException("number of words is not positive");
+            }
+            wordLimit = count;
+            lastWords = last;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.odanc.filesorter;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writer of UTF-8 encoded words to a file, e.g. a temporary file
+ * or the sorted output file.
+ */
+interface WordWriter extends Closeable {
+
+    /**
+     * Writes the word to the file
+     *
+     * @param bytes array containing the word
+     * @param offset offset of the word in the array
+     * @param length length of the word in bytes
+     * @throws IOException I/O error happened while writing file
+     */
+    void write(byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * Writes the word with the number of its copies. Writers which
+     * don't store numbers of copies write the word once
+     *
+     * @param bytes array containing the word
+     * @param offset offset of the word in the array
+     * @param length length of the word in bytes
+     * @param count number of copies of the word
+     * @throws IOException I/O error happened while writing file
+     */
+    default void write(byte[] bytes, int offset, int length, long count) throws IOException {
+        write(bytes, offset, length);
+    }
+}
@@ -0,0 +1,104 @@
+package org.odanc.filesorter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Exclusive lock of a work directory held by a sorting while it writes
+ * temporary files there. The manifest of the directory is replaced
+ * and its unreferenced temporary files are deleted when a sorting starts,
+ * so a work directory belongs to one sorting at a time. The lock is taken
+ * on a file of its own, because the manifest is replaced while it is locked.
+ * The lock file is deleted when the lock is released, a sorting which
+ * locked the deleted file locks the directory again.
+ */
+class WorkDirectoryLock implements Closeable {
+
+    // Name of the lock file in the work directory
+    static final String FILE_NAME = "filesorter.lock";
+
+    private Path file;
+    private FileChannel channel;
+
+    private WorkDirectoryLock(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    /**
+     * Locks the work directory, the directory is created if it doesn't exist
+     *
+     * @param directory work directory
+     * @return lock held until it is closed
+     * @throws IOException the directory is locked by another sorting
+     *                     or I/O error happened while locking it
+     */
+    static WorkDirectoryLock lock(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path file = directory.resolve(FILE_NAME);
+        while (true) {
+            FileChannel channel = FileChannel.open(file, CREATE, WRITE);
+            try {
+                Object key = getFileKey(file);
+                FileLock lock = tryLock(channel);
+                if (lock == null) {
+                    throw new IOException("work directory " + directory + " is used by another sorting");
+                }
+                if (Files.exists(file) && Objects.equals(getFileKey(file), key)) {
+                    return new WorkDirectoryLock(file, channel);
+                }
+            } catch (IOException | RuntimeException | Error e) {
+                channel.close();
+                throw e;
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * Deletes the lock file and releases the lock. The lock file is deleted
+     * only the first time, it may belong to another sorting afterwards
+     *
+     * @throws IOException I/O error happened while deleting the lock file
+     */
+    @Override
+    public void close() throws IOException {
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Locks the file, returns null if another process or another sorting
+    // of this process holds its lock
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            return null;
+        }
+    }
+
+    // Gets the key identifying the file, null if there is no such key
+    private static Object getFileKey(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
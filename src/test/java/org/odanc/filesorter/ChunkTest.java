@@ -0,0 +1,182 @@
+package org.odanc.filesorter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChunkTest {
+
+    @Test
+    public void test_words_added_until_full() throws IOException {
+        // Every 3-byte word takes 1 byte of length, 3 bytes of word and 8 bytes of index
+        Chunk chunk = new Chunk(30);
+        WordReader reader = newReader("one two six");
+
+        assertTrue("word is not read", reader.next());
+        assertTrue("first word is not added", chunk.add(reader));
+        assertTrue("word is not read", reader.next());
+        assertTrue("second word is not added", chunk.add(reader));
+        assertTrue("word is not read", reader.next());
+        assertFalse("third word is added", chunk.add(reader));
+        assertEquals("words count is not equal", 2, chunk.size());
+
+        chunk.clear();
+        assertTrue("chunk is not empty", chunk.isEmpty());
+        assertTrue("word is not added to empty chunk", chunk.add(reader));
+    }
+
+    @Test
+    public void test_big_word_added_to_empty_chunk() throws IOException {
+        Chunk chunk = new Chunk(4);
+        WordReader reader = newReader("big bigger");
+
+        reader.next();
+        assertTrue("big word is not added", chunk.add(reader));
+        reader.next();
+        assertFalse("second word is added", chunk.add(reader));
+        assertEquals("words are not equal", Collections.singletonList("big"), sortWords(chunk, SortAlgorithm.INTROSORT, false));
+    }
+
+    @Test
+    public void test_words_added_until_memory_budget_reached() throws IOException {
+        // The buffer starts with 1mb array and can double it once
+        // as both arrays are taken while words are copied
+        MemoryManager memory = new MemoryManager(3 * 1_048_576);
+        Chunk chunk = new Chunk(Integer.MAX_VALUE, memory);
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) {
+            words.append(i).append(' ');
+        }
+        WordReader reader = newReader(words.toString());
+
+        int count = 0;
+        while (reader.next() && chunk.add(reader)) {
+            count += 1;
+        }
+        assertTrue("buffer is not full", count < 200_000);
+        assertEquals("reserved memory is not the buffer size", 2_097_152, memory.getReserved());
+
+        Chunk secondChunk = new Chunk(Integer.MAX_VALUE, memory);
+        assertTrue("word is not added to empty buffer", secondChunk.add(reader));
+        assertEquals("peak memory is not equal", 3 * 1_048_576, memory.getPeak());
+
+        chunk.free();
+        secondChunk.free();
+        assertEquals("memory is not released", 0, memory.getReserved());
+    }
+
+    @Test
+    public void test_words_sorted() throws IOException {
+        Random random = new Random(42);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            words.add(Integer.toString(random.nextInt(20_000), 36) + (i % 7 == 0 ? "ё" : ""));
+        }
+
+        assertSorted(words);
+    }
+
+    @Test
+    public void test_words_with_common_prefixes_sorted() throws IOException {
+        Random random = new Random(42);
+        String[] prefixes = {"", "a", "ab", "abc", "abcd", "abcdefgh", "abcdefghi"};
+        String[] letters = {"a", "b", "c", "ё", "\uFFFD", "\uD83D\uDE00"};
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            StringBuilder word = new StringBuilder(prefixes[random.nextInt(prefixes.length)]);
+            for (int j = random.nextInt(8); j > 0; j--) {
+                word.append(letters[random.nextInt(letters.length)]);
+            }
+            words.add(word.length() > 0 ? word.toString() : "a");
+        }
+
+        assertSorted(words);
+    }
+
+    @Test
+    public void test_equal_words_sorted() throws IOException {
+        for (SortAlgorithm algorithm : SortAlgorithm.values()) {
+            Chunk chunk = new Chunk(1_024);
+            WordReader reader = newReader("b a b a b c a");
+            while (reader.next()) {
+                chunk.add(reader);
+            }
+
+            assertEquals("words are not sorted by " + algorithm,
+                    Arrays.asList("a", "a", "a", "b", "b", "b", "c"), sortWords(chunk, algorithm, false));
+        }
+    }
+
+    @Test
+    public void test_first_and_last_words_retained() throws IOException {
+        Chunk chunk = new Chunk(1_024);
+        WordReader reader = newReader("d b a c b a e a");
+        while (reader.next()) {
+            chunk.add(reader);
+        }
+        chunk.sort(SortAlgorithm.MULTIKEY_QUICKSORT, false);
+
+        assertEquals("first words are not found", 2, chunk.headEnd(2, false, false));
+        assertEquals("first distinct words are not found", 5, chunk.headEnd(2, true, false));
+        assertEquals("last words are not found", 6, chunk.tailStart(2, false, false));
+        assertEquals("last distinct words are not found", 5, chunk.tailStart(3, true, false));
+        assertEquals("more words than the buffer has are not found", 8, chunk.headEnd(10, true, false));
+
+        chunk.retain(3, 7);
+        WordReader nextReader = newReader("aa bb");
+        while (nextReader.next()) {
+            chunk.add(nextReader);
+        }
+        assertEquals("retained words are not sorted", Arrays.asList("aa", "b", "b", "bb", "c", "d"),
+                sortWords(chunk, SortAlgorithm.INTROSORT, false));
+    }
+
+    private void assertSorted(List<String> words) throws IOException {
+        List<String> expected = new ArrayList<>(words);
+        Collections.sort(expected);
+
+        for (SortAlgorithm algorithm : SortAlgorithm.values()) {
+            for (boolean parallel : new boolean[] {false, true}) {
+                Chunk chunk = new Chunk(Integer.MAX_VALUE);
+                WordReader reader = newReader(String.join(" ", words));
+                while (reader.next()) {
+                    chunk.add(reader);
+                }
+
+                assertEquals("words are not sorted by " + algorithm, expected, sortWords(chunk, algorithm, parallel));
+            }
+        }
+    }
+
+    private WordReader newReader(String words) {
+        ByteArrayInputStream stream = new ByteArrayInputStream(words.getBytes(UTF_8));
+        return new ByteWordReader(Channels.newChannel(stream), ByteWordReader.WHITESPACE);
+    }
+
+    private List<String> sortWords(Chunk chunk, SortAlgorithm algorithm, boolean parallel) throws IOException {
+        List<String> words = new ArrayList<>();
+        chunk.sort(algorithm, parallel);
+        chunk.writeTo(new WordWriter() {
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                words.add(new String(bytes, offset, length, UTF_8));
+            }
+
+            @Override
+            public void close() { }
+        });
+        return words;
+    }
+}
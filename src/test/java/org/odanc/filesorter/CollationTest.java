@@ -0,0 +1,168 @@
+package org.odanc.filesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.Collator;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class CollationTest {
+    private static final String[] WORDS = {
+            "", "a", "A", "ab", "aB", "Ab", "b", "Z", "z", "é", "É", "ß", "я", "Я", "ǅ", "ǆ", "Ǆ",
+            "😀", "😀a", "￿", "\u0000", "\u0001", "\u0002", "a\u0000", "ä", "Ä", "ae", "0", "-0", "+0",
+            "00", "1", "01", "1.0", "1.", ".5", "0.5", "-.5", "-0.50", "-1", "-1.5", "-1.55", "-10",
+            "2", "10", "10.01", "123abc", "-", ".", "1e5", "99999999999", "-99999999999", "\uD801\uDC00", "\uD801\uDC28"
+    };
+
+    @Test
+    public void test_case_insensitive_order() throws IOException {
+        assertSameOrder(StandardCollation.CASE_INSENSITIVE, (first, second) -> {
+            int[] firstFolded = foldCase(first);
+            int[] secondFolded = foldCase(second);
+            for (int i = 0; i < Math.min(firstFolded.length, secondFolded.length); i++) {
+                if (firstFolded[i] != secondFolded[i]) {
+                    return Integer.compare(firstFolded[i], secondFolded[i]);
+                }
+            }
+            return Integer.compare(firstFolded.length, secondFolded.length);
+        });
+    }
+
+    @Test
+    public void test_numeric_order() throws IOException {
+        assertSameOrder(StandardCollation.NUMERIC, Comparator.comparing(CollationTest::numberOf));
+    }
+
+    @Test
+    public void test_locale_order() throws IOException {
+        Collator collator = Collator.getInstance(Locale.GERMAN);
+        assertSameOrder(new LocaleCollation(Locale.GERMAN), Comparator.comparing(collator::getCollationKey));
+    }
+
+    @Test
+    public void test_keyed_word_start() throws IOException {
+        for (String word : WORDS) {
+            byte[] keyed = keyed(word, StandardCollation.NUMERIC);
+            int start = KeyedWordReader.wordStart(keyed, 0, keyed.length);
+            assertEquals("word is not found after the key", word,
+                    new String(keyed, start, keyed.length - start, UTF_8));
+        }
+    }
+
+    // Compares keyed words of all the pairs of words and of consecutive random words
+    // with the expected order, words with equal keys are ordered as strings
+    private void assertSameOrder(Collation collation, Comparator<String> order) throws IOException {
+        Comparator<String> expectedOrder = order.thenComparing(Comparator.naturalOrder());
+        for (String first : WORDS) {
+            for (String second : WORDS) {
+                assertSameOrder(collation, expectedOrder, first, second);
+            }
+        }
+
+        Random random = new Random(42);
+        String previous = "";
+        for (int i = 0; i < 20_000; i++) {
+            String word = randomWord(random);
+            assertSameOrder(collation, expectedOrder, previous, word);
+            previous = word;
+        }
+    }
+
+    private void assertSameOrder(Collation collation, Comparator<String> expectedOrder,
+                                 String first, String second) throws IOException {
+        byte[] firstKeyed = keyed(first, collation);
+        byte[] secondKeyed = keyed(second, collation);
+        int expected = Integer.signum(expectedOrder.compare(first, second));
+        int actual = Integer.signum(Utf8Order.compare(
+                firstKeyed, 0, firstKeyed.length, secondKeyed, 0, secondKeyed.length));
+
+        assertEquals("order is not equal for \"" + first + "\" and \"" + second + "\"", expected, actual);
+    }
+
+    // Reads the word prefixed with its sort key
+    private byte[] keyed(String word, Collation collation) throws IOException {
+        try (WordReader reader = new KeyedWordReader(new SingleWordReader(word), collation)) {
+            reader.next();
+            byte[] bytes = new byte[reader.length()];
+            reader.copyTo(bytes, 0);
+            return bytes;
+        }
+    }
+
+    // Folds case of every code point
+    private static int[] foldCase(String word) {
+        return word.codePoints().map(c -> Character.toLowerCase(Character.toUpperCase(c))).toArray();
+    }
+
+    // Parses the number the word starts with, zero if there is none
+    private static BigDecimal numberOf(String word) {
+        Matcher matcher = Pattern.compile("^([+-]?)(\\d*)(?:\\.(\\d*))?").matcher(word);
+        matcher.find();
+        String integer = matcher.group(2);
+        String fraction = matcher.group(3) != null ? matcher.group(3) : "";
+        if (integer.isEmpty() && fraction.isEmpty()) {
+            return BigDecimal.ZERO;
+        }
+        return new BigDecimal(matcher.group(1) + (integer.isEmpty() ? "0" : integer) + "." + fraction + "0");
+    }
+
+    // Generates a short word of digits, signs and letters in both cases
+    // including supplementary ones
+    private String randomWord(Random random) {
+        String[] symbols = {"0", "1", "9", "-", ".", "+", "a", "A", "z", "Z", "é", "É", "я", "Я", "\u0000",
+                "\uFFFF", "\uD83D\uDE00", "\uD801\uDC00", "\uD801\uDC28"};
+        StringBuilder builder = new StringBuilder();
+        for (int i = random.nextInt(6); i > 0; i--) {
+            builder.append(symbols[random.nextInt(symbols.length)]);
+        }
+        return builder.toString();
+    }
+
+
+
+
+
+    /**
+     * Reader of a single word
+     */
+    private static class SingleWordReader implements WordReader {
+        private String word;
+        private byte[] bytes;
+
+        SingleWordReader(String word) {
+            this.word = word;
+            this.bytes = word.getBytes(UTF_8);
+        }
+
+        @Override
+        public boolean next() {
+            return true;
+        }
+
+        @Override
+        public String word() {
+            return word;
+        }
+
+        @Override
+        public int length() {
+            return bytes.length;
+        }
+
+        @Override
+        public void copyTo(byte[] destination, int offset) {
+            System.arraycopy(bytes, 0, destination, offset, bytes.length);
+        }
+
+        @Override
+        public void close() { }
+    }
+}
@@ -8,11 +8,20 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.odanc.filesorter.Config.DEFAULT_MAX_MERGE_FAN_IN;
+import static org.odanc.filesorter.Config.DEFAULT_OUTPUT_BUFFER_COUNT;
+import static org.odanc.filesorter.Config.DEFAULT_OUTPUT_BUFFER_SIZE;
 import static org.odanc.filesorter.Config.DEFAULT_OUTPUT_FILE;
-import static org.odanc.filesorter.Config.MAX_BUFFER_SIZE;
-import static org.odanc.filesorter.Config.MIN_BUFFER_SIZE;
+import static org.odanc.filesorter.Config.MAX_READ_AHEAD_SIZE;
+import static org.odanc.filesorter.Config.MIN_MERGE_FAN_IN;
+import static org.odanc.filesorter.Config.MIN_OUTPUT_BUFFER_COUNT;
+import static org.odanc.filesorter.Config.MIN_OUTPUT_BUFFER_SIZE;
+import static org.odanc.filesorter.Config.MIN_READ_AHEAD_SIZE;
+import static org.odanc.filesorter.Config.MIN_CHUNK_SIZE;
 
 public class ConfigBuilderTest {
     private static Path sourceFile;
@@ -30,31 +39,37 @@ public class ConfigBuilderTest {
         ConfigBuilder builder = Config.newBuilder(sourceFile, 0);
         
         Config config = builder.build();
-        assertMinBufferSize(config);
         assertEquals("source files paths are not equal", sourceFile, config.getSourceFile());
         assertNull("word delimiter is set", config.getDelimiter());
         assertEquals("output files paths are not equal", DEFAULT_OUTPUT_FILE, config.getOutputFile());
         
-        builder = Config.newBuilder(sourceFile, -1);
-        assertMinBufferSize(builder.build());
+        // Heap of the running JVM is used if heap size is not set
+        int heapSize = (int) (Runtime.getRuntime().maxMemory() / 1_048_576);
+        Config heapConfig = Config.newBuilder(sourceFile, heapSize).build();
+        assertEquals("chunk count doesn't fit in JVM heap", heapConfig.getChunkCount(), config.getChunkCount());
+        assertEquals("fan-in doesn't fit in JVM heap", heapConfig.getMergeFanIn(), config.getMergeFanIn());
+        assertEquals("chunk size doesn't fit in JVM heap",
+                heapConfig.getChunkSize(), config.getChunkSize(), 1_048_576);
         
-        builder = Config.newBuilder(sourceFile, 1_024);
-        assertMaxBufferSize(builder.build());
+        builder = Config.newBuilder(sourceFile, -1);
+        assertEquals("chunk count doesn't fit in JVM heap", heapConfig.getChunkCount(), builder.build().getChunkCount());
     }
     
     @Test
-    public void test_custom_word_size_config_builder() {
-        ConfigBuilder builder = Config.newBuilder(sourceFile, 0);
-        assertMinBufferSize(builder.build());
-        assertMinBufferSize(builder.setMaxWordSize(-1).build());
-        assertMinBufferSize(builder.setMaxWordSize(0).build());
-        assertMinBufferSize(builder.setMaxWordSize(1_000).build());
+    public void test_byte_budget_config_builder() {
         
-        builder = Config.newBuilder(sourceFile, 2_048);
-        assertMaxBufferSize(builder.build());
-        assertMaxBufferSize(builder.setMaxWordSize(-1).build());
-        assertMaxBufferSize(builder.setMaxWordSize(0).build());
-        assertMaxBufferSize(builder.setMaxWordSize(1_000).build());
+        // Heap without its reserved part and output buffers is shared by words buffers,
+        // a buffer takes half of its share
+        ConfigBuilder builder = Config.newBuilder(sourceFile, 8).setMaxChunkCount(8);
+        assertEquals("chunk count is not limited by minimum size", 2, builder.build().getChunkCount());
+        assertEquals("chunk size doesn't fit in heap", 1_048_576, builder.build().getChunkSize());
+        
+        builder = Config.newBuilder(sourceFile, 1);
+        assertEquals("chunk size is below minimum", MIN_CHUNK_SIZE, builder.build().getChunkSize());
+        
+        // Words buffers are not limited by a number of words
+        builder = Config.newBuilder(sourceFile, 32_768).setMaxChunkCount(4);
+        assertEquals("chunk size is limited", Integer.MAX_VALUE - 8, builder.build().getChunkSize());
     }
     
     @Test
@@ -68,12 +83,71 @@ public class ConfigBuilderTest {
         assertNotNull("delimiter is not set", config.getDelimiter());
     }
     
-    private void assertMinBufferSize(Config config) {
-        assertEquals("buffer sizes are not equal", MIN_BUFFER_SIZE, config.getBufferSize());
+    @Test
+    public void test_chunk_count_config_builder() {
+        ConfigBuilder builder = Config.newBuilder(sourceFile, 1);
+        assertEquals("chunk count is not minimal", 1, builder.build().getChunkCount());
+        assertEquals("sort threads are not set", 
+                Runtime.getRuntime().availableProcessors(), builder.build().getSortThreads());
+        
+        builder = Config.newBuilder(sourceFile, 1_024).setSortThreads(2);
+        assertEquals("sort threads are not set", 2, builder.build().getSortThreads());
+        assertEquals("chunk count doesn't fit in heap", 4, builder.build().getChunkCount());
+        assertEquals("chunk count exceeds maximum", 3, builder.setMaxChunkCount(3).build().getChunkCount());
+    }
+    
+    @Test
+    public void test_merge_fan_in_config_builder() {
+        ConfigBuilder builder = Config.newBuilder(sourceFile, 8);
+        assertEquals("fan-in doesn't fit in heap", 16, builder.build().getMergeFanIn());
+        assertEquals("fan-in exceeds maximum", 10, builder.setMaxMergeFanIn(10).build().getMergeFanIn());
+        assertEquals("fan-in is below minimum", MIN_MERGE_FAN_IN, builder.setMaxMergeFanIn(1).build().getMergeFanIn());
+        
+        builder = Config.newBuilder(sourceFile, 1_024);
+        assertEquals("fan-in exceeds default maximum", DEFAULT_MAX_MERGE_FAN_IN, builder.build().getMergeFanIn());
+    }
+    
+    @Test
+    public void test_read_ahead_config_builder() {
+        ConfigBuilder builder = Config.newBuilder(sourceFile, 1);
+        assertEquals("read ahead is not minimal", MIN_READ_AHEAD_SIZE, builder.build().getReadAheadSize());
+        
+        builder = Config.newBuilder(sourceFile, 8);
+        assertEquals("read ahead doesn't fit in heap", MIN_READ_AHEAD_SIZE, builder.build().getReadAheadSize());
+        
+        // Files merged at once share the budget left by their read buffers
+        builder = Config.newBuilder(sourceFile, 1_024);
+        assertEquals("read ahead doesn't fill heap", (1_020 * 1_048_576) / 512 - 65_536,
+                builder.build().getReadAheadSize());
+        assertEquals("read ahead exceeds maximum", 1_024, builder.setMaxReadAheadSize(1_024).build().getReadAheadSize());
+        
+        builder = Config.newBuilder(sourceFile, 8_192);
+        assertEquals("read ahead exceeds default maximum", MAX_READ_AHEAD_SIZE, builder.build().getReadAheadSize());
+    }
+    
+    @Test
+    public void test_output_buffers_config_builder() {
+        ConfigBuilder builder = Config.newBuilder(sourceFile, 0);
+        Config config = builder.build();
+        assertEquals("output buffer size is not default", DEFAULT_OUTPUT_BUFFER_SIZE, config.getOutputBufferSize());
+        assertEquals("output buffer count is not default", DEFAULT_OUTPUT_BUFFER_COUNT, config.getOutputBufferCount());
+        assertFalse("output is forced", config.isForceOutput());
+        
+        config = builder.setOutputBufferSize(1).setOutputBufferCount(1).setForceOutput(true).build();
+        assertEquals("output buffer size is below minimum", MIN_OUTPUT_BUFFER_SIZE, config.getOutputBufferSize());
+        assertEquals("output buffer count is below minimum", MIN_OUTPUT_BUFFER_COUNT, config.getOutputBufferCount());
+        assertTrue("output is not forced", config.isForceOutput());
     }
     
-    private void assertMaxBufferSize(Config config) {
-        assertEquals("buffer sizes are not equal", MAX_BUFFER_SIZE, config.getBufferSize());
+    @Test
+    public void test_chunk_size_config_builder() {
+        ConfigBuilder builder = Config.newBuilder(sourceFile, 8).setMaxChunkCount(1);
+        assertEquals("chunk size doesn't fit in heap", 2 * 1_048_576, builder.build().getChunkSize());
+        assertEquals("chunk size exceeds maximum", 1_024, builder.setMaxChunkSize(1_024).build().getChunkSize());
+        
+        // Single words buffer takes half of the budget
+        builder = Config.newBuilder(sourceFile, 2_048).setMaxChunkCount(1);
+        assertEquals("chunk size is not equal", 1_022 * 1_048_576, builder.build().getChunkSize());
     }
 
 }
\ No newline at end of file
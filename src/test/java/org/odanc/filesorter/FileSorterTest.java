@@ -5,15 +5,29 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.math.BigDecimal;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class FileSorterTest {
     private static Path outputFile;
@@ -46,24 +60,701 @@ public class FileSorterTest {
         
         sortFile(sourceFile, outputFile);
         
-        assertEquals("Files sizes are not equal", Files.size(sortedFile), Files.size(outputFile));
+        assertSameContents(sortedFile, outputFile);
+    }
+    
+    @Test
+    public void test_big_file_parallel_sort() throws IOException {
+        Path sourceFile = getPathTo("unsorted_big.txt");
+        Path sortedFile = getPathTo("sorted_big.txt");
         
-        // For comparing big files for content equality it might be more efficient
-        // to compare their memory-mapped projections.
-        // See http://codereview.stackexchange.com/a/90152
-        long fileSize = Files.size(sortedFile);
+        Config config = Config.newBuilder(sourceFile, 512)
+                              .setOutputFile(outputFile)
+                              .setSortThreads(4)
+                              .setParallelSort(true)
+                              .build();
+        new FileSorter(config).sort();
         
-        // Size of memory-mapped file buffer in kb
-        long bufferSize = 512 * 1_024;
+        assertSameContents(sortedFile, outputFile);
+    }
+
+    @Test
+    public void test_big_file_mapped_parallel_read_sort() throws IOException {
+        Path sourceFile = getPathTo("unsorted_big.txt");
+        Path sortedFile = getPathTo("sorted_big.txt");
         
-        try (FileChannel sortedChannel = FileChannel.open(sortedFile);
-             FileChannel outputChannel = FileChannel.open(outputFile)) {
+        Config config = Config.newBuilder(sourceFile, 64)
+                              .setOutputFile(outputFile)
+                              .setMappedInput(true)
+                              .setReadThreads(4)
+                              .setMaxChunkSize(262_144)
+                              .build();
+        new FileSorter(config).sort();
+        
+        assertSameContents(sortedFile, outputFile);
+    }
+
+    @Test
+    public void test_big_file_compressed_multiple_passes_sort() throws IOException {
+        Path sourceFile = getPathTo("unsorted_big.txt");
+        Path sortedFile = getPathTo("sorted_big.txt");
+        
+        Config config = Config.newBuilder(sourceFile, 64)
+                              .setOutputFile(outputFile)
+                              .setMaxChunkSize(65_536)
+                              .setMaxMergeFanIn(3)
+                              .setCompression(Compression.DEFLATE)
+                              .build();
+        new FileSorter(config).sort();
+        
+        assertSameContents(sortedFile, outputFile);
+    }
+
+    @Test
+    public void test_big_file_small_output_buffers_sort() throws IOException {
+        Path sourceFile = getPathTo("unsorted_big.txt");
+        Path sortedFile = getPathTo("sorted_big.txt");
+        
+        Config config = Config.newBuilder(sourceFile, 64)
+                              .setOutputFile(outputFile)
+                              .setMaxChunkSize(65_536)
+                              .setMaxMergeFanIn(3)
+                              .setOutputBufferSize(1)
+                              .setOutputBufferCount(3)
+                              .setForceOutput(true)
+                              .build();
+        new FileSorter(config).sort();
+        
+        assertSameContents(sortedFile, outputFile);
+    }
+
+    @Test
+    public void test_big_file_replacement_selection_sort() throws IOException {
+        Path sourceFile = getPathTo("unsorted_big.txt");
+        Path sortedFile = getPathTo("sorted_big.txt");
+        
+        Config.ConfigBuilder builder = Config.newBuilder(sourceFile, 64)
+                                             .setOutputFile(outputFile)
+                                             .setMaxChunkCount(1)
+                                             .setMaxChunkSize(65_536);
+        FileSorter chunkSorter = new FileSorter(builder.build());
+        chunkSorter.sort();
+        
+        builder.setRunStrategy(RunStrategy.REPLACEMENT_SELECTION);
+        FileSorter selectionSorter = new FileSorter(builder.build());
+        selectionSorter.sort();
+        
+        assertSameContents(sortedFile, outputFile);
+        
+        // Runs of random words are about twice as long as the memory
+        assertTrue("runs are not longer than buffers",
+                selectionSorter.getRunCount() * 3 < chunkSorter.getRunCount() * 2);
+    }
+
+    @Test
+    public void test_sorted_file_replacement_selection_sort() throws IOException {
+        Path sortedFile = getPathTo("sorted_big.txt");
+        
+        Config config = Config.newBuilder(sortedFile, 64)
+                              .setOutputFile(outputFile)
+                              .setMaxChunkSize(65_536)
+                              .setRunStrategy(RunStrategy.REPLACEMENT_SELECTION)
+                              .build();
+        FileSorter fileSorter = new FileSorter(config);
+        fileSorter.sort();
+        
+        assertSameContents(sortedFile, outputFile);
+        assertEquals("sorted file is split into several runs", 1, fileSorter.getRunCount());
+    }
+
+    @Test
+    public void test_sorted_file_presorted_sort() throws IOException {
+        Path sortedFile = getPathTo("sorted_big.txt");
+        
+        Config config = Config.newBuilder(sortedFile, 64)
+                              .setOutputFile(outputFile)
+                              .setMaxChunkSize(65_536)
+                              .setPresortedDetection(true)
+                              .build();
+        FileSorter fileSorter = new FileSorter(config);
+        fileSorter.sort();
+        
+        assertSameContents(sortedFile, outputFile);
+        assertEquals("sorted file is not a natural run", 1, fileSorter.getNaturalRunCount());
+        assertEquals("sorted file is split", 0, fileSorter.getRunCount());
+    }
+
+    @Test
+    public void test_concatenated_sorted_files_presorted_sort() throws IOException {
+        List<String> sortedWords = Files.readAllLines(getPathTo("sorted_big.txt"));
+        String unsortedWords = new String(Files.readAllBytes(getPathTo("unsorted_small.txt")), UTF_8);
+        
+        // Two sorted stretches with unsorted words around them
+        StringBuilder words = new StringBuilder(unsortedWords);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            words.append('\n').append(String.join("\n", sortedWords)).append('\n').append(unsortedWords);
+            expected.addAll(sortedWords);
+        }
+        for (int i = 0; i < 3; i++) {
+            expected.addAll(Arrays.asList(unsortedWords.trim().split("\\s+")));
+        }
+        Collections.sort(expected);
+        
+        Path sourceFile = Files.createTempFile(null, null);
+        try {
+            Files.write(sourceFile, words.toString().getBytes(UTF_8));
+            Config config = Config.newBuilder(sourceFile, 64)
+                                  .setOutputFile(outputFile)
+                                  .setMaxChunkSize(65_536)
+                                  .setPresortedDetection(true)
+                                  .build();
+            FileSorter fileSorter = new FileSorter(config);
+            fileSorter.sort();
             
-            for (long position = 0; position < Files.size(sortedFile); position += bufferSize) {
-                MappedByteBuffer sortedBuffer = mapFileToBuffer(sortedChannel, position, fileSize, bufferSize);
-                MappedByteBuffer outputBuffer = mapFileToBuffer(outputChannel, position, fileSize, bufferSize);
-                assertEquals("Files contents are not equal", sortedBuffer, outputBuffer);
+            assertEquals("Files contents are not equal", expected, Files.readAllLines(outputFile));
+            assertEquals("sorted stretches are not natural runs", 2, fileSorter.getNaturalRunCount());
+        } finally {
+            Files.delete(sourceFile);
+        }
+    }
+
+    @Test
+    public void test_big_file_introsort() throws IOException {
+        Path sourceFile = getPathTo("unsorted_big.txt");
+        Path sortedFile = getPathTo("sorted_big.txt");
+        
+        Config config = Config.newBuilder(sourceFile, 64)
+                              .setOutputFile(outputFile)
+                              .setMaxChunkSize(1_048_576)
+                              .setSortAlgorithm(SortAlgorithm.INTROSORT)
+                              .build();
+        new FileSorter(config).sort();
+        
+        assertSameContents(sortedFile, outputFile);
+    }
+
+    @Test
+    public void test_big_file_multiple_passes_sort() throws IOException {
+        Path sourceFile = getPathTo("unsorted_big.txt");
+        Path sortedFile = getPathTo("sorted_big.txt");
+        
+        // 64kb words buffers make about 50 temporary files merged in 4 passes
+        Config config = Config.newBuilder(sourceFile, 64)
+                              .setOutputFile(outputFile)
+                              .setMaxChunkSize(65_536)
+                              .setMaxMergeFanIn(3)
+                              .build();
+        FileSorter fileSorter = new FileSorter(config);
+        fileSorter.sort();
+        
+        assertSameContents(sortedFile, outputFile);
+        assertEquals("merge passes count is not equal", 4, fileSorter.getMergePassCount());
+    }
+
+    @Test
+    public void test_duplicate_words_unique_sort() throws IOException {
+        Map<String, Integer> counts = new TreeMap<>();
+        Path sourceFile = createDuplicatedFile(counts);
+        
+        try {
+            sortDuplicatedFile(sourceFile, DuplicateMode.UNIQUE);
+            
+            assertEquals("Files contents are not equal",
+                    new ArrayList<>(counts.keySet()), Files.readAllLines(outputFile));
+        } finally {
+            Files.delete(sourceFile);
+        }
+    }
+
+    @Test
+    public void test_duplicate_words_unique_replacement_selection_sort() throws IOException {
+        Map<String, Integer> counts = new TreeMap<>();
+        Path sourceFile = createDuplicatedFile(counts);
+        
+        try {
+            Config config = Config.newBuilder(sourceFile, 64)
+                                  .setOutputFile(outputFile)
+                                  .setMaxChunkSize(16_384)
+                                  .setDuplicateMode(DuplicateMode.UNIQUE)
+                                  .setRunStrategy(RunStrategy.REPLACEMENT_SELECTION)
+                                  .build();
+            new FileSorter(config).sort();
+            
+            assertEquals("Files contents are not equal",
+                    new ArrayList<>(counts.keySet()), Files.readAllLines(outputFile));
+        } finally {
+            Files.delete(sourceFile);
+        }
+    }
+
+    @Test
+    public void test_duplicate_words_count_sort() throws IOException {
+        Map<String, Integer> counts = new TreeMap<>();
+        Path sourceFile = createDuplicatedFile(counts);
+        
+        try {
+            sortDuplicatedFile(sourceFile, DuplicateMode.COUNT);
+            
+            List<String> expected = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+                expected.add(String.format("%7d %s", entry.getValue(), entry.getKey()));
             }
+            assertEquals("Files contents are not equal", expected, Files.readAllLines(outputFile));
+        } finally {
+            Files.delete(sourceFile);
+        }
+    }
+
+    @Test
+    public void test_numbers_numeric_sort() throws IOException {
+        Random random = new Random(42);
+        List<String> expected = new ArrayList<>();
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            String word = random.nextInt(4) == 0
+                    ? String.format(Locale.ROOT, "%.2f", random.nextGaussian() * 1_000)
+                    : Integer.toString(random.nextInt(200_000) - 100_000);
+            expected.add(word);
+            words.append(word).append(i % 10 == 0 ? '\n' : ' ');
+        }
+        expected.sort(Comparator.comparing((String word) -> new BigDecimal(word)).thenComparing(Comparator.naturalOrder()));
+        
+        Path sourceFile = Files.createTempFile(null, null);
+        try {
+            Files.write(sourceFile, words.toString().getBytes(UTF_8));
+            Config config = Config.newBuilder(sourceFile, 64)
+                                  .setOutputFile(outputFile)
+                                  .setMaxChunkSize(65_536)
+                                  .setMaxMergeFanIn(3)
+                                  .setCollation(StandardCollation.NUMERIC)
+                                  .build();
+            new FileSorter(config).sort();
+            
+            assertEquals("Files contents are not equal", expected, Files.readAllLines(outputFile));
+        } finally {
+            Files.delete(sourceFile);
+        }
+    }
+
+    @Test
+    public void test_mixed_case_words_case_insensitive_unique_sort() throws IOException {
+        Random random = new Random(42);
+        Map<String, String> firstWords = new TreeMap<>();
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) {
+            StringBuilder word = new StringBuilder(Integer.toString(random.nextInt(3_000), 36));
+            for (int j = 0; j < word.length(); j++) {
+                if (random.nextBoolean()) {
+                    word.setCharAt(j, Character.toUpperCase(word.charAt(j)));
+                }
+            }
+            
+            // Copies of a word are collapsed into the least of them
+            firstWords.merge(word.toString().toLowerCase(), word.toString(),
+                    (first, second) -> first.compareTo(second) <= 0 ? first : second);
+            words.append(word).append(i % 10 == 0 ? '\n' : ' ');
+        }
+        
+        Path sourceFile = Files.createTempFile(null, null);
+        try {
+            Files.write(sourceFile, words.toString().getBytes(UTF_8));
+            Config config = Config.newBuilder(sourceFile, 64)
+                                  .setOutputFile(outputFile)
+                                  .setMaxChunkSize(16_384)
+                                  .setDuplicateMode(DuplicateMode.UNIQUE)
+                                  .setRunStrategy(RunStrategy.REPLACEMENT_SELECTION)
+                                  .setCollation(StandardCollation.CASE_INSENSITIVE)
+                                  .build();
+            new FileSorter(config).sort();
+            
+            assertEquals("Files contents are not equal",
+                    new ArrayList<>(firstWords.values()), Files.readAllLines(outputFile));
+        } finally {
+            Files.delete(sourceFile);
+        }
+    }
+
+    @Test
+    public void test_numerically_sorted_file_numeric_presorted_sort() throws IOException {
+        StringBuilder words = new StringBuilder();
+        for (int i = -50_000; i < 50_000; i++) {
+            words.append(i).append('\n');
+        }
+        
+        Path sourceFile = Files.createTempFile(null, null);
+        try {
+            Files.write(sourceFile, words.toString().getBytes(UTF_8));
+            Config config = Config.newBuilder(sourceFile, 64)
+                                  .setOutputFile(outputFile)
+                                  .setMaxChunkSize(65_536)
+                                  .setPresortedDetection(true)
+                                  .setCollation(StandardCollation.NUMERIC)
+                                  .build();
+            FileSorter fileSorter = new FileSorter(config);
+            fileSorter.sort();
+            
+            assertArrayEquals("Files contents are not equal",
+                    Files.readAllBytes(sourceFile), Files.readAllBytes(outputFile));
+            assertEquals("sorted file is not a natural run", 1, fileSorter.getNaturalRunCount());
+        } finally {
+            Files.delete(sourceFile);
+        }
+    }
+
+    @Test
+    public void test_csv_lines_key_fields_sort() throws IOException {
+        Random random = new Random(42);
+        List<String> expected = new ArrayList<>();
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 50_000; i++) {
+            String line = i + "," + Integer.toString(random.nextInt(500), 36) + " name,"
+                    + (random.nextInt(2_000) - 1_000);
+            expected.add(line);
+            lines.append(line).append('\n');
+        }
+        
+        // Numeric amount, then name, then the whole line
+        Comparator<String> amount = Comparator.comparing((String line) -> new BigDecimal(line.split(",")[2]));
+        expected.sort(amount.thenComparing(line -> line.split(",")[1]).thenComparing(Comparator.naturalOrder()));
+        
+        Path sourceFile = Files.createTempFile(null, null);
+        try {
+            Files.write(sourceFile, lines.toString().getBytes(UTF_8));
+            Config config = Config.newBuilder(sourceFile, 64)
+                                  .setOutputFile(outputFile)
+                                  .setMaxChunkSize(65_536)
+                                  .setMaxMergeFanIn(3)
+                                  .setRecordSeparator('\n')
+                                  .setCollation(new RecordKeys(',', Arrays.asList(
+                                          KeyField.parse("3,3n", null), KeyField.parse("2,2", null))))
+                                  .build();
+            new FileSorter(config).sort();
+            
+            assertEquals("Files contents are not equal", expected, Files.readAllLines(outputFile));
+        } finally {
+            Files.delete(sourceFile);
+        }
+    }
+
+    @Test
+    public void test_leading_and_consecutive_empty_lines_sort() throws IOException {
+        Path sourceFile = Files.createTempFile(null, null);
+        try {
+            Files.write(sourceFile, "\nb,2\na,10\n\nc,1\n".getBytes(UTF_8));
+            Config config = Config.newBuilder(sourceFile, 64)
+                                  .setOutputFile(outputFile)
+                                  .setRecordSeparator('\n')
+                                  .build();
+            new FileSorter(config).sort();
+            assertEquals("Lines are not sorted", Arrays.asList("", "", "a,10", "b,2", "c,1"),
+                    Files.readAllLines(outputFile));
+
+            config = Config.newBuilder(sourceFile, 64)
+                           .setOutputFile(outputFile)
+                           .setRecordSeparator('\n')
+                           .setCollation(new RecordKeys(',', Collections.singletonList(KeyField.parse("2n", null))))
+                           .build();
+            new FileSorter(config).sort();
+            assertEquals("Lines are not sorted by key", Arrays.asList("", "", "c,1", "b,2", "a,10"),
+                    Files.readAllLines(outputFile));
+        } finally {
+            Files.delete(sourceFile);
+        }
+    }
+
+    @Test
+    public void test_empty_lines_mapped_ranges_sort() throws IOException {
+        Random random = new Random(42);
+        List<String> expected = new ArrayList<>();
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            String line = random.nextInt(4) == 0 ? "" : Integer.toString(random.nextInt(1_000), 36);
+            expected.add(line);
+            lines.append(line).append('\n');
+        }
+        Collections.sort(expected);
+
+        // Ranges read by several threads and natural runs start right after line separators
+        Path sourceFile = Files.createTempFile(null, null);
+        try {
+            Files.write(sourceFile, ("\n" + lines).getBytes(UTF_8));
+            expected.add(0, "");
+            for (boolean presorted : new boolean[] {false, true}) {
+                Config config = Config.newBuilder(sourceFile, 64)
+                                      .setOutputFile(outputFile)
+                                      .setMaxChunkSize(65_536)
+                                      .setMappedInput(true)
+                                      .setReadThreads(4)
+                                      .setPresortedDetection(presorted)
+                                      .setRecordSeparator('\n')
+                                      .build();
+                new FileSorter(config).sort();
+
+                assertEquals("Files contents are not equal", expected, Files.readAllLines(outputFile));
+            }
+        } finally {
+            Files.delete(sourceFile);
+        }
+    }
+
+    @Test
+    public void test_sorting_events_and_metrics() throws IOException {
+        Path sourceFile = getPathTo("unsorted_big.txt");
+        List<SortPhase> phases = new ArrayList<>();
+        List<Long> runSizes = new ArrayList<>();
+        SortListener listener = new SortListener() {
+            @Override
+            public void phaseStarted(SortPhase phase, SortMetrics metrics) {
+                phases.add(phase);
+            }
+
+            @Override
+            public void runWritten(Path file, long words, long bytes) {
+                runSizes.add(bytes);
+            }
+        };
+
+        Config config = Config.newBuilder(sourceFile, 64)
+                              .setOutputFile(outputFile)
+                              .setMaxChunkSize(65_536)
+                              .setMaxMergeFanIn(3)
+                              .build();
+        FileSorter fileSorter = new FileSorter(config, listener);
+        fileSorter.sort();
+        SortMetrics metrics = fileSorter.getMetrics();
+
+        int wordCount = Files.readAllLines(getPathTo("sorted_big.txt")).size();
+        assertEquals("phases are not equal", Arrays.asList(SortPhase.SPLIT, SortPhase.MERGE), phases);
+        assertEquals("runs are not counted", fileSorter.getRunCount(), runSizes.size());
+        assertEquals("runs sizes are not equal", runSizes.stream().mapToLong(Long::longValue).sum(),
+                metrics.getRunBytes());
+        assertEquals("words are not counted", wordCount, metrics.getWordsRead());
+        assertEquals("output is not counted", Files.size(outputFile), metrics.getBytesWritten());
+        assertEquals("merge passes are not equal", fileSorter.getMergePassCount(), metrics.getMergePassCount());
+        assertEquals("sorting is not done", 1.0, metrics.getProgress(), 0);
+        assertTrue("summary is not JSON object", metrics.toJson().startsWith("{\"sourceBytes\":" + Files.size(sourceFile)));
+        assertTrue("summary has no phase times", metrics.toJson().contains("\"merge\":{\"wallMs\":"));
+    }
+
+    @Test
+    public void test_resuming_split_after_failure() throws IOException {
+        Path sourceFile = getPathTo("unsorted_big.txt");
+        Path workDirectory = Files.createTempDirectory("filesorter");
+        AtomicInteger runCount = new AtomicInteger();
+        SortListener failingListener = new SortListener() {
+            @Override
+            public void runWritten(Path file, long words, long bytes) {
+                if (runCount.incrementAndGet() == 5) {
+                    throw new IllegalStateException("failure injected");
+                }
+            }
+        };
+
+        try {
+            newResumableSorter(sourceFile, workDirectory, failingListener).sort();
+            fail("failure is not thrown");
+        } catch (IOException expected) {
+        }
+
+        runCount.set(0);
+        FileSorter fileSorter = newResumableSorter(sourceFile, workDirectory, new SortListener() {
+            @Override
+            public void runWritten(Path file, long words, long bytes) {
+                runCount.incrementAndGet();
+            }
+        });
+        fileSorter.sort();
+
+        assertSameContents(getPathTo("sorted_big.txt"), outputFile);
+        assertTrue("written runs are written again", runCount.get() < fileSorter.getRunCount());
+        assertTrue("source file is read again", fileSorter.getMetrics().getBytesRead() < Files.size(sourceFile));
+        assertEquals("work directory is not cleaned", 0, workDirectory.toFile().list().length);
+        Files.delete(workDirectory);
+    }
+
+    @Test
+    public void test_resuming_merge_after_failure() throws IOException {
+        Path sourceFile = getPathTo("unsorted_big.txt");
+        Path workDirectory = Files.createTempDirectory("filesorter");
+        SortListener failingListener = new SortListener() {
+            @Override
+            public void phaseFinished(SortPhase phase, SortMetrics metrics) {
+                throw new IllegalStateException("failure injected");
+            }
+        };
+
+        try {
+            newResumableSorter(sourceFile, workDirectory, failingListener).sort();
+            fail("failure is not thrown");
+        } catch (IllegalStateException expected) {
+        }
+
+        AtomicInteger runCount = new AtomicInteger();
+        FileSorter fileSorter = newResumableSorter(sourceFile, workDirectory, new SortListener() {
+            @Override
+            public void runWritten(Path file, long words, long bytes) {
+                runCount.incrementAndGet();
+            }
+        });
+        fileSorter.sort();
+
+        assertSameContents(getPathTo("sorted_big.txt"), outputFile);
+        assertEquals("runs are written again", 0, runCount.get());
+        assertEquals("source file is read again", 0, fileSorter.getMetrics().getBytesRead());
+        assertEquals("work directory is not cleaned", 0, workDirectory.toFile().list().length);
+        Files.delete(workDirectory);
+    }
+
+    @Test
+    public void test_locked_work_directory() throws IOException {
+        Path sourceFile = getPathTo("unsorted_big.txt");
+        Path workDirectory = Files.createTempDirectory("filesorter");
+        Path foreignFile = Files.createFile(workDirectory.resolve(RunFiles.FILE_PREFIX + "foreign.tmp"));
+
+        WorkDirectoryLock lock = WorkDirectoryLock.lock(workDirectory);
+        try {
+            newResumableSorter(sourceFile, workDirectory, SortListener.NONE).sort();
+            fail("locked work directory is used");
+        } catch (IOException expected) {
+        } finally {
+            lock.close();
+        }
+        assertTrue("files of another sorting are deleted", Files.exists(foreignFile));
+        Files.delete(foreignFile);
+
+        newResumableSorter(sourceFile, workDirectory, SortListener.NONE).sort();
+        assertSameContents(getPathTo("sorted_big.txt"), outputFile);
+        assertEquals("work directory is not cleaned", 0, workDirectory.toFile().list().length);
+        Files.delete(workDirectory);
+    }
+
+    @Test
+    public void test_sorting_several_files() throws IOException {
+        Path shardDirectory = createShards(getPathTo("unsorted_big.txt"), 5);
+        List<Path> shards = SourceFiles.find(shardDirectory.resolve("shard-*.txt").toString());
+        assertEquals("shards are not found", 5, shards.size());
+        assertEquals("directory files are not found", shards, SourceFiles.find(shardDirectory.toString()));
+
+        for (RunStrategy strategy : RunStrategy.values()) {
+            Config config = Config.newBuilder(shards.subList(0, 2), 64)
+                                  .addSourceFiles(shards.subList(2, 5))
+                                  .setOutputFile(outputFile)
+                                  .setMaxChunkSize(65_536)
+                                  .setReadThreads(3)
+                                  .setRunStrategy(strategy)
+                                  .build();
+            FileSorter fileSorter = new FileSorter(config);
+            fileSorter.sort();
+
+            assertSameContents(getPathTo("sorted_big.txt"), outputFile);
+            List<InputMetrics> inputs = fileSorter.getMetrics().getInputs();
+            assertEquals("inputs are not counted", shards.size(), inputs.size());
+            for (InputMetrics input : inputs) {
+                assertTrue("input is not counted", input.getWordsRead() > 0);
+                assertTrue("input is counted twice", input.getBytesRead() <= input.getSize() + 1);
+            }
+            assertEquals("words are not counted", Files.readAllLines(getPathTo("sorted_big.txt")).size(),
+                    inputs.stream().mapToLong(InputMetrics::getWordsRead).sum());
+        }
+
+        for (Path shard : shards) {
+            Files.delete(shard);
+        }
+        Files.delete(shardDirectory);
+    }
+
+    @Test
+    public void test_merging_ranges_in_parallel() throws IOException {
+        Path sourceFile = Files.createTempFile(null, null);
+        Random random = new Random(42);
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < 600_000; i++) {
+            words.append(Integer.toString(random.nextInt(200_000), 36)).append(i % 10 == 0 ? '\n' : ' ');
+        }
+        Files.write(sourceFile, words.toString().getBytes(UTF_8));
+        Path sequentialFile = Files.createTempFile(null, null);
+
+        for (boolean recordMode : new boolean[] {false, true}) {
+            Config.ConfigBuilder builder = Config.newBuilder(sourceFile, 64)
+                                                 .setOutputFile(sequentialFile)
+                                                 .setMaxChunkSize(262_144)
+                                                 .setMergeThreads(1);
+            if (recordMode) {
+                builder.setRecordSeparator('\n');
+            }
+            new FileSorter(builder.build()).sort();
+
+            FileSorter fileSorter = new FileSorter(builder.setOutputFile(outputFile).setMergeThreads(4).build());
+            fileSorter.sort();
+            assertTrue("ranges are not merged in parallel", fileSorter.getMergeRangeCount() > 1);
+            assertArrayEquals("merged ranges are not equal to sequential merge",
+                    Files.readAllBytes(sequentialFile), Files.readAllBytes(outputFile));
+        }
+
+        Files.delete(sourceFile);
+        Files.delete(sequentialFile);
+    }
+
+    @Test
+    public void test_first_and_last_words_sort() throws IOException {
+        List<String> sorted = Files.readAllLines(getPathTo("sorted_big.txt"));
+
+        // A hundred words are selected in memory, the bigger part of the file
+        // doesn't fit there and is split into temporary files
+        for (int count : new int[] {100, sorted.size() / 2}) {
+            for (boolean last : new boolean[] {false, true}) {
+                Config.ConfigBuilder builder = Config.newBuilder(getPathTo("unsorted_big.txt"), 64)
+                                                     .setOutputFile(outputFile)
+                                                     .setMaxChunkSize(65_536)
+                                                     .setMaxChunkCount(2)
+                                                     .setMaxMergeFanIn(3);
+                Config config = last ? builder.setLastWords(count).build() : builder.setFirstWords(count).build();
+                FileSorter fileSorter = new FileSorter(config);
+                fileSorter.sort();
+
+                List<String> expected = last
+                        ? sorted.subList(sorted.size() - count, sorted.size())
+                        : sorted.subList(0, count);
+                assertEquals("Files contents are not equal", expected, Files.readAllLines(outputFile));
+                assertEquals("temporary files are not used as needed", count > 100, fileSorter.getRunCount() > 0);
+                assertEquals("source file is not counted once", sorted.size(),
+                        fileSorter.getMetrics().getWordsRead());
+                assertTrue("runs miss output words", fileSorter.getRunCount() == 0
+                        || fileSorter.getMetrics().getRunWords() >= count);
+            }
+        }
+    }
+
+    @Test
+    public void test_first_and_last_duplicate_words_count_sort() throws IOException {
+        Map<String, Integer> counts = new TreeMap<>();
+        Path sourceFile = createDuplicatedFile(counts);
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            lines.add(String.format("%7d %s", entry.getValue(), entry.getKey()));
+        }
+
+        try {
+            for (int count : new int[] {10, 1_500}) {
+                for (boolean last : new boolean[] {false, true}) {
+                    Config.ConfigBuilder builder = Config.newBuilder(sourceFile, 64)
+                                                         .setOutputFile(outputFile)
+                                                         .setMaxChunkSize(16_384)
+                                                         .setMaxChunkCount(2)
+                                                         .setMaxMergeFanIn(3)
+                                                         .setDuplicateMode(DuplicateMode.COUNT);
+                    Config config = last ? builder.setLastWords(count).build() : builder.setFirstWords(count).build();
+                    new FileSorter(config).sort();
+
+                    List<String> expected = last
+                            ? lines.subList(lines.size() - count, lines.size())
+                            : lines.subList(0, count);
+                    assertEquals("Files contents are not equal", expected, Files.readAllLines(outputFile));
+                }
+            }
+        } finally {
+            Files.delete(sourceFile);
         }
     }
 
@@ -82,6 +773,82 @@ public class FileSorterTest {
         new FileSorter(config).sort();
     }
 
+    // Splits the file into the given number of shards at line ends
+    private Path createShards(Path sourceFile, int count) throws IOException {
+        Path directory = Files.createTempDirectory("filesorter");
+        List<String> lines = Files.readAllLines(sourceFile);
+        int shardSize = (lines.size() + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            List<String> shard = lines.subList(Math.min(i * shardSize, lines.size()),
+                    Math.min((i + 1) * shardSize, lines.size()));
+            Files.write(directory.resolve("shard-" + i + ".txt"), shard);
+        }
+        return directory;
+    }
+
+    // Creates a sorter of small words buffers checkpointed to the work directory
+    private FileSorter newResumableSorter(Path sourceFile, Path workDirectory, SortListener listener) {
+        Config config = Config.newBuilder(sourceFile, 64)
+                              .setOutputFile(outputFile)
+                              .setMaxChunkSize(65_536)
+                              .setMaxMergeFanIn(3)
+                              .setWorkDirectory(workDirectory)
+                              .build();
+        return new FileSorter(config, listener);
+    }
+
+    // Sorts the file in several merge passes with the given duplicate words mode
+    private void sortDuplicatedFile(Path sourceFile, DuplicateMode mode) throws IOException {
+        Config config = Config.newBuilder(sourceFile, 64)
+                              .setOutputFile(outputFile)
+                              .setMaxChunkSize(16_384)
+                              .setMaxMergeFanIn(3)
+                              .setDuplicateMode(mode)
+                              .build();
+        FileSorter fileSorter = new FileSorter(config);
+        fileSorter.sort();
+        
+        assertTrue("file is merged in a single pass", fileSorter.getMergePassCount() > 1);
+    }
+
+    // Creates a file of a few thousands distinct words repeated many times
+    // and counts the words
+    private Path createDuplicatedFile(Map<String, Integer> counts) throws IOException {
+        Random random = new Random(42);
+        StringBuilder words = new StringBuilder();
+        for (int i = 0; i < 200_000; i++) {
+            String word = Integer.toString(random.nextInt(3_000), 36) + (i % 11 == 0 ? "ё" : "");
+            counts.merge(word, 1, Integer::sum);
+            words.append(word).append(i % 10 == 0 ? '\n' : ' ');
+        }
+        
+        Path sourceFile = Files.createTempFile(null, null);
+        Files.write(sourceFile, words.toString().getBytes(UTF_8));
+        return sourceFile;
+    }
+
+    private void assertSameContents(Path sortedFile, Path outputFile) throws IOException {
+        assertEquals("Files sizes are not equal", Files.size(sortedFile), Files.size(outputFile));
+        
+        // For comparing big files for content equality it might be more efficient
+        // to compare their memory-mapped projections.
+        // See http://codereview.stackexchange.com/a/90152
+        long fileSize = Files.size(sortedFile);
+        
+        // Size of memory-mapped file buffer in kb
+        long bufferSize = 512 * 1_024;
+        
+        try (FileChannel sortedChannel = FileChannel.open(sortedFile);
+             FileChannel outputChannel = FileChannel.open(outputFile)) {
+            
+            for (long position = 0; position < Files.size(sortedFile); position += bufferSize) {
+                MappedByteBuffer sortedBuffer = mapFileToBuffer(sortedChannel, position, fileSize, bufferSize);
+                MappedByteBuffer outputBuffer = mapFileToBuffer(outputChannel, position, fileSize, bufferSize);
+                assertEquals("Files contents are not equal", sortedBuffer, outputBuffer);
+            }
+        }
+    }
+
     // Gets OS-dependent path to file
     private static Path getPathTo(String fileName) {
         String fullFileName = FileSorterTest.class.getResource("/").getFile() + fileName;
@@ -0,0 +1,95 @@
+package org.odanc.filesorter;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoserTreeTest {
+    private static final Comparator<ListCursor> ORDER = (o1, o2) -> o1.word().compareTo(o2.word());
+
+    @Test
+    public void test_no_runs_merge() throws IOException {
+        LoserTree<ListCursor> tree = new LoserTree<>(Collections.<ListCursor>emptyList(), ORDER);
+        assertTrue("tree without runs is not empty", tree.isEmpty());
+    }
+
+    @Test
+    public void test_equal_words_merge() throws IOException {
+        List<ListCursor> cursors = Arrays.asList(
+                new ListCursor("a", "b", "b", "c"),
+                new ListCursor(),
+                new ListCursor("b", "b"),
+                new ListCursor("a", "c", "c"));
+
+        assertEquals("words are not merged",
+                Arrays.asList("a", "a", "b", "b", "b", "b", "c", "c", "c"), merge(cursors));
+    }
+
+    @Test
+    public void test_random_runs_merge() throws IOException {
+        Random random = new Random(42);
+
+        for (int runCount : new int[] {1, 2, 3, 7, 16, 100}) {
+            List<String> expected = new ArrayList<>();
+            List<ListCursor> cursors = new ArrayList<>();
+
+            for (int i = 0; i < runCount; i++) {
+                List<String> words = new ArrayList<>();
+                for (int j = random.nextInt(50); j > 0; j--) {
+                    words.add(Integer.toString(random.nextInt(100)));
+                }
+                Collections.sort(words);
+                expected.addAll(words);
+                cursors.add(new ListCursor(words.toArray(new String[words.size()])));
+            }
+            Collections.sort(expected);
+
+            assertEquals("words are not merged for " + runCount + " runs", expected, merge(cursors));
+        }
+    }
+
+    private List<String> merge(List<ListCursor> cursors) throws IOException {
+        List<String> words = new ArrayList<>();
+        LoserTree<ListCursor> tree = new LoserTree<>(cursors, ORDER);
+        while (!tree.isEmpty()) {
+            words.add(tree.peek().word());
+            tree.advance();
+        }
+        return words;
+    }
+
+
+
+
+
+    private static class ListCursor implements RunCursor {
+        private String[] words;
+        private int index = -1;
+
+        ListCursor(String... words) {
+            this.words = words;
+        }
+
+        @Override
+        public boolean next() {
+            index += 1;
+            return index < words.length;
+        }
+
+        String word() {
+            return words[index];
+        }
+
+        @Override
+        public void close() { }
+    }
+}
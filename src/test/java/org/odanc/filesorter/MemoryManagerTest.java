@@ -0,0 +1,84 @@
+package org.odanc.filesorter;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryManagerTest {
+    private static final long MEGABYTE = 1_048_576;
+
+    @Test
+    public void test_budget_cut_to_free_heap() {
+        TestPool pool = new TestPool(100 * MEGABYTE, 60 * MEGABYTE);
+        MemoryManager memory = new MemoryManager(50 * MEGABYTE, 100 * MEGABYTE, Collections.singletonList(pool));
+
+        // A half of the heap left under the threshold part by the live data
+        assertEquals("budget is not cut", 15 * MEGABYTE, memory.getBudget());
+    }
+
+    @Test
+    public void test_no_reservation_while_heap_full() {
+        TestPool pool = new TestPool(100 * MEGABYTE, 10 * MEGABYTE);
+        MemoryManager memory = new MemoryManager(10 * MEGABYTE, 100 * MEGABYTE, Collections.singletonList(pool));
+        assertTrue("memory is not reserved", memory.tryReserve(MEGABYTE));
+
+        pool.used = 95 * MEGABYTE;
+        assertFalse("memory is reserved in full heap", memory.tryReserve(MEGABYTE));
+
+        pool.used = 50 * MEGABYTE;
+        assertTrue("memory is not reserved after collection", memory.tryReserve(MEGABYTE));
+        assertEquals("reserved memory is not equal", 2 * MEGABYTE, memory.getReserved());
+    }
+
+    @Test
+    public void test_platform_thresholds_untouched() {
+        List<Long> thresholds = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            thresholds.add(pool.isCollectionUsageThresholdSupported() ? pool.getCollectionUsageThreshold() : -1);
+        }
+
+        new MemoryManager(10 * MEGABYTE).tryReserve(MEGABYTE);
+
+        List<Long> current = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            current.add(pool.isCollectionUsageThresholdSupported() ? pool.getCollectionUsageThreshold() : -1);
+        }
+        assertEquals("thresholds are changed", thresholds, current);
+    }
+
+
+
+
+
+    /**
+     * Heap pool whose usage after a collection is set by a test
+     */
+    private static class TestPool implements MemoryManager.HeapPool {
+        private long max;
+        private long used;
+
+        TestPool(long max, long used) {
+            this.max = max;
+            this.used = used;
+        }
+
+        @Override
+        public MemoryUsage getUsage() {
+            return new MemoryUsage(0, used, max, max);
+        }
+
+        @Override
+        public MemoryUsage getCollectionUsage() {
+            return new MemoryUsage(0, used, max, max);
+        }
+    }
+}
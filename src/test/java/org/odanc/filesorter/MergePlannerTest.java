@@ -0,0 +1,98 @@
+package org.odanc.filesorter;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MergePlannerTest {
+    private List<Path> files = new ArrayList<>();
+    private List<List<Path>> merges = new ArrayList<>();
+    private List<Path> mergedFiles = new ArrayList<>();
+
+    @Test
+    public void test_no_merge_below_fan_in() throws IOException {
+        createFiles(4);
+        MergePlanner planner = new MergePlanner(4);
+
+        assertEquals("files are merged", files, planner.reduce(files, this::merge));
+        assertTrue("intermediate merge happened", merges.isEmpty());
+        assertEquals("pass count is not equal", 1, planner.getPassCount());
+    }
+
+    @Test
+    public void test_smallest_files_merged_first() throws IOException {
+        createFiles(10);
+        MergePlanner planner = new MergePlanner(4);
+        List<Path> remaining = planner.reduce(files, this::merge);
+
+        // 10 files with fan-in 4: 4 smallest files of 10 words in total,
+        // then 4 files of 5-8 words, which are smaller than the first intermediate one
+        assertEquals("merges count is not equal", 2, merges.size());
+        assertEquals("smallest files are not merged first", files.subList(0, 4), merges.get(0));
+        assertEquals("smallest files are not merged second", files.subList(4, 8), merges.get(1));
+        assertEquals("remaining files count is not equal", 4, remaining.size());
+        assertEquals("pass count is not equal", 2, planner.getPassCount());
+
+        for (Path file : files) {
+            assertEquals("merged file is not deleted", remaining.contains(file), Files.exists(file));
+        }
+
+        List<String> words = new ArrayList<>();
+        for (Path file : remaining) {
+            words.addAll(Files.readAllLines(file, UTF_8));
+        }
+        Collections.sort(words);
+        assertEquals("words are lost", 55, words.size());
+    }
+
+    @Test
+    public void test_first_merge_is_partial() throws IOException {
+        createFiles(5);
+        MergePlanner planner = new MergePlanner(4);
+        List<Path> remaining = planner.reduce(files, this::merge);
+
+        assertEquals("first merge is not partial", files.subList(0, 2), merges.get(0));
+        assertEquals("remaining files count is not equal", 4, remaining.size());
+        assertFalse("merged file is not deleted", Files.exists(files.get(0)));
+        assertEquals("pass count is not equal", 2, planner.getPassCount());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        files.addAll(mergedFiles);
+        for (Path file : files) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Creates files of growing sizes, i-th file has i+1 words
+    private void createFiles(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            Path file = Files.createTempFile(null, null);
+            Files.write(file, Collections.nCopies(i + 1, "word" + i), UTF_8);
+            files.add(file);
+        }
+    }
+
+    private void merge(List<Path> inputs, Path outputFile) throws IOException {
+        merges.add(new ArrayList<>(inputs));
+        mergedFiles.add(outputFile);
+        List<String> words = new ArrayList<>();
+        for (Path input : inputs) {
+            words.addAll(Files.readAllLines(input, UTF_8));
+        }
+        Collections.sort(words);
+        Files.write(outputFile, words, UTF_8);
+    }
+}
@@ -0,0 +1,101 @@
+package org.odanc.filesorter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class NaturalRunsTest {
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile(null, null);
+    }
+
+    @Test
+    public void test_whitespace_delimited_runs() throws IOException {
+        write("  b c d\n a a z\t\tb  c ");
+        NaturalRuns runs = NaturalRuns.detect(file, ByteWordReader.WHITESPACE, null, 1, 10);
+
+        assertEquals("runs are not equal",
+                Arrays.asList(Arrays.asList("b", "c", "d"), Arrays.asList("a", "a", "z"), Arrays.asList("b", "c")),
+                readRuns(runs));
+        assertEquals("gaps are not empty", Collections.emptyList(), readGaps(runs));
+    }
+
+    @Test
+    public void test_byte_delimited_runs() throws IOException {
+        write("a,,b,a,c,,");
+        NaturalRuns runs = NaturalRuns.detect(file, ',', null, 1, 10);
+
+        assertEquals("runs are not equal",
+                Arrays.asList(Arrays.asList("a"), Arrays.asList("", "b"), Arrays.asList("a", "c"), Arrays.asList("")),
+                readRuns(runs));
+        assertEquals("gaps are not empty", Collections.emptyList(), readGaps(runs));
+    }
+
+    @Test
+    public void test_short_runs_left_in_gaps() throws IOException {
+        write("x y a b c d e f q r s");
+        NaturalRuns runs = NaturalRuns.detect(file, ByteWordReader.WHITESPACE, null, 8, 10);
+
+        assertEquals("runs are not equal",
+                Collections.singletonList(Arrays.asList("a", "b", "c", "d", "e", "f", "q", "r", "s")),
+                readRuns(runs));
+        assertEquals("gaps are not equal", Arrays.asList("x", "y"), readGaps(runs));
+    }
+
+    @Test
+    public void test_longest_runs_kept() throws IOException {
+        write("k l m n a b c x y z");
+        NaturalRuns runs = NaturalRuns.detect(file, ByteWordReader.WHITESPACE, null, 1, 1);
+
+        assertEquals("longest run is not kept",
+                Collections.singletonList(Arrays.asList("a", "b", "c", "x", "y", "z")), readRuns(runs));
+        assertEquals("gaps are not equal", Arrays.asList("k", "l", "m", "n"), readGaps(runs));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    private void write(String words) throws IOException {
+        Files.write(file, words.getBytes(UTF_8));
+    }
+
+    private List<List<String>> readRuns(NaturalRuns runs) throws IOException {
+        List<List<String>> words = new ArrayList<>();
+        for (WordCursor cursor : runs.openRuns()) {
+            try (WordCursor run = cursor) {
+                List<String> runWords = new ArrayList<>();
+                while (run.next()) {
+                    runWords.add(new String(run.array(), run.offset(), run.length(), UTF_8));
+                }
+                words.add(runWords);
+            }
+        }
+        return words;
+    }
+
+    private List<String> readGaps(NaturalRuns runs) throws IOException {
+        List<String> words = new ArrayList<>();
+        try (WordReader reader = runs.openGaps()) {
+            while (reader.next()) {
+                words.add(reader.word());
+            }
+        }
+        return words;
+    }
+}
@@ -0,0 +1,117 @@
+package org.odanc.filesorter;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecordKeysTest {
+
+    @Test
+    public void test_separated_fields_keys() {
+        RecordKeys keys = new RecordKeys(',', Collections.singletonList(new KeyField(2, 3, null)));
+
+        assertEquals("key is not the fields range", "b,c", keyOf(keys, "a,b,c,d"));
+        assertEquals("empty fields are not counted", ",c", keyOf(keys, "a,,c,d"));
+        assertEquals("missing fields are not empty", "", keyOf(keys, "a"));
+        assertEquals("last field is not ended by the record", "b", keyOf(keys, "a,b"));
+    }
+
+    @Test
+    public void test_blank_separated_fields_keys() {
+        RecordKeys keys = new RecordKeys(RecordKeys.BLANKS, Collections.singletonList(new KeyField(2, 2, null)));
+
+        assertEquals("fields are not delimited by blanks", " b", keyOf(keys, "a b c"));
+        assertEquals("runs of blanks are not a single separator", " \t b", keyOf(keys, "  a \t b  c"));
+        assertEquals("missing fields are not empty", "   ", keyOf(keys, "a   "));
+        assertEquals("leading blanks are not a part of the first field", "  a",
+                keyOf(new RecordKeys(RecordKeys.BLANKS, Collections.singletonList(new KeyField(1, 1, null))), "  a b"));
+
+        keys = new RecordKeys(RecordKeys.BLANKS, Collections.singletonList(KeyField.parse("2,3b", null)));
+        assertEquals("leading blanks are not skipped", "b  c", keyOf(keys, "  a \t b  c d"));
+    }
+
+    @Test
+    public void test_leading_blanks_order() {
+        RecordKeys keys = new RecordKeys(RecordKeys.BLANKS, Collections.singletonList(new KeyField(2, 2, null)));
+        assertOrder(keys, "x  b", "x a");
+
+        keys = new RecordKeys(RecordKeys.BLANKS, Collections.singletonList(KeyField.parse("2b", null)));
+        assertOrder(keys, "x a", "x  b");
+
+        keys = new RecordKeys(RecordKeys.BLANKS, Collections.singletonList(KeyField.parse("2,2n", null)));
+        assertOrder(keys, "x   2", "x 10");
+    }
+
+    @Test
+    public void test_multiple_keys_order() {
+        RecordKeys keys = new RecordKeys(',', Arrays.asList(
+                new KeyField(2, 2, StandardCollation.NUMERIC), new KeyField(1, 1, null)));
+
+        assertOrder(keys, "b,2", "a,10");
+        assertOrder(keys, "a,10", "b,10");
+        assertOrder(keys, "b,10", "b,10,x");
+        assertOrder(keys, "z", "a,1");
+    }
+
+    @Test
+    public void test_key_definitions() {
+        KeyField field = KeyField.parse("2,3n", null);
+        assertEquals("first field is not parsed", 2, field.getFirstField());
+        assertEquals("last field is not parsed", 3, field.getLastField());
+        assertEquals("numeric order is not parsed", StandardCollation.NUMERIC, field.getCollation());
+
+        field = KeyField.parse("4", StandardCollation.CASE_INSENSITIVE);
+        assertEquals("key doesn't span the rest of the record", KeyField.END_OF_RECORD, field.getLastField());
+        assertEquals("default order is not used", StandardCollation.CASE_INSENSITIVE, field.getCollation());
+        assertFalse("blanks are skipped", field.isBlanksSkipped());
+
+        field = KeyField.parse("1,2bn", null);
+        assertEquals("numeric order is not parsed with blanks", StandardCollation.NUMERIC, field.getCollation());
+        assertTrue("skipped blanks are not parsed", field.isBlanksSkipped());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_malformed_key_definition() {
+        KeyField.parse("3,2", null);
+    }
+
+    // Gets the natural order key of the record as a string
+    private String keyOf(RecordKeys keys, String record) {
+        byte[] bytes = record.getBytes(UTF_8);
+        SortKey key = new SortKey();
+        keys.computeKey(bytes, 0, bytes.length, key);
+        return new String(key.array(), 0, key.length() - 1, UTF_8);
+    }
+
+    private void assertOrder(RecordKeys keys, String first, String second) {
+        byte[] firstBytes = first.getBytes(UTF_8);
+        byte[] secondBytes = second.getBytes(UTF_8);
+        SortKey firstKey = new SortKey();
+        SortKey secondKey = new SortKey();
+        keys.computeKey(firstBytes, 0, firstBytes.length, firstKey);
+        keys.computeKey(secondBytes, 0, secondBytes.length, secondKey);
+
+        int result = compareUnsigned(firstKey, secondKey);
+        if (result == 0) {
+            result = first.compareTo(second);
+        }
+        assertTrue("\"" + first + "\" is not less than \"" + second + "\"", result < 0);
+    }
+
+    private int compareUnsigned(SortKey first, SortKey second) {
+        for (int i = 0; i < Math.min(first.length(), second.length()); i++) {
+            int a = first.array()[i] & 0xFF;
+            int b = second.array()[i] & 0xFF;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return first.length() - second.length();
+    }
+}
@@ -0,0 +1,164 @@
+package org.odanc.filesorter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RunReaderTest {
+    private Path file;
+    private OutputStage stage;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile(null, null);
+
+        // Buffers much smaller than the long word, so it is split between writes
+        stage = new OutputStage(2, Config.MIN_OUTPUT_BUFFER_SIZE);
+    }
+
+    @Test
+    public void test_words_written_and_read() throws IOException {
+        char[] longWord = new char[100_000];
+        Arrays.fill(longWord, 'ы');
+        List<String> words = Arrays.asList("", "word", "два слова", new String(longWord), "", "😀");
+
+        writeWords(words);
+
+        for (int bufferSize = 1; bufferSize <= 16; bufferSize *= 2) {
+            assertEquals("words are not equal", words, readWords(bufferSize));
+        }
+    }
+
+    @Test
+    public void test_counted_words_written_and_read() throws IOException {
+        List<String> words = Arrays.asList("", "one", "many", "😀");
+        long[] counts = {1, 1, 5_000_000_000L, 300};
+
+        try (WordWriter writer = new RunWriter(file, stage, true)) {
+            for (int i = 0; i < words.size(); i++) {
+                byte[] bytes = words.get(i).getBytes(UTF_8);
+                writer.write(bytes, 0, bytes.length, counts[i]);
+            }
+        }
+
+        try (RunReader reader = new RunReader(file, 1, true)) {
+            for (int i = 0; i < words.size(); i++) {
+                assertTrue("word is not read", reader.next());
+                assertEquals("words are not equal", words.get(i),
+                        new String(reader.array(), reader.offset(), reader.length(), UTF_8));
+                assertEquals("counts are not equal", counts[i], reader.count());
+            }
+            assertFalse("extra word is read", reader.next());
+        }
+    }
+
+    @Test
+    public void test_compressed_words_written_and_read() throws IOException {
+        Random random = new Random(42);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            words.add(i % 3 == 0 ? Long.toString(random.nextLong(), 36) : "repeated word " + (i % 100));
+        }
+
+        try (RunFiles runFiles = new RunFiles(Compression.DEFLATE, 2)) {
+            try (WordWriter writer = runFiles.newWriter(file, stage, false)) {
+                for (String word : words) {
+                    byte[] bytes = word.getBytes(UTF_8);
+                    writer.write(bytes, 0, bytes.length);
+                }
+            }
+            assertTrue("file is not compressed", Files.size(file) < words.size() * 10);
+
+            List<String> actual = new ArrayList<>();
+            try (RunReader reader = runFiles.newReader(file, 16, false)) {
+                while (reader.next()) {
+                    actual.add(new String(reader.array(), reader.offset(), reader.length(), UTF_8));
+                }
+            }
+            assertEquals("words are not equal", words, actual);
+        }
+    }
+
+    @Test
+    public void test_prefetched_words_written_and_read() throws IOException {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            words.add("word " + i);
+        }
+
+        // Blocks of 7 bytes split words and their lengths between blocks
+        for (Compression compression : Compression.values()) {
+            try (RunFiles runFiles = new RunFiles(compression, 2, 21)) {
+                try (WordWriter writer = runFiles.newWriter(file, stage, false)) {
+                    for (String word : words) {
+                        byte[] bytes = word.getBytes(UTF_8);
+                        writer.write(bytes, 0, bytes.length);
+                    }
+                }
+
+                List<String> actual = new ArrayList<>();
+                try (RunReader reader = runFiles.newReader(file, 16, false)) {
+                    while (reader.next()) {
+                        actual.add(new String(reader.array(), reader.offset(), reader.length(), UTF_8));
+                    }
+                }
+                assertEquals("words are not equal", words, actual);
+            }
+        }
+    }
+
+    @Test
+    public void test_empty_file_read() throws IOException {
+        writeWords(Collections.<String>emptyList());
+        assertEquals("words are read", Collections.<String>emptyList(), readWords(16));
+    }
+
+    @Test(expected = EOFException.class)
+    public void test_truncated_file_read() throws IOException {
+        writeWords(Collections.singletonList("truncated"));
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+
+        readWords(16);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        stage.close();
+        Files.delete(file);
+    }
+
+    private void writeWords(List<String> words) throws IOException {
+        try (WordWriter writer = new RunWriter(file, stage)) {
+            for (String word : words) {
+                byte[] bytes = word.getBytes(UTF_8);
+                writer.write(bytes, 0, bytes.length);
+            }
+        }
+    }
+
+    private List<String> readWords(int bufferSize) throws IOException {
+        List<String> words = new ArrayList<>();
+        try (RunReader reader = new RunReader(file, bufferSize)) {
+            while (reader.next()) {
+                words.add(new String(reader.array(), reader.offset(), reader.length(), UTF_8));
+            }
+        }
+        return words;
+    }
+}
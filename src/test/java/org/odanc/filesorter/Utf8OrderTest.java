@@ -0,0 +1,51 @@
+package org.odanc.filesorter;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class Utf8OrderTest {
+
+    @Test
+    public void test_same_order_as_strings() {
+        String[] words = {"", "a", "ab", "b", "Z", "é", "я", "퟿", "", "�", "😀", "😀a", "￿"};
+
+        for (String first : words) {
+            for (String second : words) {
+                assertSameOrder(first, second);
+            }
+        }
+    }
+
+    @Test
+    public void test_random_words_order() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            assertSameOrder(randomWord(random), randomWord(random));
+        }
+    }
+
+    private void assertSameOrder(String first, String second) {
+        byte[] firstBytes = first.getBytes(UTF_8);
+        byte[] secondBytes = second.getBytes(UTF_8);
+        int expected = Integer.signum(first.compareTo(second));
+        int actual = Integer.signum(Utf8Order.compare(
+                firstBytes, 0, firstBytes.length, secondBytes, 0, secondBytes.length));
+
+        assertEquals("order is not equal for \"" + first + "\" and \"" + second + "\"", expected, actual);
+    }
+
+    // Generates a short word of characters from all UTF-8 lengths,
+    // including characters around surrogates range
+    private String randomWord(Random random) {
+        int[] starts = {0x20, 0x400, 0xD000, 0xE000, 0xFF00, 0x1F600};
+        StringBuilder builder = new StringBuilder();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            builder.appendCodePoint(starts[random.nextInt(starts.length)] + random.nextInt(0x80));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,130 @@
+package org.odanc.filesorter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+
+public class WordReaderTest {
+    private static final String[] INPUTS = {
+            "",
+            " ",
+            "word",
+            "  two words  ",
+            "tabs\tand\nnew\r\nlines\u000Band\u001Cseparators",
+            "unicode spaces　and others are\u0085not",
+            "кириллица и 漢字 и 😀",
+            "a,,b,",
+            "ab,,,cd,e,,f",
+            ",a,b,,",
+            ",,",
+            "a.b..c",
+            "with,spaces and\nnew lines,inside",
+    };
+
+    @Test
+    public void test_whitespace_delimited_words() throws IOException {
+        for (String input : INPUTS) {
+            assertSameWords(input, null, ByteWordReader.WHITESPACE);
+        }
+    }
+
+    @Test
+    public void test_single_byte_delimited_words() throws IOException {
+        for (String input : INPUTS) {
+            assertSameWords(input, ",", ',');
+            assertSameWords(input, "\\.", '.');
+            assertSameWords(input, " ", ' ');
+        }
+    }
+
+    @Test
+    public void test_mapped_ranges_words() throws IOException {
+        for (String input : INPUTS) {
+            assertSameMappedWords(input, null, ByteWordReader.WHITESPACE);
+            assertSameMappedWords(input, ",", ',');
+            assertSameMappedWords(input, " ", ' ');
+        }
+    }
+
+    @Test
+    public void test_delimiter_byte_detection() {
+        assertEquals("comma is not a literal", ',', ByteWordReader.toDelimiterByte(","));
+        assertEquals("escaped dot is not a literal", '.', ByteWordReader.toDelimiterByte("\\."));
+        assertEquals("escaped pipe is not a literal", '|', ByteWordReader.toDelimiterByte("\\|"));
+        assertEquals("dot is a literal", ByteWordReader.WHITESPACE, ByteWordReader.toDelimiterByte("."));
+        assertEquals("\\s is a literal", ByteWordReader.WHITESPACE, ByteWordReader.toDelimiterByte("\\s"));
+        assertEquals("pattern is a literal", ByteWordReader.WHITESPACE, ByteWordReader.toDelimiterByte(",+"));
+        assertEquals("non-ASCII is a literal", ByteWordReader.WHITESPACE, ByteWordReader.toDelimiterByte("§"));
+    }
+
+    // Compares words read by Scanner with the words read by byte reader
+    // using buffers small enough to split words between reads
+    private void assertSameWords(String input, String regex, int delimiter) throws IOException {
+        List<String> expected = scan(input, regex);
+        for (int bufferSize = 1; bufferSize <= 8; bufferSize++) {
+            List<String> actual = new ArrayList<>();
+            ByteArrayInputStream stream = new ByteArrayInputStream(input.getBytes(UTF_8));
+            try (WordReader reader = new ByteWordReader(Channels.newChannel(stream), delimiter, bufferSize)) {
+                while (reader.next()) {
+                    actual.add(reader.word());
+                }
+            }
+            assertEquals("words are not equal for \"" + input + "\"", expected, actual);
+        }
+    }
+
+    // Compares words read by Scanner with the words read from all ranges
+    // of the mapped file using windows small enough to split words between maps
+    private void assertSameMappedWords(String input, String regex, int delimiter) throws IOException {
+        List<String> expected = scan(input, regex);
+        Path file = Files.createTempFile(null, null);
+        try {
+            Files.write(file, input.getBytes(UTF_8));
+            for (int count = 1; count <= 5; count++) {
+                long[] bounds;
+                try (FileChannel channel = FileChannel.open(file)) {
+                    bounds = ByteWordReader.splitRanges(channel, delimiter, count);
+                }
+
+                for (int windowSize = 1; windowSize <= 4; windowSize++) {
+                    List<String> actual = new ArrayList<>();
+                    for (int i = 0; i < count; i++) {
+                        try (WordReader reader = new ByteWordReader(
+                                FileChannel.open(file), delimiter, bounds[i], bounds[i + 1], windowSize)) {
+                            while (reader.next()) {
+                                actual.add(reader.word());
+                            }
+                        }
+                    }
+                    assertEquals("words are not equal for \"" + input + "\" in " + count + " ranges",
+                            expected, actual);
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private List<String> scan(String input, String regex) {
+        List<String> words = new ArrayList<>();
+        Scanner scanner = new Scanner(input);
+        if (regex != null) {
+            scanner.useDelimiter(regex);
+        }
+        while (scanner.hasNext()) {
+            words.add(scanner.next());
+        }
+        return words;
+    }
+}
@@ -0,0 +1,206 @@
+package org.odanc.filesorter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WordSorterTest {
+
+    @Test
+    public void test_iterator_sort() throws IOException {
+        List<String> words = createWords(50_000);
+        List<String> expected = new ArrayList<>(words);
+        Collections.sort(expected);
+
+        WordSorter sorter = WordSorter.newBuilder().setHeapSize(64).build();
+        List<String> sorted = new ArrayList<>();
+        try (SortedWords sortedWords = sorter.sort(words.iterator())) {
+            sortedWords.forEachRemaining(sorted::add);
+        }
+        assertEquals("Words are not sorted", expected, sorted);
+    }
+
+    @Test
+    public void test_stream_counted_sort() throws IOException {
+        List<String> words = createWords(20_000);
+        Map<String, Integer> counts = new TreeMap<>();
+        for (String word : words) {
+            counts.merge(word, 1, Integer::sum);
+        }
+        List<String> expected = counts.entrySet().stream()
+                                      .map(entry -> String.format("%7d %s", entry.getValue(), entry.getKey()))
+                                      .collect(Collectors.toList());
+
+        WordSorter sorter = WordSorter.newBuilder().setHeapSize(64).setCounted().build();
+        try (Stream<String> sorted = sorter.sort(words.stream()).stream()) {
+            assertEquals("Words are not counted", expected, sorted.collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void test_channel_keyed_sort() throws IOException {
+        String text = "b 3\nc 1\na 2\nd 1\n";
+        WordSorter sorter = WordSorter.newBuilder()
+                                      .setHeapSize(64)
+                                      .addKey("2n")
+                                      .addKey("1")
+                                      .setLastWords(3)
+                                      .build();
+
+        List<String> sorted = new ArrayList<>();
+        ByteArrayInputStream input = new ByteArrayInputStream(text.getBytes(UTF_8));
+        try (SortedWords sortedWords = sorter.sort(Channels.newChannel(input))) {
+            sortedWords.forEachRemaining(sorted::add);
+        }
+        assertEquals("Records are not sorted", Arrays.asList("d 1", "a 2", "b 3"), sorted);
+    }
+
+    @Test
+    public void test_temp_files_deleted() throws IOException {
+        List<String> words = createWords(50_000);
+        List<String> expected = new ArrayList<>(words);
+        Collections.sort(expected);
+        Path workDirectory = Files.createTempDirectory("filesorter");
+
+        try {
+            // Iterated words delete the files by themselves,
+            // closed words delete them before all the words are iterated
+            for (boolean iterated : new boolean[] {true, false}) {
+                FileSorter fileSorter = new FileSorter(newConfig(workDirectory));
+                List<String> sorted = new ArrayList<>();
+                SortedWords sortedWords = fileSorter.sort(new IteratorWordReader(words.iterator()));
+                assertTrue("words are merged in a single pass", fileSorter.getMergePassCount() > 1);
+                assertFalse("no temporary files are written", isEmpty(workDirectory));
+
+                if (iterated) {
+                    sortedWords.forEachRemaining(sorted::add);
+                    assertEquals("Words are not sorted", expected, sorted);
+                } else {
+                    for (int i = 0; i < 100; i++) {
+                        sorted.add(sortedWords.next());
+                    }
+                    assertEquals("Words are not sorted", expected.subList(0, 100), sorted);
+                    sortedWords.close();
+                    assertFalse("closed words are iterated", sortedWords.hasNext());
+                }
+                assertTrue("temporary files are not deleted", isEmpty(workDirectory));
+            }
+        } finally {
+            Files.delete(workDirectory);
+        }
+    }
+
+    @Test
+    public void test_work_directory_locked_while_words_open() throws IOException {
+        List<String> words = createWords(50_000);
+        List<String> expected = new ArrayList<>(words);
+        Collections.sort(expected);
+        Path workDirectory = Files.createTempDirectory("filesorter");
+        Path sourceFile = Files.createTempFile(null, null);
+        Path outputFile = Files.createTempFile(null, null);
+
+        try {
+            Files.write(sourceFile, words, UTF_8);
+            Config fileConfig = Config.newBuilder(sourceFile, 64)
+                                      .setOutputFile(outputFile)
+                                      .setWorkDirectory(workDirectory)
+                                      .build();
+            List<String> sorted = new ArrayList<>();
+            try (SortedWords sortedWords = new FileSorter(newConfig(workDirectory))
+                    .sort(new IteratorWordReader(words.iterator()))) {
+                try {
+                    new FileSorter(fileConfig).sort();
+                    fail("locked work directory is used");
+                } catch (IOException expectedFailure) {
+                }
+                sortedWords.forEachRemaining(sorted::add);
+            }
+            assertEquals("Words are not sorted", expected, sorted);
+            assertTrue("work directory is not cleaned", isEmpty(workDirectory));
+
+            // The lock is released with the words
+            new FileSorter(fileConfig).sort();
+            assertEquals("Files contents are not equal", expected, Files.readAllLines(outputFile, UTF_8));
+            assertTrue("work directory is not cleaned", isEmpty(workDirectory));
+        } finally {
+            Files.delete(workDirectory);
+            Files.delete(sourceFile);
+            Files.delete(outputFile);
+        }
+    }
+
+    @Test
+    public void test_files_sort_job_metrics() throws IOException {
+        List<String> words = createWords(20_000);
+        List<String> expected = new ArrayList<>(words);
+        Collections.sort(expected);
+        Path sourceFile = Files.createTempFile(null, null);
+        Path outputFile = Files.createTempFile(null, null);
+
+        try {
+            Files.write(sourceFile, words, UTF_8);
+            SortJob job = WordSorter.newBuilder()
+                                    .setHeapSize(64)
+                                    .build()
+                                    .newJob(Collections.singletonList(sourceFile), outputFile);
+            job.run();
+
+            assertEquals("Files contents are not equal", expected, Files.readAllLines(outputFile, UTF_8));
+            assertEquals("words are not counted", words.size(), job.getMetrics().getWordsRead());
+            assertTrue("merge is not finished", job.getMetrics().isFinished(SortPhase.MERGE));
+            assertTrue("no temporary files are counted", job.getRunCount() > 0);
+        } finally {
+            Files.delete(sourceFile);
+            Files.delete(outputFile);
+        }
+    }
+
+    // Creates a configuration of small words buffers merged in several passes
+    private Config newConfig(Path workDirectory) {
+        return Config.newBuilder(64)
+                     .setMaxChunkSize(65_536)
+                     .setMaxMergeFanIn(3)
+                     .setWorkDirectory(workDirectory)
+                     .build();
+    }
+
+    // Creates random words of Latin and Cyrillic letters
+    private List<String> createWords(int count) {
+        Random random = new Random(42);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder word = new StringBuilder();
+            for (int j = random.nextInt(8); j >= 0; j--) {
+                char first = random.nextBoolean() ? 'a' : 'а';
+                word.append((char) (first + random.nextInt(26)));
+            }
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    private boolean isEmpty(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return !files.findAny().isPresent();
+        }
+    }
+}